@@ -0,0 +1,80 @@
+package bench;
+
+import models.Cart;
+import models.Customer;
+import models.Product;
+import products.*;
+import services.CheckoutService;
+import services.ReceiptSink;
+import sinks.NoOpSink;
+import java.time.LocalDate;
+
+/**
+ * Shared fixtures for the benchmarks
+ */
+final class BenchmarkData {
+    static final int LARGE_STOCK = Integer.MAX_VALUE / 2;
+    static final double LARGE_BALANCE = 1.0e15;
+    
+    private BenchmarkData() {
+    }
+    
+    /**
+     * Create a mix of all product types, cycling Cheese, TV, ScratchCard, Biscuits, Mobile
+     * @param count number of distinct products
+     * @return the products
+     */
+    static Product[] products(int count) {
+        LocalDate expiry = LocalDate.now().plusYears(1);
+        Product[] products = new Product[count];
+        for (int i = 0; i < count; i++) {
+            String name = "Product " + i;
+            double price = 1.0 + (i % 500);
+            switch (i % 5) {
+                case 0: products[i] = new Cheese(name, price, LARGE_STOCK, expiry); break;
+                case 1: products[i] = new TV(name, price, LARGE_STOCK); break;
+                case 2: products[i] = new ScratchCard(name, price, LARGE_STOCK); break;
+                case 3: products[i] = new Biscuits(name, price, LARGE_STOCK, expiry); break;
+                default: products[i] = new Mobile(name, price, LARGE_STOCK); break;
+            }
+        }
+        return products;
+    }
+    
+    /**
+     * Create a cart with one line per product
+     * @param products the products to add
+     * @return the filled cart
+     */
+    static Cart cart(Product[] products) {
+        Cart cart = new Cart();
+        fill(cart, products);
+        return cart;
+    }
+    
+    static void fill(Cart cart, Product[] products) {
+        for (Product product : products) {
+            cart.add(product, 1);
+        }
+    }
+    
+    static void restock(Product[] products) {
+        for (Product product : products) {
+            product.setQuantity(LARGE_STOCK);
+        }
+    }
+    
+    static Customer richCustomer() {
+        return new Customer("Benchmark Customer", LARGE_BALANCE);
+    }
+    
+    /**
+     * Discard receipts and shipment notices produced by the checkout path
+     * @return the previous sink, to restore afterwards
+     */
+    static ReceiptSink silenceReceipts() {
+        ReceiptSink previous = CheckoutService.getReceiptSink();
+        CheckoutService.setReceiptSink(new NoOpSink());
+        return previous;
+    }
+}
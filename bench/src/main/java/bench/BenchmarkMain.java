@@ -0,0 +1,60 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark jar
+ * Runs the selected benchmarks once per thread count and writes one JSON result file
+ * per run, with the GC profiler on so allocation rate is recorded next to ns/op
+ *
+ * Usage: java -jar target/benchmarks.jar [jmh options]
+ * System properties:
+ *   bench.threads  comma separated thread counts (default: 1, 2, 4, ... up to the core count)
+ *   bench.out      prefix of the JSON result files (default: results)
+ */
+public class BenchmarkMain {
+    
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String prefix = System.getProperty("bench.out", "results");
+        
+        for (int threads : threadCounts()) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(String.format("%s-%dt.json", prefix, threads));
+            new Runner(options.build()).run();
+        }
+    }
+    
+    private static int[] threadCounts() {
+        String configured = System.getProperty("bench.threads");
+        if (configured != null) {
+            String[] parts = configured.split(",");
+            int[] counts = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                counts[i] = Integer.parseInt(parts[i].trim());
+            }
+            return counts;
+        }
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        int steps = 32 - Integer.numberOfLeadingZeros(cores);
+        boolean powerOfTwo = Integer.bitCount(cores) == 1;
+        int[] counts = new int[powerOfTwo ? steps : steps + 1];
+        for (int i = 0; i < steps; i++) {
+            counts[i] = 1 << i;
+        }
+        counts[counts.length - 1] = cores;
+        return counts;
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import models.Cart;
+import models.CartItem;
+import models.Product;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for Cart hot paths
+ * Each thread owns its cart, matching how carts are used per session
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CartBenchmark {
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int cartSize;
+    
+    private Product[] products;
+    private Cart cart;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = BenchmarkData.products(cartSize);
+    }
+    
+    @Setup(Level.Iteration)
+    public void resetCart() {
+        BenchmarkData.restock(products);
+        cart = BenchmarkData.cart(products);
+    }
+    
+    /**
+     * Build a cart of cartSize distinct lines from scratch
+     */
+    @Benchmark
+    public Cart buildCart() {
+        return BenchmarkData.cart(products);
+    }
+    
+    /**
+     * Add to a line that is already in the cart, exercising the duplicate-product lookup
+     * The last product is used so a linear scan has to walk the whole cart
+     */
+    @Benchmark
+    public void addExistingProduct() {
+        cart.add(products[cartSize - 1], 1);
+    }
+    
+    @Benchmark
+    public double getSubtotal() {
+        return cart.getSubtotal();
+    }
+    
+    @Benchmark
+    public List<CartItem> getShippableItems() {
+        return cart.getShippableItems();
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import models.Cart;
+import models.Product;
+import store.CartStore;
+import java.time.Duration;
+
+/**
+ * Measures retained heap of a CartStore full of live carts against its own estimate
+ * Each cart holds one to three lines, the usual shape of an active session. The
+ * store's byte bound is checked against the estimate, so the two should agree within
+ * a few percent. Budget about 510 bytes per cart of two lines including its session
+ * key, i.e. roughly 512 MB of heap for 1M live carts
+ *
+ * Usage: java -cp target/benchmarks.jar bench.CartStoreFootprint [carts]
+ * Run with a heap large enough for the carts, e.g. -Xmx2g for 1M carts
+ */
+public class CartStoreFootprint {
+    
+    public static void main(String[] args) throws Exception {
+        int carts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Product[] products = BenchmarkData.products(1_000);
+        
+        long baseline = usedHeap();
+        // Segments each hold their share of the entry bound, so allow some slack
+        CartStore store = new CartStore(carts + carts / 16, Long.MAX_VALUE, Duration.ofHours(1));
+        for (int i = 0; i < carts; i++) {
+            Cart cart = store.getOrCreate("session-" + i);
+            for (int line = 0; line <= i % 3; line++) {
+                cart.add(products[(i + line * 7) % products.length], 1);
+            }
+        }
+        long measured = usedHeap() - baseline;
+        
+        // Lines were added after the carts were stored; a read refreshes the estimate
+        for (int i = 0; i < carts; i++) {
+            store.get("session-" + i);
+        }
+        long estimated = store.estimatedBytes();
+        
+        int held = store.size();
+        System.out.printf("Carts:      %,d (%,d held)%n", carts, held);
+        System.out.printf("Measured:   %,d bytes (%.1f per cart)%n", measured, (double) measured / held);
+        System.out.printf("Estimated:  %,d bytes (%.1f per cart)%n", estimated, (double) estimated / held);
+        store.close();
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package bench;
+
+import catalog.ProductCatalog;
+import interfaces.Shippable;
+import models.Product;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and full-scan cost of the columnar catalog against an array of Product objects
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CatalogBenchmark {
+    @Param({"100000", "1000000"})
+    public int skus;
+    
+    private Product[] objects;
+    private ProductCatalog catalog;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        objects = BenchmarkData.products(skus);
+        catalog = new ProductCatalog();
+        for (Product product : objects) {
+            catalog.addProduct(product);
+        }
+    }
+    
+    @Benchmark
+    public long lookupCatalog() {
+        int id = ThreadLocalRandom.current().nextInt(skus);
+        return catalog.getPriceMinor(id) * catalog.getQuantity(id);
+    }
+    
+    @Benchmark
+    public long lookupObjects() {
+        Product product = objects[ThreadLocalRandom.current().nextInt(skus)];
+        return product.getPriceMinor() * product.getQuantity();
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long scanShippableWeightCatalog() {
+        long total = 0;
+        for (int id = 0, n = catalog.size(); id < n; id++) {
+            total += catalog.getWeightGrams(id);
+        }
+        return total;
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long scanShippableWeightObjects() {
+        long total = 0;
+        for (Product product : objects) {
+            if (product.requiresShipping()) {
+                total += ((Shippable) product).getWeightGrams();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import catalog.ProductCatalog;
+import interfaces.Shippable;
+import models.ExpirableProduct;
+import models.Product;
+
+/**
+ * Measures retained heap of the columnar ProductCatalog against the
+ * object-per-product model for the same SKUs
+ *
+ * Usage: java -cp target/benchmarks.jar bench.CatalogFootprint [skus]
+ * Run with a heap large enough for both models, e.g. -Xmx4g for 1M SKUs
+ */
+public class CatalogFootprint {
+    
+    public static void main(String[] args) {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        
+        long baseline = usedHeap();
+        Product[] objects = BenchmarkData.products(skus);
+        long objectBytes = usedHeap() - baseline;
+        
+        // Import with copied names so both models pay for their own strings
+        baseline = usedHeap();
+        ProductCatalog catalog = new ProductCatalog();
+        for (Product product : objects) {
+            int flags = product.requiresShipping() ? ProductCatalog.SHIPPABLE : 0;
+            int weightGrams = product.requiresShipping() ? (int) ((Shippable) product).getWeightGrams() : 0;
+            int expiryEpochDay = ProductCatalog.NO_EXPIRY;
+            if (product instanceof ExpirableProduct) {
+                flags |= ProductCatalog.EXPIRABLE;
+                expiryEpochDay = (int) ((ExpirableProduct) product).getExpirationEpochDay();
+            }
+            catalog.add(new String(product.getName()), product.getPriceMinor(), product.getQuantity(), 
+                        weightGrams, expiryEpochDay, flags);
+        }
+        long catalogBytes = usedHeap() - baseline;
+        
+        System.out.printf("SKUs:                %,d%n", skus);
+        System.out.printf("Object per product:  %,d bytes (%.1f per SKU)%n", objectBytes, (double) objectBytes / skus);
+        System.out.printf("Columnar catalog:    %,d bytes (%.1f per SKU)%n", catalogBytes, (double) catalogBytes / skus);
+        
+        // Keep both models reachable until measured
+        if (objects.length != catalog.size()) {
+            throw new IllegalStateException("Catalog size mismatch");
+        }
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
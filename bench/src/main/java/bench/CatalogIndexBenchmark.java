@@ -0,0 +1,69 @@
+package bench;
+
+import catalog.Bitmap;
+import catalog.CatalogIndex;
+import catalog.ProductCatalog;
+import org.openjdk.jmh.annotations.*;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range and conjunctive queries on a million-SKU catalog, plus the cost of keeping
+ * the indexes up to date on a price change
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CatalogIndexBenchmark {
+    @Param({"1000000"})
+    public int skus;
+    
+    private ProductCatalog catalog;
+    private CatalogIndex index;
+    private long today;
+    private SplittableRandom random;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        today = LocalDate.now().toEpochDay();
+        random = new SplittableRandom(42);
+        catalog = new ProductCatalog();
+        for (int i = 0; i < skus; i++) {
+            int flags = random.nextInt(4);
+            int weight = (flags & ProductCatalog.SHIPPABLE) != 0 ? 1 + random.nextInt(20_000) : 0;
+            catalog.add("SKU " + i, random.nextInt(1_000_000), random.nextInt(10), weight, 
+                        (int) today + random.nextInt(365), flags);
+        }
+        index = new CatalogIndex(catalog);
+    }
+    
+    /**
+     * Price band of roughly 0.1% of the catalog
+     */
+    @Benchmark
+    public Bitmap priceBand() {
+        return index.priceBetween(500_000, 501_000);
+    }
+    
+    @Benchmark
+    public Bitmap expiringWithinThreeDays() {
+        return index.expiringWithin(today, 3);
+    }
+    
+    /**
+     * Shippable under 2 kg, in stock and priced under $10
+     */
+    @Benchmark
+    public Bitmap lightCheapInStock() {
+        return index.weightAtMost(2000).and(index.priceBetween(0, 1000)).and(index.inStock());
+    }
+    
+    @Benchmark
+    public void repriceOne() {
+        catalog.setPrice(random.nextInt(skus), random.nextInt(1_000_000));
+    }
+}
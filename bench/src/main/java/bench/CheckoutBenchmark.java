@@ -0,0 +1,70 @@
+package bench;
+
+import models.Cart;
+import models.Customer;
+import models.Product;
+import services.CheckoutService;
+import services.ReceiptSink;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of CheckoutService.checkout
+ * Products are shared by all threads so concurrent runs measure stock contention,
+ * while every thread checks out its own cart for its own customer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Catalog {
+        @Param({"1", "10", "100", "1000", "10000"})
+        public int cartSize;
+        
+        Product[] products;
+        private ReceiptSink previousSink;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            products = BenchmarkData.products(cartSize);
+            previousSink = BenchmarkData.silenceReceipts();
+        }
+        
+        @Setup(Level.Iteration)
+        public void restock() {
+            BenchmarkData.restock(products);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            CheckoutService.setReceiptSink(previousSink);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Session {
+        Customer customer;
+        Cart cart;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            customer = BenchmarkData.richCustomer();
+            cart = new Cart();
+        }
+        
+        @Setup(Level.Invocation)
+        public void fillCart(Catalog catalog) {
+            BenchmarkData.fill(cart, catalog.products);
+        }
+    }
+    
+    @Benchmark
+    public Customer checkout(Session session) {
+        CheckoutService.checkout(session.customer, session.cart);
+        return session.customer;
+    }
+}
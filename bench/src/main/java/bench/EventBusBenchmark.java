@@ -0,0 +1,78 @@
+package bench;
+
+import events.EventBus;
+import events.Events;
+import events.SlowConsumerPolicy;
+import models.Cart;
+import models.Customer;
+import models.Product;
+import products.ScratchCard;
+import services.CheckoutService;
+import sinks.NoOpSink;
+import org.openjdk.jmh.annotations.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Add to cart and checkout of one-line carts without an event bus, and with a bus
+ * feeding two batching consumers; each order publishes an item added, a stock
+ * change and a checkout completed event
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusBenchmark {
+    private static final int PRODUCTS = 1_000;
+    private static final int CUSTOMERS = 1_000;
+    
+    @Param({"none", "bus"})
+    public String events;
+    
+    private Product[] products;
+    private Customer[] customers;
+    private EventBus bus;
+    private final AtomicLong consumed = new AtomicLong();
+    
+    @State(Scope.Thread)
+    public static class Orders {
+        final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        CheckoutService.setReceiptSink(new NoOpSink());
+        products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new ScratchCard("Card " + i, 1, Integer.MAX_VALUE / 2);
+        }
+        customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new Customer("Customer " + i, 1e9);
+        }
+        if (events.equals("bus")) {
+            bus = new EventBus();
+            bus.subscribe("analytics", batch -> consumed.addAndGet(batch.size()), SlowConsumerPolicy.DROP);
+            bus.subscribe("reorder", batch -> consumed.addAndGet(batch.size()), SlowConsumerPolicy.WAIT);
+            Events.setBus(bus);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Events.setBus(null);
+        if (bus != null) {
+            bus.close();
+        }
+    }
+    
+    @Benchmark
+    public boolean checkout(Orders orders) {
+        Cart cart = new Cart();
+        cart.add(products[orders.random.nextInt(PRODUCTS)], 1);
+        return CheckoutService.tryCheckout(customers[orders.random.nextInt(CUSTOMERS)], cart).isSuccess();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package bench;
+
+import clock.ExpiryScheduler;
+import models.ExpirableProduct;
+import products.Cheese;
+import org.openjdk.jmh.annotations.*;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an expiry check: flag of a product a running ExpiryScheduler tracks, cached
+ * store clock, and reading LocalDate.now() per call
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpiryBenchmark {
+    private ExpirableProduct fresh;
+    private ExpirableProduct flagged;
+    private ExpirableProduct scheduled;
+    private ExpiryScheduler scheduler;
+    
+    @Setup
+    public void setUp() {
+        fresh = new Cheese("Fresh", 1.0, 1_000_000, LocalDate.now().plusDays(30));
+        flagged = new Cheese("Flagged", 1.0, 1_000_000, LocalDate.now().minusDays(1));
+        flagged.markExpired();
+        scheduled = new Cheese("Scheduled", 1.0, 1_000_000, LocalDate.now().plusDays(30));
+        scheduler = new ExpiryScheduler();
+        scheduler.track(scheduled);
+        scheduler.start();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        scheduler.close();
+    }
+    
+    @Benchmark
+    public boolean scheduledFlag() {
+        return scheduled.isExpired();
+    }
+    
+    @Benchmark
+    public boolean cachedClock() {
+        return fresh.isExpired();
+    }
+    
+    @Benchmark
+    public boolean expiredFlag() {
+        return flagged.isExpired();
+    }
+    
+    /**
+     * What isExpired did before the store clock
+     */
+    @Benchmark
+    public boolean localDateNow() {
+        return LocalDate.now().isAfter(fresh.getExpirationDate());
+    }
+    
+    @Benchmark
+    public boolean isAvailable() {
+        return fresh.isAvailable(1);
+    }
+}
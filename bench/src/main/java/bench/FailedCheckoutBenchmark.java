@@ -0,0 +1,49 @@
+package bench;
+
+import models.Cart;
+import models.Customer;
+import models.Product;
+import services.CheckoutResult;
+import services.CheckoutService;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a rejected checkout (insufficient balance), as in a flash sale where most
+ * attempts fail: throwing checkout versus the result-returning tryCheckout
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FailedCheckoutBenchmark {
+    @Param({"1", "10", "100"})
+    public int cartSize;
+    
+    private Customer customer;
+    private Cart cart;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        Product[] products = BenchmarkData.products(cartSize);
+        customer = new Customer("Broke Customer", 0.0);
+        cart = BenchmarkData.cart(products);
+    }
+    
+    @Benchmark
+    public String checkoutThrowing() {
+        try {
+            CheckoutService.checkout(customer, cart);
+            return null;
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+    
+    @Benchmark
+    public CheckoutResult.Status tryCheckout() {
+        return CheckoutService.tryCheckout(customer, cart).getStatus();
+    }
+}
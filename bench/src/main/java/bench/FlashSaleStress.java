@@ -0,0 +1,140 @@
+package bench;
+
+import inventory.StockLedger;
+import models.Cart;
+import models.Customer;
+import models.Product;
+import products.Mobile;
+import services.CheckoutResult;
+import services.CheckoutService;
+import sinks.NoOpSink;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress check for a flash sale on a single product
+ * Many threads check out one-to-three unit carts of the same product while others
+ * reserve and then release or commit straight on its ledger; every thread and a
+ * watcher check the counts the whole time. Fails (exit code 1) if available or
+ * reserved stock is ever seen negative, if more units are sold than were stocked,
+ * or if sold plus remaining stock does not add up to the initial stock at the end
+ *
+ * Usage: java -cp target/benchmarks.jar bench.FlashSaleStress [threads] [stock] [attemptsPerThread]
+ */
+public class FlashSaleStress {
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int stock = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int attempts = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        CheckoutService.setReceiptSink(new NoOpSink());
+        
+        Product product = new Mobile("Flash sale", 1.0, stock);
+        StockLedger ledger = product.getStock();
+        AtomicLong sold = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong samples = new AtomicLong();
+        AtomicBoolean negativeSeen = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        
+        Thread watcher = new Thread(() -> {
+            while (running.get()) {
+                if (ledger.getAvailable() < 0 || ledger.getReserved() < 0) {
+                    negativeSeen.set(true);
+                }
+                samples.incrementAndGet();
+                Thread.yield();
+            }
+        }, "flash-sale-watcher");
+        watcher.start();
+        
+        List<Thread> shoppers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread shopper = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(id);
+                Customer customer = new Customer("Shopper " + id, 1e9);
+                awaitStart(start);
+                for (int i = 0; i < attempts; i++) {
+                    if (ledger.getAvailable() < 0 || ledger.getReserved() < 0) {
+                        negativeSeen.set(true);
+                    }
+                    int quantity = 1 + random.nextInt(3);
+                    if (id % 4 == 0) {
+                        // Hold and then give back or sell, as a cart lease would
+                        if (!ledger.tryReserve(quantity)) {
+                            rejected.incrementAndGet();
+                        } else if (random.nextBoolean()) {
+                            ledger.release(quantity);
+                        } else {
+                            ledger.commit(quantity);
+                            sold.addAndGet(quantity);
+                        }
+                        continue;
+                    }
+                    Cart cart = new Cart();
+                    if (!cart.tryAdd(product, quantity).isSuccess()) {
+                        rejected.incrementAndGet();
+                        continue;
+                    }
+                    CheckoutResult result = CheckoutService.tryCheckout(customer, cart);
+                    if (result.isSuccess()) {
+                        sold.addAndGet(quantity);
+                    } else {
+                        rejected.incrementAndGet();
+                    }
+                }
+            }, "flash-sale-" + t);
+            shoppers.add(shopper);
+            shopper.start();
+        }
+        
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread shopper : shoppers) {
+            shopper.join();
+        }
+        long elapsedMillis = (System.nanoTime() - began) / 1_000_000;
+        running.set(false);
+        watcher.join();
+        
+        int available = ledger.getAvailable();
+        int reserved = ledger.getReserved();
+        System.out.printf("%d threads, %,d units, %,d attempts in %,d ms%n", threads, stock, (long) threads * attempts, elapsedMillis);
+        System.out.printf("Sold %,d, rejected %,d, available %,d, reserved %,d, %,d samples%n",
+                          sold.get(), rejected.get(), available, reserved, samples.get());
+        
+        List<String> failures = new ArrayList<>();
+        if (negativeSeen.get() || available < 0 || reserved < 0) {
+            failures.add("stock went negative");
+        }
+        if (sold.get() > stock) {
+            failures.add("sold more than was stocked");
+        }
+        if (sold.get() + available + reserved != stock) {
+            failures.add("sold plus remaining stock is not the initial stock");
+        }
+        if (reserved != 0) {
+            failures.add("reservations left behind");
+        }
+        if (failures.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            System.out.println("FAILED: " + String.join(", ", failures));
+            System.exit(1);
+        }
+    }
+    
+    private static void awaitStart(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package bench;
+
+import models.Cart;
+import models.Customer;
+import models.Product;
+import products.ScratchCard;
+import services.CheckoutService;
+import services.IdempotencyCache;
+import sinks.NoOpSink;
+import org.openjdk.jmh.annotations.*;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout of one-line carts without a key, with a fresh key per order, and with
+ * keys that were mostly used before, as retried requests would; the cache holds
+ * 100,000 keys, so fresh keys also pay for eviction
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdempotencyBenchmark {
+    private static final int PRODUCTS = 1_000;
+    private static final int CUSTOMERS = 1_000;
+    private static final int RETRIED_KEYS = 10_000;
+    
+    @Param({"none", "fresh", "retried"})
+    public String keys;
+    
+    private Product[] products;
+    private Customer[] customers;
+    private String[] retried;
+    
+    @State(Scope.Thread)
+    public static class Orders {
+        final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+        final String prefix = "order-" + Thread.currentThread().getId() + "-";
+        long next;
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        CheckoutService.setReceiptSink(new NoOpSink());
+        CheckoutService.setIdempotencyCache(new IdempotencyCache(Duration.ofHours(1), 100_000));
+        products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new ScratchCard("Card " + i, 1, Integer.MAX_VALUE / 2);
+        }
+        customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new Customer("Customer " + i, 1e9);
+        }
+        retried = new String[RETRIED_KEYS];
+        for (int i = 0; i < RETRIED_KEYS; i++) {
+            retried[i] = "retry-" + i;
+        }
+    }
+    
+    @Benchmark
+    public boolean checkout(Orders orders) {
+        int index = orders.random.nextInt(RETRIED_KEYS);
+        Cart cart = new Cart();
+        cart.add(products[index % PRODUCTS], 1);
+        Customer customer = customers[index % CUSTOMERS];
+        String key = null;
+        if (keys.equals("fresh")) {
+            key = orders.prefix + orders.next++;
+        } else if (keys.equals("retried")) {
+            key = retried[index];
+        }
+        return CheckoutService.tryCheckout(key, customer, cart).isSuccess();
+    }
+}
\ No newline at end of file
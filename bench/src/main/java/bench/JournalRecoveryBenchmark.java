@@ -0,0 +1,70 @@
+package bench;
+
+import models.Customer;
+import models.Product;
+import persistence.OrderJournal;
+import persistence.OrderRecord;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup recovery time: open a journal of several million entries and replay it
+ * into products and customers
+ * Target: a 1M-entry log recovers in well under a second
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class JournalRecoveryBenchmark {
+    private static final int PRODUCTS = 1000;
+    private static final int CUSTOMERS = 1000;
+    
+    @Param({"1000000", "4000000"})
+    public int entries;
+    
+    private Path file;
+    private Product[] products;
+    
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        file = Files.createTempFile("order-journal-recovery", ".log");
+        products = BenchmarkData.products(PRODUCTS);
+        try (OrderJournal journal = OrderJournal.open(file)) {
+            for (int i = 0; i < entries; i++) {
+                String[] productNames = {products[i % PRODUCTS].getName(), products[(i + 1) % PRODUCTS].getName()};
+                journal.append(new OrderRecord(i, "Customer " + (i % CUSTOMERS), productNames, new int[] {1, 1}, 
+                                             200, 0, 200));
+            }
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        Files.deleteIfExists(file);
+    }
+    
+    @Benchmark
+    public long recover() throws IOException {
+        Map<String, Product> byName = new HashMap<>();
+        BenchmarkData.restock(products);
+        for (Product product : products) {
+            byName.put(product.getName(), product);
+        }
+        Map<String, Customer> customers = new HashMap<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.put("Customer " + i, BenchmarkData.richCustomer());
+        }
+        
+        try (OrderJournal journal = OrderJournal.open(file)) {
+            return journal.replayInto(byName, customers);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import clock.StoreClock;
+import inventory.LeaseManager;
+import models.Product;
+import products.ScratchCard;
+import org.openjdk.jmh.annotations.*;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock leases: granting 1M leases over ten simulated minutes while the timing wheel
+ * advances every second, then expiring all of them
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LeaseBenchmark {
+    private static final Instant START = Instant.parse("2030-01-01T00:00:00Z");
+    
+    @Param({"1000000"})
+    public int leases;
+    
+    private Product product;
+    private LeaseManager manager;
+    
+    @Setup(Level.Invocation)
+    public void setUp() {
+        StoreClock.setClock(Clock.fixed(START, ZoneOffset.UTC));
+        product = new ScratchCard("Leased", 1.0, leases);
+        manager = new LeaseManager(Duration.ofMinutes(5), Duration.ofMillis(100));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StoreClock.setClock(Clock.systemDefaultZone());
+    }
+    
+    @Benchmark
+    public int grantAndExpire() {
+        int perSecond = Math.max(1, leases / 600);
+        long elapsedMillis = 0;
+        for (int i = 0; i < leases; i++) {
+            manager.reserve(product, 1);
+            if ((i + 1) % perSecond == 0) {
+                elapsedMillis += 1000;
+                StoreClock.setClock(Clock.fixed(START.plusMillis(elapsedMillis), ZoneOffset.UTC));
+                manager.advance();
+            }
+        }
+        StoreClock.setClock(Clock.fixed(START.plusMillis(elapsedMillis).plus(Duration.ofMinutes(6)), ZoneOffset.UTC));
+        manager.advance();
+        if (product.getStock().getReserved() != 0) {
+            throw new IllegalStateException("Leases left holding stock");
+        }
+        return product.getQuantity();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package bench;
+
+import models.Cart;
+import models.CartOutcome;
+import models.Customer;
+import models.Product;
+import services.CheckoutResult;
+import services.CheckoutService;
+import services.ReceiptSink;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics layer: the same hot paths with instrumentation compiled
+ * out (Disabled) and recording (Enabled). Disabled should match the numbers of
+ * CartBenchmark and CheckoutBenchmark from before instrumentation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public abstract class MetricsBenchmark {
+    private Product[] products;
+    private Customer customer;
+    private Cart cart;
+    private ReceiptSink previousSink;
+    
+    @Fork(value = 1, jvmArgsAppend = "-Dmetrics.enabled=false")
+    public static class Disabled extends MetricsBenchmark {
+    }
+    
+    @Fork(value = 1, jvmArgsAppend = "-Dmetrics.enabled=true")
+    public static class Enabled extends MetricsBenchmark {
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = BenchmarkData.products(10);
+        customer = BenchmarkData.richCustomer();
+        cart = new Cart();
+        previousSink = BenchmarkData.silenceReceipts();
+    }
+    
+    @Setup(Level.Iteration)
+    public void restock() {
+        BenchmarkData.restock(products);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CheckoutService.setReceiptSink(previousSink);
+    }
+    
+    @Benchmark
+    public CartOutcome cartAdd() {
+        CartOutcome outcome = cart.tryAdd(products[0], 1);
+        cart.clear();
+        return outcome;
+    }
+    
+    /**
+     * Fill a ten line cart and check it out
+     */
+    @Benchmark
+    public CheckoutResult checkout() {
+        BenchmarkData.fill(cart, products);
+        return CheckoutService.tryCheckout(customer, cart);
+    }
+}
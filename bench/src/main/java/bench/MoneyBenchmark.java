@@ -0,0 +1,102 @@
+package bench;
+
+import models.Customer;
+import models.Money;
+import services.ShippingRules;
+import org.openjdk.jmh.annotations.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money arithmetic of one checkout in long cents against the doubles it replaced
+ * Each run totals the lines, adds the shipping fee and charges the customer with a
+ * CAS, then credits the amount back so the balance stays put. {@link #doubles()} is
+ * what Cart, ShippingService and Customer did before cents; {@link #cents()} also
+ * pays for overflow checks and the zone-aware fee table
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+    private static final double BASE_SHIPPING_FEE = 5.0;
+    private static final double SHIPPING_RATE_PER_KG = 10.0;
+    private static final VarHandle BALANCE;
+    
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(MoneyBenchmark.class, "balance", double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    @Param({"1", "10", "100"})
+    public int lines;
+    
+    private double[] prices;
+    private double[] weights;
+    private long[] pricesMinor;
+    private long[] weightsGrams;
+    private int[] quantities;
+    private ShippingRules rules;
+    private Customer customer;
+    private volatile double balance; // what Customer held before the switch
+    
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        prices = new double[lines];
+        weights = new double[lines];
+        pricesMinor = new long[lines];
+        weightsGrams = new long[lines];
+        quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            pricesMinor[i] = 1 + random.nextInt(100_000);
+            prices[i] = Money.toMajor(pricesMinor[i]);
+            weightsGrams[i] = random.nextInt(5_000);
+            weights[i] = weightsGrams[i] / 1000.0;
+            quantities[i] = 1 + random.nextInt(5);
+        }
+        rules = ShippingRules.defaults();
+        customer = new Customer("Benchmark", 1e12);
+        balance = 1e12;
+    }
+    
+    @Benchmark
+    public double doubles() {
+        double subtotal = 0;
+        double weight = 0;
+        for (int i = 0; i < lines; i++) {
+            subtotal += prices[i] * quantities[i];
+            weight += weights[i] * quantities[i];
+        }
+        double total = subtotal + (weight <= 0 ? 0 : BASE_SHIPPING_FEE + weight * SHIPPING_RATE_PER_KG);
+        double current;
+        do {
+            current = balance;
+        } while (!BALANCE.compareAndSet(this, current, current - total));
+        do {
+            current = balance;
+        } while (!BALANCE.compareAndSet(this, current, current + total));
+        return total;
+    }
+    
+    @Benchmark
+    public long cents() {
+        long subtotal = 0;
+        long grams = 0;
+        for (int i = 0; i < lines; i++) {
+            subtotal = Math.addExact(subtotal, Money.times(pricesMinor[i], quantities[i]));
+            grams += weightsGrams[i] * quantities[i];
+        }
+        long total = Math.addExact(subtotal, rules.fee(0, grams, 0, subtotal));
+        customer.tryDeductBalance(total);
+        customer.addBalanceMinor(total);
+        return total;
+    }
+}
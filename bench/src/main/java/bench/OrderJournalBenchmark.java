@@ -0,0 +1,59 @@
+package bench;
+
+import persistence.OrderJournal;
+import persistence.OrderRecord;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained append throughput of the order journal
+ * appendDurably waits for the group commit, so running it with more threads shows
+ * how many appends share each fsync; append measures the raw copy into the mapping
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderJournalBenchmark {
+    @Param({"1", "10"})
+    public int lines;
+    
+    private Path file;
+    private OrderJournal journal;
+    private OrderRecord record;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("order-journal", ".log");
+        journal = OrderJournal.open(file);
+        String[] productNames = new String[lines];
+        int[] quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            productNames[i] = "Product " + i;
+            quantities[i] = 1;
+        }
+        record = new OrderRecord(System.currentTimeMillis(), "Benchmark Customer", productNames, quantities, 
+                               10_000, 500, 10_500);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        Files.deleteIfExists(file);
+    }
+    
+    @Benchmark
+    public long append() {
+        return journal.append(record);
+    }
+    
+    @Benchmark
+    public void appendDurably() {
+        journal.appendDurably(record);
+    }
+}
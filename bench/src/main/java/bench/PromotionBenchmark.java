@@ -0,0 +1,84 @@
+package bench;
+
+import models.Cart;
+import models.Product;
+import products.ScratchCard;
+import promotions.Promotion;
+import promotions.PromotionEngine;
+import promotions.PromotionResult;
+import org.openjdk.jmh.annotations.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pricing a 50-line cart with three coupons against a mix of tiered, buy X get Y,
+ * bundle and coupon promotions over a 2,000-product catalog
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromotionBenchmark {
+    private static final int PRODUCTS = 2_000;
+    private static final int CART_LINES = 50;
+    
+    @Param({"100", "10000"})
+    public int promotions;
+    
+    private PromotionEngine engine;
+    private Cart cart;
+    
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        Product[] products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new ScratchCard("Product " + i, 1 + random.nextInt(200), 1_000_000);
+        }
+        // Promotions cluster on the first fifth of the catalog, where the cart shops
+        int hot = PRODUCTS / 5;
+        List<Promotion> rules = new ArrayList<>(promotions);
+        for (int i = 0; i < promotions; i++) {
+            long productId = products[random.nextInt(hot)].getId();
+            switch (i % 10) {
+                case 0: case 1: case 2: case 3:
+                    rules.add(Promotion.tiered("tier-" + i, productId, new int[] {2, 5, 10},
+                                               new int[] {300, 700, 1200}));
+                    break;
+                case 4: case 5: case 6:
+                    rules.add(Promotion.buyXGetY("bxgy-" + i, productId, 2 + random.nextInt(3), 1));
+                    break;
+                case 7: case 8:
+                    long otherId = products[random.nextInt(hot)].getId();
+                    if (otherId == productId) {
+                        otherId = products[hot + random.nextInt(PRODUCTS - hot)].getId();
+                    }
+                    rules.add(Promotion.bundle("bundle-" + i, new long[] {productId, otherId},
+                                               new int[] {1, 1 + random.nextInt(2)}, 50));
+                    break;
+                default:
+                    rules.add(Promotion.coupon("coupon-" + i, "CODE" + i, 20, 500 + random.nextInt(1000), 5));
+            }
+        }
+        engine = new PromotionEngine(rules);
+        cart = new Cart();
+        while (cart.size() < CART_LINES) {
+            Product product = products[random.nextInt(hot)];
+            if (!cart.contains(product)) {
+                cart.add(product, 1 + random.nextInt(12));
+            }
+        }
+        cart.applyCoupon("CODE9");
+        cart.applyCoupon("CODE19");
+        cart.applyCoupon("UNKNOWN");
+    }
+    
+    @Benchmark
+    public PromotionResult price() {
+        return engine.price(cart);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package bench;
+
+import clock.StoreClock;
+import inventory.LeaseManager;
+import models.Cart;
+import models.CartOutcome;
+import models.Customer;
+import models.Product;
+import products.Mobile;
+import services.CheckoutResult;
+import services.CheckoutService;
+import sinks.NoOpSink;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Simulates a product drop with and without stock leases
+ * Shoppers arrive over five minutes, add one unit, and either check out after a random
+ * think time or abandon the cart. Without leases most shoppers pass the cart step and
+ * then fail at checkout; with leases the failures move to add-to-cart, and abandoned
+ * holds return to stock when they expire
+ *
+ * Usage: java -cp target/benchmarks.jar bench.ReservationDrop [shoppers] [stock] [leaseSeconds]
+ */
+public class ReservationDrop {
+    private static final Instant START = Instant.parse("2030-01-01T00:00:00Z");
+    
+    /**
+     * Next thing a shopper does, ordered by simulated time
+     */
+    private static final class Event {
+        final long atMillis;
+        final int shopper;
+        final boolean checkout;
+        
+        Event(long atMillis, int shopper, boolean checkout) {
+            this.atMillis = atMillis;
+            this.shopper = shopper;
+            this.checkout = checkout;
+        }
+    }
+    
+    public static void main(String[] args) {
+        int shoppers = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int stock = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int leaseSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 180;
+        CheckoutService.setReceiptSink(new NoOpSink());
+        
+        System.out.printf("Drop: %,d shoppers for %,d units, 30%% abandon, think time 5-120s%n", shoppers, stock);
+        run("No leases", shoppers, stock, 0);
+        run("Leases " + leaseSeconds + "s", shoppers, stock, leaseSeconds);
+        StoreClock.setClock(Clock.systemDefaultZone());
+    }
+    
+    private static void run(String label, int shoppers, int stock, int leaseSeconds) {
+        StoreClock.setClock(Clock.fixed(START, ZoneOffset.UTC));
+        LeaseManager leases = leaseSeconds > 0
+                            ? new LeaseManager(Duration.ofSeconds(leaseSeconds), Duration.ofMillis(100))
+                            : null;
+        Product product = new Mobile("Drop", 100.0, stock);
+        SplittableRandom random = new SplittableRandom(7);
+        PriorityQueue<Event> events = new PriorityQueue<>((a, b) -> Long.compare(a.atMillis, b.atMillis));
+        for (int i = 0; i < shoppers; i++) {
+            events.add(new Event(random.nextLong(300_000), i, false));
+        }
+        Cart[] carts = new Cart[shoppers];
+        int rejectedAtAdd = 0;
+        int failedAtCheckout = 0;
+        int sold = 0;
+        int abandoned = 0;
+        
+        Event event;
+        while ((event = events.poll()) != null) {
+            StoreClock.setClock(Clock.fixed(START.plusMillis(event.atMillis), ZoneOffset.UTC));
+            if (leases != null) {
+                leases.advance();
+            }
+            if (!event.checkout) {
+                Cart cart = new Cart(leases);
+                if (cart.tryAdd(product, 1) != CartOutcome.ADDED) {
+                    rejectedAtAdd++;
+                } else if (random.nextInt(10) < 3) {
+                    abandoned++;
+                } else {
+                    carts[event.shopper] = cart;
+                    events.add(new Event(event.atMillis + 5_000 + random.nextLong(115_000), event.shopper, true));
+                }
+            } else {
+                CheckoutResult result = CheckoutService.tryCheckout(new Customer("Shopper", 1_000.0), carts[event.shopper]);
+                if (result.isSuccess()) {
+                    sold++;
+                } else {
+                    failedAtCheckout++;
+                }
+                carts[event.shopper] = null;
+            }
+        }
+        int checkouts = sold + failedAtCheckout;
+        System.out.printf("%-12s sold %,d, rejected at add %,d, abandoned %,d, failed at checkout %,d of %,d (%.1f%%)%n",
+                        label + ":", sold, rejectedAtAdd, abandoned, failedAtCheckout, checkouts,
+                        checkouts == 0 ? 0.0 : 100.0 * failedAtCheckout / checkouts);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package bench;
+
+import models.CartItem;
+import models.Customer;
+import models.Product;
+import shipping.Parcel;
+import shipping.ShipmentPlanner;
+import shipping.Shipment;
+import org.openjdk.jmh.annotations.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shipment planning: one batch run over 100k pending orders from 20k customers,
+ * and packing a single large order into parcels
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ShipmentPlannerBenchmark {
+    private static final long MAX_PARCEL_GRAMS = 30_000;
+    
+    @Param({"100000"})
+    public int orders;
+    
+    private Product[] shippable;
+    private Customer[] customers;
+    private List<List<CartItem>> orderItems;
+    private int[] orderCustomer;
+    private List<CartItem> largeOrder;
+    private ShipmentPlanner planner;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        List<Product> products = new ArrayList<>();
+        for (Product product : BenchmarkData.products(5000)) {
+            if (product.requiresShipping()) {
+                products.add(product);
+            }
+        }
+        shippable = products.toArray(new Product[0]);
+        customers = new Customer[orders / 5];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = new Customer("Customer " + i, 0);
+        }
+        orderItems = new ArrayList<>(orders);
+        orderCustomer = new int[orders];
+        for (int i = 0; i < orders; i++) {
+            List<CartItem> items = new ArrayList<>();
+            int lines = 1 + random.nextInt(4);
+            for (int l = 0; l < lines; l++) {
+                items.add(new CartItem(shippable[random.nextInt(shippable.length)], 1 + random.nextInt(3)));
+            }
+            orderItems.add(items);
+            orderCustomer[i] = random.nextInt(customers.length);
+        }
+        largeOrder = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            largeOrder.add(new CartItem(shippable[i], 1 + random.nextInt(5)));
+        }
+    }
+    
+    @Setup(Level.Invocation)
+    public void submitOrders() {
+        planner = new ShipmentPlanner(MAX_PARCEL_GRAMS, Duration.ZERO);
+        for (int i = 0; i < orders; i++) {
+            planner.submit(customers[orderCustomer[i]], orderItems.get(i));
+        }
+    }
+    
+    @Benchmark
+    public List<Shipment> batchRun() {
+        return planner.runBatch(Duration.ofSeconds(10));
+    }
+    
+    @Benchmark
+    public List<Parcel> packLargeOrder() {
+        return ShipmentPlanner.pack(largeOrder, MAX_PARCEL_GRAMS);
+    }
+}
\ No newline at end of file
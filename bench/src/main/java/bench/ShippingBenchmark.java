@@ -0,0 +1,33 @@
+package bench;
+
+import models.CartItem;
+import services.ShippingService;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for ShippingService fee calculation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShippingBenchmark {
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int cartSize;
+    
+    private List<CartItem> shippableItems;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        shippableItems = BenchmarkData.cart(BenchmarkData.products(cartSize)).getShippableItems();
+    }
+    
+    @Benchmark
+    public double calculateShippingFee() {
+        return ShippingService.calculateShippingFee(shippableItems);
+    }
+}
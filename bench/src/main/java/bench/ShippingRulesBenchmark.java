@@ -0,0 +1,69 @@
+package bench;
+
+import services.ShippingRules;
+import org.openjdk.jmh.annotations.*;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fee evaluation against compiled ShippingRules as the bracket count grows;
+ * the time per fee should stay flat. Brackets are either evenly 25 g apart or
+ * skewed: 1 g apart except for one last bracket at 5,000 kg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShippingRulesBenchmark {
+    private static final int WEIGHTS = 1024;
+    
+    @Param({"1", "10", "100", "1000", "5000"})
+    public int brackets;
+    
+    @Param({"even", "skewed"})
+    public String layout;
+    
+    private ShippingRules rules;
+    private int zone;
+    private long[] weights;
+    private long[] volumes;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        Properties config = new Properties();
+        config.setProperty("zones", "domestic,remote,international");
+        for (String name : new String[] {"domestic", "remote", "international"}) {
+            StringBuilder spec = new StringBuilder("0:500:1000");
+            for (int i = 1; i < brackets; i++) {
+                long start = !layout.equals("skewed") ? i * 25L : i < brackets - 1 ? i : 5_000_000;
+                spec.append(',').append(start).append(':')
+                    .append(500 + random.nextInt(2000)).append(':').append(500 + random.nextInt(1500));
+            }
+            config.setProperty(name + ".brackets", spec.toString());
+        }
+        config.setProperty("free.threshold", "1000000");
+        config.setProperty("dim.divisor", layout.equals("skewed") ? "0" : "5000");
+        rules = ShippingRules.parse(config);
+        zone = rules.zoneIndex("remote");
+        
+        weights = new long[WEIGHTS];
+        volumes = new long[WEIGHTS];
+        // Skewed weights fall among the 1 g brackets, where a coarse table cell spans many
+        long maxWeight = layout.equals("skewed") ? brackets : Math.max(25_000, brackets * 25L + 1000);
+        for (int i = 0; i < WEIGHTS; i++) {
+            weights[i] = 1 + random.nextLong(maxWeight);
+            volumes[i] = random.nextLong(100_000);
+        }
+    }
+    
+    @Benchmark
+    public long fee() {
+        int i = next++ & (WEIGHTS - 1);
+        return rules.fee(zone, weights[i], volumes[i], 5000);
+    }
+}
\ No newline at end of file
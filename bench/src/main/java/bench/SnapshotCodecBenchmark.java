@@ -0,0 +1,67 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a session snapshot (customer, products and cart) with
+ * SnapshotCodec against Java serialization and JSON; see SnapshotFormats for sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotCodecBenchmark {
+    @Param({"1", "10", "100"})
+    public int cartSize;
+    
+    private SnapshotFormats.Session session;
+    private ByteBuffer buffer;
+    private byte[] binary;
+    private byte[] javaSerialized;
+    private byte[] json;
+    
+    @Setup
+    public void setUp() {
+        session = SnapshotFormats.session(cartSize);
+        buffer = ByteBuffer.allocate(SnapshotFormats.binarySize(session));
+        ByteBuffer encoded = SnapshotFormats.binary(session, buffer);
+        binary = new byte[encoded.remaining()];
+        encoded.get(binary);
+        javaSerialized = SnapshotFormats.javaSerialized(session);
+        json = SnapshotFormats.json(session);
+    }
+    
+    @Benchmark
+    public ByteBuffer binaryEncode() {
+        return SnapshotFormats.binary(session, buffer);
+    }
+    
+    @Benchmark
+    public SnapshotFormats.Session binaryDecode() {
+        return SnapshotFormats.fromBinary(ByteBuffer.wrap(binary));
+    }
+    
+    @Benchmark
+    public byte[] javaSerializationEncode() {
+        return SnapshotFormats.javaSerialized(session);
+    }
+    
+    @Benchmark
+    public SnapshotFormats.Session javaSerializationDecode() {
+        return SnapshotFormats.fromJavaSerialized(javaSerialized);
+    }
+    
+    @Benchmark
+    public byte[] jsonEncode() {
+        return SnapshotFormats.json(session);
+    }
+    
+    @Benchmark
+    public SnapshotFormats.Session jsonDecode() {
+        return SnapshotFormats.fromJson(json);
+    }
+}
\ No newline at end of file
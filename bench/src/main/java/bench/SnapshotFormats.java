@@ -0,0 +1,367 @@
+package bench;
+
+import interfaces.Shippable;
+import models.Cart;
+import models.CartItem;
+import models.Customer;
+import models.ExpirableProduct;
+import models.Money;
+import models.Product;
+import persistence.SnapshotCodec;
+import products.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A session snapshot (customer, the products in their cart, and the cart) in three
+ * formats: SnapshotCodec, Java serialization of mirror classes, and JSON written and
+ * parsed by hand into a generic tree the way a JSON library would. The model classes
+ * are not Serializable, so Java serialization goes through plain mirrors of their fields
+ *
+ * Usage: java -cp target/benchmarks.jar bench.SnapshotFormats   prints encoded sizes
+ */
+public class SnapshotFormats {
+    
+    /**
+     * Decoded session
+     */
+    static final class Session {
+        final Customer customer;
+        final Map<Long, Product> products;
+        final Cart cart;
+        
+        Session(Customer customer, Map<Long, Product> products, Cart cart) {
+            this.customer = customer;
+            this.products = products;
+            this.cart = cart;
+        }
+    }
+    
+    static Session session(int lines) {
+        Product[] products = BenchmarkData.products(lines);
+        Cart cart = BenchmarkData.cart(products);
+        Customer customer = BenchmarkData.richCustomer();
+        customer.setShippingZone("EU");
+        Map<Long, Product> byId = new LinkedHashMap<>();
+        for (Product product : products) {
+            byId.put(product.getId(), product);
+        }
+        return new Session(customer, byId, cart);
+    }
+    
+    // Binary
+    
+    static ByteBuffer binary(Session session, ByteBuffer out) {
+        out.clear();
+        SnapshotCodec.writeCustomer(out, session.customer);
+        SnapshotCodec.writeProducts(out, session.products.values());
+        SnapshotCodec.writeCart(out, session.cart);
+        return out.flip();
+    }
+    
+    static int binarySize(Session session) {
+        return SnapshotCodec.sizeOf(session.customer) + SnapshotCodec.sizeOfProducts(session.products.values())
+             + SnapshotCodec.sizeOf(session.cart);
+    }
+    
+    static Session fromBinary(ByteBuffer in) {
+        Customer customer = SnapshotCodec.readCustomer(in);
+        Map<Long, Product> products = SnapshotCodec.readProducts(in);
+        return new Session(customer, products, SnapshotCodec.readCart(in, products::get));
+    }
+    
+    // Java serialization
+    
+    private static final class ProductFields implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String type;
+        long id;
+        String name;
+        long priceMinor;
+        int quantity;
+        long expiryEpochDay;
+        boolean expired;
+        double weight;
+        long volumeCm3;
+    }
+    
+    private static final class SessionFields implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String customerName;
+        long balanceMinor;
+        String shippingZone;
+        ProductFields[] products;
+        long[] lineProductIds;
+        int[] lineQuantities;
+    }
+    
+    static byte[] javaSerialized(Session session) {
+        SessionFields fields = new SessionFields();
+        fields.customerName = session.customer.getName();
+        fields.balanceMinor = session.customer.getBalanceMinor();
+        fields.shippingZone = session.customer.getShippingZone();
+        fields.products = new ProductFields[session.products.size()];
+        int i = 0;
+        for (Product product : session.products.values()) {
+            ProductFields p = new ProductFields();
+            p.type = product.getClass().getSimpleName();
+            p.id = product.getId();
+            p.name = product.getName();
+            p.priceMinor = product.getPriceMinor();
+            p.quantity = product.getQuantity();
+            if (product instanceof ExpirableProduct) {
+                p.expiryEpochDay = ((ExpirableProduct) product).getExpirationEpochDay();
+                p.expired = product.isExpired();
+            }
+            if (product instanceof Shippable) {
+                p.weight = ((Shippable) product).getWeight();
+                p.volumeCm3 = ((Shippable) product).getVolumeCm3();
+            }
+            fields.products[i++] = p;
+        }
+        List<CartItem> items = session.cart.getItems();
+        fields.lineProductIds = new long[items.size()];
+        fields.lineQuantities = new int[items.size()];
+        for (i = 0; i < items.size(); i++) {
+            fields.lineProductIds[i] = items.get(i).getProduct().getId();
+            fields.lineQuantities[i] = items.get(i).getQuantity();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(fields);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    static Session fromJavaSerialized(byte[] bytes) {
+        SessionFields fields;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            fields = (SessionFields) in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        Customer customer = customer(fields.customerName, fields.balanceMinor, fields.shippingZone);
+        Map<Long, Product> products = new LinkedHashMap<>();
+        for (ProductFields p : fields.products) {
+            products.put(p.id, product(p.type, p.name, p.priceMinor, p.quantity, p.expiryEpochDay,
+                                       p.expired, p.weight, p.volumeCm3));
+        }
+        Cart cart = new Cart();
+        for (int i = 0; i < fields.lineProductIds.length; i++) {
+            cart.restoreLine(products.get(fields.lineProductIds[i]), fields.lineQuantities[i]);
+        }
+        return new Session(customer, products, cart);
+    }
+    
+    // JSON
+    
+    static byte[] json(Session session) {
+        StringBuilder out = new StringBuilder(256 + session.products.size() * 160);
+        out.append("{\"customer\":{\"name\":");
+        quote(out, session.customer.getName());
+        out.append(",\"balance\":").append(session.customer.getBalanceMinor()).append(",\"zone\":");
+        if (session.customer.getShippingZone() == null) {
+            out.append("null");
+        } else {
+            quote(out, session.customer.getShippingZone());
+        }
+        out.append("},\"products\":[");
+        boolean first = true;
+        for (Product product : session.products.values()) {
+            out.append(first ? "" : ",").append("{\"id\":").append(product.getId()).append(",\"type\":");
+            quote(out, product.getClass().getSimpleName());
+            out.append(",\"name\":");
+            quote(out, product.getName());
+            out.append(",\"price\":").append(product.getPriceMinor())
+               .append(",\"quantity\":").append(product.getQuantity());
+            if (product instanceof ExpirableProduct) {
+                out.append(",\"expiry\":").append(((ExpirableProduct) product).getExpirationEpochDay())
+                   .append(",\"expired\":").append(product.isExpired());
+            }
+            if (product instanceof Shippable) {
+                out.append(",\"weight\":").append(((Shippable) product).getWeight())
+                   .append(",\"volume\":").append(((Shippable) product).getVolumeCm3());
+            }
+            out.append('}');
+            first = false;
+        }
+        out.append("],\"lines\":[");
+        first = true;
+        for (CartItem item : session.cart.getItems()) {
+            out.append(first ? "[" : ",[").append(item.getProduct().getId()).append(',')
+               .append(item.getQuantity()).append(']');
+            first = false;
+        }
+        return out.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+    
+    @SuppressWarnings("unchecked")
+    static Session fromJson(byte[] bytes) {
+        Map<String, Object> root = (Map<String, Object>) new JsonParser(new String(bytes, StandardCharsets.UTF_8)).value();
+        Map<String, Object> c = (Map<String, Object>) root.get("customer");
+        Customer customer = customer((String) c.get("name"), ((Number) c.get("balance")).longValue(), (String) c.get("zone"));
+        Map<Long, Product> products = new LinkedHashMap<>();
+        for (Object element : (List<Object>) root.get("products")) {
+            Map<String, Object> p = (Map<String, Object>) element;
+            products.put(((Number) p.get("id")).longValue(),
+                         product((String) p.get("type"), (String) p.get("name"), ((Number) p.get("price")).longValue(),
+                                 ((Number) p.get("quantity")).intValue(),
+                                 p.containsKey("expiry") ? ((Number) p.get("expiry")).longValue() : 0,
+                                 Boolean.TRUE.equals(p.get("expired")),
+                                 p.containsKey("weight") ? ((Number) p.get("weight")).doubleValue() : 0,
+                                 p.containsKey("volume") ? ((Number) p.get("volume")).longValue() : 0));
+        }
+        Cart cart = new Cart();
+        for (Object element : (List<Object>) root.get("lines")) {
+            List<Object> line = (List<Object>) element;
+            cart.restoreLine(products.get(((Number) line.get(0)).longValue()), ((Number) line.get(1)).intValue());
+        }
+        return new Session(customer, products, cart);
+    }
+    
+    /**
+     * Recursive descent parser into maps, lists, strings, numbers, booleans and null
+     */
+    private static final class JsonParser {
+        private final String s;
+        private int at;
+        
+        JsonParser(String s) {
+            this.s = s;
+        }
+        
+        Object value() {
+            char c = s.charAt(at);
+            if (c == '{') {
+                Map<String, Object> object = new HashMap<>();
+                at++;
+                while (s.charAt(at) != '}') {
+                    String key = string();
+                    at++; // ':'
+                    object.put(key, value());
+                    if (s.charAt(at) == ',') {
+                        at++;
+                    }
+                }
+                at++;
+                return object;
+            } else if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                at++;
+                while (s.charAt(at) != ']') {
+                    array.add(value());
+                    if (s.charAt(at) == ',') {
+                        at++;
+                    }
+                }
+                at++;
+                return array;
+            } else if (c == '"') {
+                return string();
+            } else if (s.startsWith("null", at)) {
+                at += 4;
+                return null;
+            } else if (s.startsWith("true", at)) {
+                at += 4;
+                return Boolean.TRUE;
+            } else if (s.startsWith("false", at)) {
+                at += 5;
+                return Boolean.FALSE;
+            }
+            int start = at;
+            boolean integral = true;
+            while (at < s.length() && "+-0123456789.eE".indexOf(s.charAt(at)) >= 0) {
+                integral &= Character.isDigit(s.charAt(at)) || s.charAt(at) == '-';
+                at++;
+            }
+            String number = s.substring(start, at);
+            return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        }
+        
+        private String string() {
+            StringBuilder out = new StringBuilder();
+            at++;
+            char c;
+            while ((c = s.charAt(at++)) != '"') {
+                if (c == '\\') {
+                    c = s.charAt(at++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(s.substring(at, at + 4), 16);
+                        at += 4;
+                    }
+                }
+                out.append(c);
+            }
+            return out.toString();
+        }
+    }
+    
+    // Shared model rebuilding
+    
+    private static Customer customer(String name, long balanceMinor, String zone) {
+        Customer customer = new Customer(name, 0);
+        customer.addBalanceMinor(balanceMinor);
+        customer.setShippingZone(zone);
+        return customer;
+    }
+    
+    private static Product product(String type, String name, long priceMinor, int quantity, long expiryEpochDay,
+                                   boolean expired, double weight, long volumeCm3) {
+        double price = Money.toMajor(priceMinor);
+        LocalDate expiry = LocalDate.ofEpochDay(expiryEpochDay);
+        Product product;
+        switch (type) {
+            case "Cheese": product = new Cheese(name, price, quantity, expiry, weight, volumeCm3); break;
+            case "Biscuits": product = new Biscuits(name, price, quantity, expiry, weight, volumeCm3); break;
+            case "TV": product = new TV(name, price, quantity, weight, volumeCm3); break;
+            case "Mobile": product = new Mobile(name, price, quantity); break;
+            case "ScratchCard": product = new ScratchCard(name, price, quantity); break;
+            default: throw new IllegalArgumentException("Unknown product type " + type);
+        }
+        if (expired) {
+            ((ExpirableProduct) product).markExpired();
+        }
+        return product;
+    }
+    
+    public static void main(String[] args) {
+        System.out.printf("%-8s %12s %12s %12s%n", "Lines", "Binary", "Java ser.", "JSON");
+        for (int lines : new int[] {1, 10, 100, 1000}) {
+            Session session = session(lines);
+            System.out.printf("%-8d %12d %12d %12d%n", lines, binarySize(session),
+                            javaSerialized(session).length, json(session).length);
+        }
+    }
+}
\ No newline at end of file
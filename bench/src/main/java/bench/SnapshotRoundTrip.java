@@ -0,0 +1,253 @@
+package bench;
+
+import interfaces.Shippable;
+import models.Cart;
+import models.CartItem;
+import models.Customer;
+import models.ExpirableProduct;
+import models.ExpirableShippableProduct;
+import models.Product;
+import models.ShippableProduct;
+import persistence.SnapshotCodec;
+import products.Biscuits;
+import products.Cheese;
+import products.Mobile;
+import products.ScratchCard;
+import products.TV;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Round-trip check of SnapshotCodec over the whole product hierarchy, carts and customers
+ * Every product class is written and read back, alone and as a catalog, and compared
+ * field by field at each level it has: Product, then ExpirableProduct and Shippable.
+ * No product is expirable without being shippable, so Cheese and Biscuits cover
+ * ExpirableProduct. Carts are read back against the catalog, and customers with and
+ * without a shipping zone. Every
+ * snapshot must be exactly its computed size, and every one of its prefixes, another
+ * version and another kind must be rejected with IllegalArgumentException. Fails (exit
+ * code 1) if any check does not hold, listing every one that did not
+ *
+ * Usage: java -cp target/benchmarks.jar bench.SnapshotRoundTrip
+ */
+public class SnapshotRoundTrip {
+    private static final List<String> failures = new ArrayList<>();
+    private static int checks;
+    
+    public static void main(String[] args) {
+        LocalDate expiry = LocalDate.of(2031, 6, 30);
+        Cheese expiredCheese = new Cheese("Old Cheese", 3.5, 2, LocalDate.of(1999, 12, 31), 0.25);
+        expiredCheese.markExpired();
+        Mobile pricey = new Mobile("Pricey", 0, 1);
+        pricey.restorePriceMinor((1L << 53) + 1); // no double holds this price exactly
+        Mobile priciest = new Mobile("Priciest", 0, 1);
+        priciest.restorePriceMinor(Long.MAX_VALUE);
+        List<Product> catalog = List.of(
+            new Cheese("Cheese", 100.0, 10, expiry),                              // ExpirableShippableProduct, whole grams
+            expiredCheese,                                                        // expired flag
+            new Biscuits("Biscuits \u00e9\u6f22\ud83c\udf6a", 0.99, 0, expiry, 1.0 / 3, 750),  // fractional weight, UTF-8 name
+            new TV("TV", 500.0, Integer.MAX_VALUE / 2, 12.5, 90_000),             // ShippableProduct with a volume
+            new TV("Small TV", 120.01, 3),                                        // ShippableProduct defaults
+            new Mobile("Mobile", 800.0, 7),                                       // plain Product
+            new ScratchCard("Scratch Card", 0.0, 1),                              // zero price
+            pricey,                                                               // minor-unit price beyond 2^53
+            priciest);                                                            // largest price
+        
+        for (Product product : catalog) {
+            roundTrip(level(product) + " " + product.getName(), product, SnapshotCodec::sizeOf,
+                      SnapshotCodec::writeProduct, SnapshotCodec::readProduct, SnapshotRoundTrip::compare);
+        }
+        
+        Product unregistered = new Product("Gift Voucher", 10.0, 1) { };
+        check("unregistered product class is rejected", rejects(() -> SnapshotCodec.sizeOf(unregistered)));
+        
+        // A catalog keeps the original ids, so carts written against it can be resolved
+        Map<Long, Product> restoredCatalog = roundTrip("catalog", catalog, SnapshotCodec::sizeOfProducts,
+                                                       SnapshotCodec::writeProducts, SnapshotCodec::readProducts,
+                                                       SnapshotRoundTrip::compareCatalog);
+        
+        Cart cart = new Cart();
+        cart.add(catalog.get(0), 4);
+        cart.add(catalog.get(3), 1);
+        cart.add(catalog.get(5), 7);
+        cart.restoreLine(catalog.get(2), 5); // more than in stock, as a snapshot may hold
+        Function<ByteBuffer, Cart> readCart = in -> SnapshotCodec.readCart(in, restoredCatalog::get);
+        roundTrip("cart", cart, SnapshotCodec::sizeOf, SnapshotCodec::writeCart, readCart, SnapshotRoundTrip::compare);
+        roundTrip("empty cart", new Cart(), SnapshotCodec::sizeOf, SnapshotCodec::writeCart, readCart,
+                  SnapshotRoundTrip::compare);
+        ByteBuffer cartSnapshot = write(cart, SnapshotCodec.sizeOf(cart), SnapshotCodec::writeCart);
+        check("cart with an unknown product is rejected", rejects(() -> SnapshotCodec.readCart(cartSnapshot, id -> null)));
+        
+        Customer customer = new Customer("Ana \u00d6zt\u00fcrk", 1234.56);
+        customer.setShippingZone("EU-West");
+        roundTrip("customer", customer, SnapshotCodec::sizeOf, SnapshotCodec::writeCustomer,
+                  SnapshotCodec::readCustomer, SnapshotRoundTrip::compare);
+        roundTrip("customer without zone", new Customer("Bo", 0), SnapshotCodec::sizeOf,
+                  SnapshotCodec::writeCustomer, SnapshotCodec::readCustomer, SnapshotRoundTrip::compare);
+        
+        ByteBuffer productSnapshot = write(catalog.get(0), SnapshotCodec.sizeOf(catalog.get(0)), SnapshotCodec::writeProduct);
+        check("product read as a customer is rejected", rejects(() -> SnapshotCodec.readCustomer(productSnapshot.duplicate())));
+        check("customer read as a cart is rejected", rejects(() ->
+            SnapshotCodec.readCart(write(customer, SnapshotCodec.sizeOf(customer), SnapshotCodec::writeCustomer), id -> null)));
+        
+        System.out.printf("%d checks over %d products, catalog, carts and customers%n", checks, catalog.size());
+        if (failures.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            System.out.println("FAILED:");
+            failures.forEach(failure -> System.out.println("  " + failure));
+            System.exit(1);
+        }
+    }
+    
+    private interface Writer<T> {
+        void write(ByteBuffer out, T value);
+    }
+    
+    private interface Comparison<T, R> {
+        String differences(T original, R restored);
+    }
+    
+    /**
+     * Write a value, check its size, read it back and compare, then check that other
+     * versions and every truncation of the snapshot are rejected
+     * @return the value read back
+     */
+    private static <T, R> R roundTrip(String name, T value, Function<T, Integer> size, Writer<T> writer,
+                                      Function<ByteBuffer, R> reader, Comparison<T, R> comparison) {
+        int expectedSize = size.apply(value);
+        ByteBuffer snapshot = write(value, expectedSize, writer);
+        check(name + ": wrote " + snapshot.remaining() + " bytes, sizeOf said " + expectedSize,
+              snapshot.remaining() == expectedSize);
+        
+        ByteBuffer in = snapshot.duplicate();
+        R restored = reader.apply(in);
+        check(name + ": " + in.remaining() + " bytes left unread", !in.hasRemaining());
+        String differences = comparison.differences(value, restored);
+        check(name + ": " + differences, differences.isEmpty());
+        
+        byte[] bytes = new byte[snapshot.remaining()];
+        snapshot.duplicate().get(bytes);
+        for (int version : new int[] {0, SnapshotCodec.VERSION + 1}) {
+            byte[] other = bytes.clone();
+            other[0] = (byte) version;
+            check(name + ": version " + version + " is rejected", rejects(() -> reader.apply(ByteBuffer.wrap(other))));
+        }
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] prefix = Arrays.copyOf(bytes, length);
+            boolean rejected = rejects(() -> reader.apply(ByteBuffer.wrap(prefix)));
+            check(name + ": truncation to " + length + " of " + bytes.length + " bytes is rejected", rejected);
+            if (!rejected) {
+                break;
+            }
+        }
+        return restored;
+    }
+    
+    private static <T> ByteBuffer write(T value, int size, Writer<T> writer) {
+        ByteBuffer out = ByteBuffer.allocate(size + 16);
+        writer.write(out, value);
+        return out.flip();
+    }
+    
+    private static boolean rejects(Runnable read) {
+        try {
+            read.run();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        } catch (RuntimeException e) {
+            failures.add("unexpected " + e);
+            return true;
+        }
+    }
+    
+    private static void check(String what, boolean ok) {
+        checks++;
+        if (!ok) {
+            failures.add(what);
+        }
+    }
+    
+    private static String level(Product product) {
+        if (product instanceof ExpirableShippableProduct) {
+            return "ExpirableShippableProduct";
+        } else if (product instanceof ShippableProduct) {
+            return "ShippableProduct";
+        }
+        return "Product";
+    }
+    
+    /**
+     * Compare every field a product's level of the hierarchy has
+     */
+    private static String compare(Product original, Product restored) {
+        List<String> differences = new ArrayList<>();
+        differ(differences::add, "class", original.getClass(), restored.getClass());
+        differ(differences::add, "name", original.getName(), restored.getName());
+        differ(differences::add, "price", original.getPriceMinor(), restored.getPriceMinor());
+        differ(differences::add, "quantity", original.getQuantity(), restored.getQuantity());
+        differ(differences::add, "expired", original.isExpired(), restored.isExpired());
+        differ(differences::add, "shipping", original.requiresShipping(), restored.requiresShipping());
+        if (original instanceof ExpirableProduct && restored instanceof ExpirableProduct) {
+            differ(differences::add, "expiry", ((ExpirableProduct) original).getExpirationDate(),
+                   ((ExpirableProduct) restored).getExpirationDate());
+        }
+        if (original instanceof Shippable && restored instanceof Shippable) {
+            Shippable from = (Shippable) original;
+            Shippable to = (Shippable) restored;
+            differ(differences::add, "weight", from.getWeight(), to.getWeight());
+            differ(differences::add, "grams", from.getWeightGrams(), to.getWeightGrams());
+            differ(differences::add, "volume", from.getVolumeCm3(), to.getVolumeCm3());
+        }
+        return String.join(", ", differences);
+    }
+    
+    private static String compareCatalog(List<Product> original, Map<Long, Product> restored) {
+        List<String> differences = new ArrayList<>();
+        differ(differences::add, "size", original.size(), restored.size());
+        List<Map.Entry<Long, Product>> entries = new ArrayList<>(restored.entrySet());
+        for (int i = 0; i < Math.min(original.size(), entries.size()); i++) {
+            differ(differences::add, "id at " + i, original.get(i).getId(), entries.get(i).getKey());
+            String product = compare(original.get(i), entries.get(i).getValue());
+            if (!product.isEmpty()) {
+                differences.add(original.get(i).getName() + " (" + product + ")");
+            }
+        }
+        return String.join(", ", differences);
+    }
+    
+    private static String compare(Cart original, Cart restored) {
+        List<String> differences = new ArrayList<>();
+        List<CartItem> from = original.getItems();
+        List<CartItem> to = restored.getItems();
+        differ(differences::add, "lines", from.size(), to.size());
+        for (int i = 0; i < Math.min(from.size(), to.size()); i++) {
+            differ(differences::add, "product at " + i, from.get(i).getProduct().getName(), to.get(i).getProduct().getName());
+            differ(differences::add, "quantity at " + i, from.get(i).getQuantity(), to.get(i).getQuantity());
+        }
+        differ(differences::add, "subtotal", original.getSubtotalMinor(), restored.getSubtotalMinor());
+        differ(differences::add, "weight", original.getShippableWeightGrams(), restored.getShippableWeightGrams());
+        return String.join(", ", differences);
+    }
+    
+    private static String compare(Customer original, Customer restored) {
+        List<String> differences = new ArrayList<>();
+        differ(differences::add, "name", original.getName(), restored.getName());
+        differ(differences::add, "balance", original.getBalanceMinor(), restored.getBalanceMinor());
+        differ(differences::add, "zone", original.getShippingZone(), restored.getShippingZone());
+        return String.join(", ", differences);
+    }
+    
+    private static void differ(Consumer<String> differences, String field, Object original, Object restored) {
+        if (original == null ? restored != null : !original.equals(restored)) {
+            differences.accept(field + " " + original + " != " + restored);
+        }
+    }
+}
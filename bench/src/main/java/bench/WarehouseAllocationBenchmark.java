@@ -0,0 +1,85 @@
+package bench;
+
+import inventory.Allocation;
+import inventory.Warehouse;
+import inventory.WarehouseNetwork;
+import models.CartItem;
+import models.Product;
+import products.TV;
+import org.openjdk.jmh.annotations.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocating orders of 1 to 5 lines across 50 warehouses stocking 1M products, each
+ * product held by a few random warehouses; reports the latency distribution of one
+ * allocation and the fraction of split orders with -Dmetrics.enabled=true
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class WarehouseAllocationBenchmark {
+    private static final int WAREHOUSES = 50;
+    private static final String[] ZONES = {"north", "south", "east", "west", "central"};
+    
+    @Param({"1000000"})
+    public int products;
+    
+    @Param({"3"})
+    public int warehousesPerProduct;
+    
+    private Product[] catalog;
+    private WarehouseNetwork network;
+    
+    @State(Scope.Thread)
+    public static class Orders {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+        private final List<CartItem> lines = new ArrayList<>();
+        
+        List<CartItem> next(Product[] catalog) {
+            lines.clear();
+            int count = 1 + random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                lines.add(new CartItem(catalog[random.nextInt(catalog.length)], 1 + random.nextInt(3)));
+            }
+            return lines;
+        }
+        
+        String zone() {
+            return ZONES[random.nextInt(ZONES.length)];
+        }
+    }
+    
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        List<Warehouse> warehouses = new ArrayList<>();
+        for (int w = 0; w < WAREHOUSES; w++) {
+            Map<String, Integer> costs = new HashMap<>();
+            for (String zone : ZONES) {
+                costs.put(zone, 1 + random.nextInt(100));
+            }
+            warehouses.add(new Warehouse("WH-" + w, costs));
+        }
+        network = new WarehouseNetwork(warehouses, products);
+        catalog = new Product[products];
+        for (int i = 0; i < products; i++) {
+            catalog[i] = new TV("SKU-" + i, 10, 0, 1);
+            for (int copy = 0; copy < warehousesPerProduct; copy++) {
+                network.restock(catalog[i], random.nextInt(WAREHOUSES), 1_000);
+            }
+        }
+    }
+    
+    @Benchmark
+    public Allocation allocate(Orders orders) {
+        return network.allocate(orders.next(catalog), orders.zone());
+    }
+}
\ No newline at end of file
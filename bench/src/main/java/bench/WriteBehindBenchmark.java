@@ -0,0 +1,94 @@
+package bench;
+
+import models.Cart;
+import models.Customer;
+import models.Product;
+import persistence.FileStateStore;
+import persistence.StateBatch;
+import persistence.WriteBehindStore;
+import products.ScratchCard;
+import services.CheckoutService;
+import sinks.NoOpSink;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout of one-line carts over 1,000 products and 10,000 customers, persisting
+ * stock and balance to a FileStateStore either behind checkouts in batches or with
+ * a synchronous write per checkout, against not persisting at all
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBehindBenchmark {
+    private static final int PRODUCTS = 1_000;
+    private static final int CUSTOMERS = 10_000;
+    
+    @Param({"none", "writeBehind", "synchronous"})
+    public String persistence;
+    
+    private Product[] products;
+    private Customer[] customers;
+    private Path file;
+    private FileStateStore store;
+    private WriteBehindStore writeBehind;
+    
+    @State(Scope.Thread)
+    public static class Orders {
+        final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CheckoutService.setReceiptSink(new NoOpSink());
+        products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new ScratchCard("Card " + i, 1, Integer.MAX_VALUE / 2);
+        }
+        customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new Customer("Customer " + i, 1e9);
+        }
+        file = Files.createTempFile("state", ".db");
+        store = FileStateStore.open(file);
+        if (persistence.equals("writeBehind")) {
+            writeBehind = new WriteBehindStore(store, Duration.ofMillis(100), 4_096, 65_536);
+            CheckoutService.setWriteBehind(writeBehind);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CheckoutService.setWriteBehind(null);
+        if (writeBehind != null) {
+            writeBehind.close();
+        } else {
+            store.close();
+        }
+        Files.deleteIfExists(file);
+    }
+    
+    @Benchmark
+    public boolean checkout(Orders orders) throws IOException {
+        Product product = products[orders.random.nextInt(PRODUCTS)];
+        Customer customer = customers[orders.random.nextInt(CUSTOMERS)];
+        Cart cart = new Cart();
+        cart.add(product, 1);
+        boolean success = CheckoutService.tryCheckout(customer, cart).isSuccess();
+        if (persistence.equals("synchronous")) {
+            StateBatch batch = new StateBatch();
+            batch.addProduct(product.getName(), product.getStock().getOnHand());
+            batch.addCustomer(customer.getName(), customer.getBalanceMinor());
+            store.write(batch);
+        }
+        return success;
+    }
+}
\ No newline at end of file
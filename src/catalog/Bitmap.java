@@ -0,0 +1,172 @@
+package catalog;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Fixed-capacity bitset over SKU ids, used for index lookups and query results
+ * Combining operations modify this bitmap in place and return it, so a conjunctive
+ * query allocates only its first operand
+ */
+public final class Bitmap {
+    private long[] words;
+    
+    public Bitmap(int capacity) {
+        this.words = new long[wordCount(capacity)];
+    }
+    
+    private Bitmap(long[] words) {
+        this.words = words;
+    }
+    
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+    
+    public Bitmap copy() {
+        return new Bitmap(words.clone());
+    }
+    
+    /**
+     * Make room for at least the given number of ids
+     * @param capacity number of ids
+     */
+    void ensureCapacity(int capacity) {
+        int needed = wordCount(capacity);
+        if (needed > words.length) {
+            words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+        }
+    }
+    
+    public void set(int id) {
+        ensureCapacity(id + 1);
+        words[id >>> 6] |= 1L << id;
+    }
+    
+    public void clear(int id) {
+        if ((id >>> 6) < words.length) {
+            words[id >>> 6] &= ~(1L << id);
+        }
+    }
+    
+    public void set(int id, boolean value) {
+        if (value) {
+            set(id);
+        } else {
+            clear(id);
+        }
+    }
+    
+    public boolean get(int id) {
+        return (id >>> 6) < words.length && (words[id >>> 6] & (1L << id)) != 0;
+    }
+    
+    /**
+     * Keep only ids that are also in other
+     * @param other bitmap to intersect with
+     * @return this bitmap
+     */
+    public Bitmap and(Bitmap other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] &= other.words[i];
+        }
+        Arrays.fill(words, common, words.length, 0L);
+        return this;
+    }
+    
+    /**
+     * Add all ids of other
+     * @param other bitmap to union with
+     * @return this bitmap
+     */
+    public Bitmap or(Bitmap other) {
+        ensureCapacity(other.words.length << 6);
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        return this;
+    }
+    
+    /**
+     * Remove all ids of other
+     * @param other bitmap to subtract
+     * @return this bitmap
+     */
+    public Bitmap andNot(Bitmap other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] &= ~other.words[i];
+        }
+        return this;
+    }
+    
+    /**
+     * Count ids in the bitmap
+     * @return number of set bits
+     */
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Find the next id in the bitmap
+     * @param from first id to consider
+     * @return next set id at or after from, or -1 if none
+     */
+    public int nextSetBit(int from) {
+        int index = from >>> 6;
+        if (index >= words.length) {
+            return -1;
+        }
+        long word = words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+    
+    /**
+     * Visit every id in ascending order
+     * @param action receives each id
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+    
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int[] next = {0};
+        forEach(id -> ids[next[0]++] = id);
+        return ids;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Bitmap (%d ids)", cardinality());
+    }
+}
@@ -0,0 +1,225 @@
+package catalog;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Secondary indexes over a ProductCatalog
+ * 
+ * Sorted indexes answer range queries on price, expiry day (expirable SKUs only)
+ * and weight (shippable SKUs only); bitmaps track the shippable, expirable and
+ * in-stock sets. Every query returns a new Bitmap, and Bitmap's in-place and/or/andNot
+ * combine them, e.g. shippable SKUs under 2 kg that are in stock:
+ * 
+ *   index.weightAtMost(2000).and(index.inStock())
+ * 
+ * The index registers itself as a catalog listener and is updated incrementally when
+ * SKUs are added, prices change or a SKU goes in or out of stock.
+ */
+public class CatalogIndex implements CatalogListener {
+    private final ProductCatalog catalog;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SortedIndex byPrice = new SortedIndex();
+    private final SortedIndex byExpiry = new SortedIndex();
+    private final SortedIndex byWeight = new SortedIndex();
+    private final Bitmap shippable = new Bitmap(0);
+    private final Bitmap expirable = new Bitmap(0);
+    private final Bitmap inStock = new Bitmap(0);
+    
+    /**
+     * Build indexes for everything in the catalog and follow its changes
+     * @param catalog the catalog to index
+     */
+    public CatalogIndex(ProductCatalog catalog) {
+        if (catalog == null) {
+            throw new IllegalArgumentException("Catalog cannot be null");
+        }
+        this.catalog = catalog;
+        
+        // No SKUs can be added or repriced between the bulk load and registration
+        synchronized (catalog) {
+            load();
+            catalog.addListener(this);
+        }
+    }
+    
+    private void load() {
+        int count = catalog.size();
+        int[] ids = new int[count];
+        int[] prices = new int[count];
+        int[] expiryIds = new int[count];
+        int[] expiryDays = new int[count];
+        int[] weightIds = new int[count];
+        int[] weights = new int[count];
+        int expiring = 0;
+        int shipping = 0;
+        
+        shippable.ensureCapacity(count);
+        expirable.ensureCapacity(count);
+        inStock.ensureCapacity(count);
+        for (int id = 0; id < count; id++) {
+            ids[id] = id;
+            prices[id] = priceKey(catalog.getPriceMinor(id));
+            if (catalog.isExpirable(id)) {
+                expiryIds[expiring] = id;
+                expiryDays[expiring++] = catalog.getExpiryEpochDay(id);
+                expirable.set(id);
+            }
+            if (catalog.isShippable(id)) {
+                weightIds[shipping] = id;
+                weights[shipping++] = catalog.getWeightGrams(id);
+                shippable.set(id);
+            }
+            inStock.set(id, catalog.getQuantity(id) > 0);
+        }
+        byPrice.load(prices, ids, count);
+        byExpiry.load(expiryDays, expiryIds, expiring);
+        byWeight.load(weights, weightIds, shipping);
+    }
+    
+    /**
+     * Prices above Integer.MAX_VALUE minor units share the top key
+     */
+    private static int priceKey(long priceMinor) {
+        return (int) Math.min(priceMinor, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public void skuAdded(int id) {
+        lock.writeLock().lock();
+        try {
+            byPrice.insert(priceKey(catalog.getPriceMinor(id)), id);
+            if (catalog.isExpirable(id)) {
+                byExpiry.insert(catalog.getExpiryEpochDay(id), id);
+                expirable.set(id);
+            }
+            if (catalog.isShippable(id)) {
+                byWeight.insert(catalog.getWeightGrams(id), id);
+                shippable.set(id);
+            }
+            inStock.set(id, catalog.getQuantity(id) > 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void priceChanged(int id, long oldPriceMinor, long newPriceMinor) {
+        lock.writeLock().lock();
+        try {
+            byPrice.remove(priceKey(oldPriceMinor), id);
+            byPrice.insert(priceKey(newPriceMinor), id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void stockStatusChanged(int id) {
+        lock.writeLock().lock();
+        try {
+            inStock.set(id, catalog.getQuantity(id) > 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Find SKUs priced within a band
+     * @param loMinor lowest price in minor units, inclusive
+     * @param hiMinor highest price in minor units, inclusive
+     * @return matching ids
+     */
+    public Bitmap priceBetween(long loMinor, long hiMinor) {
+        lock.readLock().lock();
+        try {
+            Bitmap result = new Bitmap(catalog.size());
+            if (hiMinor >= 0) {
+                byPrice.range(priceKey(Math.max(loMinor, 0)), priceKey(hiMinor), result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Find expirable SKUs that are still sellable today but expire within the given days
+     * @param todayEpochDay current day as LocalDate epoch day
+     * @param days window length; 0 means expiring today
+     * @return matching ids
+     */
+    public Bitmap expiringWithin(long todayEpochDay, int days) {
+        lock.readLock().lock();
+        try {
+            Bitmap result = new Bitmap(catalog.size());
+            long last = Math.min(todayEpochDay + days, Integer.MAX_VALUE - 1L);
+            if (todayEpochDay <= last) {
+                byExpiry.range((int) Math.max(todayEpochDay, Integer.MIN_VALUE), (int) last, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Find expirable SKUs already past their expiry day
+     * @param todayEpochDay current day as LocalDate epoch day
+     * @return matching ids
+     */
+    public Bitmap expiredBefore(long todayEpochDay) {
+        lock.readLock().lock();
+        try {
+            Bitmap result = new Bitmap(catalog.size());
+            long last = Math.min(todayEpochDay - 1, Integer.MAX_VALUE - 1L);
+            if (last >= Integer.MIN_VALUE) {
+                byExpiry.range(Integer.MIN_VALUE, (int) last, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Find shippable SKUs whose unit weight is at most the given grams
+     * @param maxGrams heaviest unit weight, inclusive
+     * @return matching ids
+     */
+    public Bitmap weightAtMost(int maxGrams) {
+        lock.readLock().lock();
+        try {
+            Bitmap result = new Bitmap(catalog.size());
+            byWeight.range(Integer.MIN_VALUE, maxGrams, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Bitmap shippable() {
+        return snapshot(shippable);
+    }
+    
+    public Bitmap expirable() {
+        return snapshot(expirable);
+    }
+    
+    public Bitmap inStock() {
+        return snapshot(inStock);
+    }
+    
+    private Bitmap snapshot(Bitmap bitmap) {
+        lock.readLock().lock();
+        try {
+            return bitmap.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("CatalogIndex (%d SKUs)", byPrice.size());
+    }
+}
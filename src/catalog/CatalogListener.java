@@ -0,0 +1,30 @@
+package catalog;
+
+/**
+ * Receives changes made to a ProductCatalog, e.g. to keep indexes up to date
+ * Callbacks run on the thread that made the change and must be quick
+ */
+public interface CatalogListener {
+    
+    /**
+     * A SKU was added; called while the catalog is locked for adds
+     * @param id the new SKU
+     */
+    void skuAdded(int id);
+    
+    /**
+     * A SKU's price changed; called while the catalog is locked for price changes
+     * @param id the SKU
+     * @param oldPriceMinor previous price in minor units
+     * @param newPriceMinor new price in minor units
+     */
+    void priceChanged(int id, long oldPriceMinor, long newPriceMinor);
+    
+    /**
+     * A SKU went in or out of stock
+     * Concurrent changes may be reported out of order, so read the current quantity
+     * from the catalog instead of assuming a direction
+     * @param id the SKU
+     */
+    void stockStatusChanged(int id);
+}
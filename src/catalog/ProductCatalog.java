@@ -0,0 +1,313 @@
+package catalog;
+
+import clock.StoreClock;
+import interfaces.Shippable;
+import models.ExpirableProduct;
+import models.Product;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Catalog of SKUs stored column by column in primitive arrays
+ * 
+ * Instead of one heap object per Product subclass, each attribute (price, stock,
+ * weight, expiry, type flags) lives in its own array. Columns are split into pages
+ * of 65536 SKUs that are never reallocated, so ids stay valid and stock updates
+ * are never lost while the catalog grows. Ids are dense, starting at 0, and lookup
+ * is two array reads.
+ * 
+ * Stock uses the same packed available/reserved layout as StockLedger and is updated
+ * with lock-free CAS; adding SKUs and changing prices are serialized on the catalog.
+ * Listeners (e.g. CatalogIndex) are told about adds, price changes and SKUs going
+ * in or out of stock.
+ */
+public class ProductCatalog {
+    public static final int EXPIRABLE = 1;
+    public static final int SHIPPABLE = 2;
+    public static final int NO_EXPIRY = Integer.MAX_VALUE;
+    
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+    private static final VarHandle STOCK = MethodHandles.arrayElementVarHandle(long[].class);
+    
+    /**
+     * Columns for one page of SKUs
+     */
+    private static final class Page {
+        final String[] names = new String[PAGE_SIZE];
+        final long[] prices = new long[PAGE_SIZE];       // minor units
+        final long[] stock = new long[PAGE_SIZE];        // available << 32 | reserved
+        final int[] weightGrams = new int[PAGE_SIZE];
+        final int[] expiryEpochDays = new int[PAGE_SIZE];
+        final byte[] flags = new byte[PAGE_SIZE];
+    }
+    
+    private volatile Page[] pages = new Page[0];
+    private volatile int size;
+    private volatile CatalogListener[] listeners = new CatalogListener[0];
+    
+    /**
+     * Register a listener for catalog changes
+     * @param listener the listener
+     */
+    public synchronized void addListener(CatalogListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        CatalogListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        listeners = grown;
+    }
+    
+    /**
+     * Add a SKU
+     * @param name product name
+     * @param priceMinor price in minor units
+     * @param quantity available quantity
+     * @param weightGrams unit weight in grams, 0 if it does not ship
+     * @param expiryEpochDay last day it can be sold, NO_EXPIRY if it does not expire
+     * @param flags combination of EXPIRABLE and SHIPPABLE
+     * @return id of the new SKU
+     */
+    public synchronized int add(String name, long priceMinor, int quantity, int weightGrams, 
+                                int expiryEpochDay, int flags) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Product name cannot be null or empty");
+        }
+        if (priceMinor < 0) {
+            throw new IllegalArgumentException("Product price cannot be negative");
+        }
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Product quantity cannot be negative");
+        }
+        if ((flags & SHIPPABLE) != 0 && weightGrams <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        
+        int id = size;
+        if ((id & PAGE_MASK) == 0) {
+            Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+            grown[grown.length - 1] = new Page();
+            pages = grown;
+        }
+        Page page = pages[id >>> PAGE_BITS];
+        int slot = id & PAGE_MASK;
+        page.names[slot] = name;
+        page.prices[slot] = priceMinor;
+        page.stock[slot] = (long) quantity << 32;
+        page.weightGrams[slot] = weightGrams;
+        page.expiryEpochDays[slot] = (flags & EXPIRABLE) != 0 ? expiryEpochDay : NO_EXPIRY;
+        page.flags[slot] = (byte) flags;
+        size = id + 1;
+        for (CatalogListener listener : listeners) {
+            listener.skuAdded(id);
+        }
+        return id;
+    }
+    
+    /**
+     * Copy a product object into the catalog
+     * @param product the product to import
+     * @return id of the new SKU
+     */
+    public int addProduct(Product product) {
+        int flags = 0;
+        int weightGrams = 0;
+        int expiryEpochDay = NO_EXPIRY;
+        if (product instanceof ExpirableProduct) {
+            flags |= EXPIRABLE;
+            expiryEpochDay = Math.toIntExact(((ExpirableProduct) product).getExpirationEpochDay());
+        }
+        if (product.requiresShipping()) {
+            flags |= SHIPPABLE;
+            weightGrams = Math.toIntExact(((Shippable) product).getWeightGrams());
+        }
+        return add(product.getName(), product.getPriceMinor(), product.getQuantity(), 
+                   weightGrams, expiryEpochDay, flags);
+    }
+    
+    /**
+     * Get number of SKUs; valid ids are 0 to size() - 1
+     * @return SKU count
+     */
+    public int size() {
+        return size;
+    }
+    
+    private Page page(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown product id: " + id);
+        }
+        return pages[id >>> PAGE_BITS];
+    }
+    
+    public String getName(int id) { return page(id).names[id & PAGE_MASK]; }
+    public long getPriceMinor(int id) { return page(id).prices[id & PAGE_MASK]; }
+    public int getWeightGrams(int id) { return page(id).weightGrams[id & PAGE_MASK]; }
+    public int getExpiryEpochDay(int id) { return page(id).expiryEpochDays[id & PAGE_MASK]; }
+    public int getFlags(int id) { return page(id).flags[id & PAGE_MASK]; }
+    public boolean isShippable(int id) { return (getFlags(id) & SHIPPABLE) != 0; }
+    public boolean isExpirable(int id) { return (getFlags(id) & EXPIRABLE) != 0; }
+    
+    /**
+     * Check if a SKU is past its expiry day
+     * @param id SKU id
+     * @param todayEpochDay current day as LocalDate epoch day
+     * @return true if expired
+     */
+    public boolean isExpired(int id, long todayEpochDay) {
+        return todayEpochDay > getExpiryEpochDay(id);
+    }
+    
+    public boolean isExpired(int id) {
+        return isExpired(id, StoreClock.today());
+    }
+    
+    /**
+     * Get quantity that can still be reserved
+     * @param id SKU id
+     * @return available quantity
+     */
+    public int getQuantity(int id) {
+        Page page = page(id);
+        return (int) ((long) STOCK.getVolatile(page.stock, id & PAGE_MASK) >>> 32);
+    }
+    
+    /**
+     * Get quantity held by outstanding reservations
+     * @param id SKU id
+     * @return reserved quantity
+     */
+    public int getReserved(int id) {
+        Page page = page(id);
+        return (int) (long) STOCK.getVolatile(page.stock, id & PAGE_MASK);
+    }
+    
+    /**
+     * Check if quantity can be bought right now
+     * @param id SKU id
+     * @param quantity requested quantity
+     * @param todayEpochDay current day as LocalDate epoch day
+     * @return true if in stock and not expired
+     */
+    public boolean isAvailable(int id, int quantity, long todayEpochDay) {
+        return getQuantity(id) >= quantity && !isExpired(id, todayEpochDay);
+    }
+    
+    /**
+     * Change the price of a SKU
+     * @param id SKU id
+     * @param priceMinor new price in minor units
+     */
+    public synchronized void setPrice(int id, long priceMinor) {
+        if (priceMinor < 0) {
+            throw new IllegalArgumentException("Product price cannot be negative");
+        }
+        long[] prices = page(id).prices;
+        long oldPriceMinor = prices[id & PAGE_MASK];
+        prices[id & PAGE_MASK] = priceMinor;
+        if (oldPriceMinor != priceMinor) {
+            for (CatalogListener listener : listeners) {
+                listener.priceChanged(id, oldPriceMinor, priceMinor);
+            }
+        }
+    }
+    
+    /**
+     * Overwrite available quantity, keeping outstanding reservations
+     * @param id SKU id
+     * @param quantity new available quantity
+     */
+    public void setQuantity(int id, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        long[] stock = page(id).stock;
+        int slot = id & PAGE_MASK;
+        long current;
+        do {
+            current = (long) STOCK.getVolatile(stock, slot);
+        } while (!STOCK.compareAndSet(stock, slot, current, ((long) quantity << 32) | (current & LOW_MASK)));
+        stockChanged(id, (int) (current >>> 32), quantity);
+    }
+    
+    /**
+     * Move quantity from available to reserved if enough is available
+     * @param id SKU id
+     * @param quantity quantity to reserve
+     * @return true if reserved
+     */
+    public boolean tryReserve(int id, int quantity) {
+        requirePositive(quantity);
+        return update(id, -quantity, quantity);
+    }
+    
+    /**
+     * Turn a reservation into a sale
+     * @param id SKU id
+     * @param quantity previously reserved quantity
+     * @throws IllegalStateException if less than quantity is reserved
+     */
+    public void commit(int id, int quantity) {
+        requirePositive(quantity);
+        if (!update(id, 0, -quantity)) {
+            throw new IllegalStateException("Cannot commit more than reserved quantity");
+        }
+    }
+    
+    /**
+     * Return a reservation to available stock
+     * @param id SKU id
+     * @param quantity previously reserved quantity
+     * @throws IllegalStateException if less than quantity is reserved
+     */
+    public void release(int id, int quantity) {
+        requirePositive(quantity);
+        if (!update(id, quantity, -quantity)) {
+            throw new IllegalStateException("Cannot release more than reserved quantity");
+        }
+    }
+    
+    private boolean update(int id, int availableDelta, int reservedDelta) {
+        long[] stock = page(id).stock;
+        int slot = id & PAGE_MASK;
+        long current;
+        long next;
+        do {
+            current = (long) STOCK.getVolatile(stock, slot);
+            long available = (current >>> 32) + availableDelta;
+            long reserved = (current & LOW_MASK) + reservedDelta;
+            if (available < 0 || reserved < 0) {
+                return false;
+            }
+            if (available > Integer.MAX_VALUE || reserved > Integer.MAX_VALUE) {
+                throw new ArithmeticException("Stock count overflow");
+            }
+            next = (available << 32) | reserved;
+        } while (!STOCK.compareAndSet(stock, slot, current, next));
+        stockChanged(id, (int) (current >>> 32), (int) (next >>> 32));
+        return true;
+    }
+    
+    private void stockChanged(int id, int oldAvailable, int newAvailable) {
+        if ((oldAvailable == 0) != (newAvailable == 0)) {
+            for (CatalogListener listener : listeners) {
+                listener.stockStatusChanged(id);
+            }
+        }
+    }
+    
+    private static void requirePositive(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ProductCatalog (%d SKUs)", size);
+    }
+}
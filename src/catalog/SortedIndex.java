@@ -0,0 +1,88 @@
+package catalog;
+
+import java.util.Arrays;
+
+/**
+ * Sorted (key, id) pairs for range lookups on one catalog column
+ * Each pair is packed into a long with the key in the high 32 bits, so the array
+ * sorts by key and then id, and a range is found with two binary searches.
+ * Updates shift the tail with one arraycopy. Not thread-safe; CatalogIndex locks
+ */
+final class SortedIndex {
+    private long[] entries = new long[16];
+    private int size;
+    
+    private static long pack(int key, int id) {
+        return ((long) key << 32) | (id & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Replace the contents with unsorted pairs in one go
+     */
+    void load(int[] keys, int[] ids, int count) {
+        entries = new long[Math.max(16, count)];
+        for (int i = 0; i < count; i++) {
+            entries[i] = pack(keys[i], ids[i]);
+        }
+        Arrays.parallelSort(entries, 0, count);
+        size = count;
+    }
+    
+    void insert(int key, int id) {
+        long entry = pack(key, id);
+        int position = Arrays.binarySearch(entries, 0, size, entry);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        System.arraycopy(entries, position, entries, position + 1, size - position);
+        entries[position] = entry;
+        size++;
+    }
+    
+    void remove(int key, int id) {
+        int position = Arrays.binarySearch(entries, 0, size, pack(key, id));
+        if (position < 0) {
+            return;
+        }
+        System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+        size--;
+    }
+    
+    /**
+     * Add the ids of every pair with lo <= key <= hi to a bitmap
+     * @return number of ids added
+     */
+    int range(int lo, int hi, Bitmap out) {
+        if (lo > hi) {
+            return 0;
+        }
+        int from = lowerBound((long) lo << 32);
+        int to = hi == Integer.MAX_VALUE ? size : lowerBound((long) (hi + 1) << 32);
+        for (int i = from; i < to; i++) {
+            out.set((int) entries[i]);
+        }
+        return to - from;
+    }
+    
+    private int lowerBound(long entry) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] < entry) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,209 @@
+package clock;
+
+import events.EventBus;
+import events.Events;
+import events.ProductExpiredEvent;
+import metrics.Counter;
+import metrics.Metrics;
+import models.ExpirableProduct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Flips tracked products to expired when their day passes
+ * Products are bucketed by the first day they count as expired; at each midnight
+ * the due buckets are drained and their products marked. While the midnight timer
+ * runs, tracked products answer isExpired from their flag alone, so availability
+ * checks on them are a flag read; after moving the store clock, call advance. The
+ * callback and event of every expired product are sent once all due products are
+ * marked; a callback that throws is counted in expiry.callback.failures
+ */
+public class ExpiryScheduler implements AutoCloseable {
+    private static final Counter CALLBACK_FAILURES = Metrics.counter("expiry.callback.failures");
+    
+    private final TreeMap<Long, List<ExpirableProduct>> buckets = new TreeMap<>();
+    private final List<ExpirableProduct> expired = new ArrayList<>();
+    private final Consumer<ExpirableProduct> onExpired;
+    private ScheduledExecutorService timer;
+    
+    public ExpiryScheduler() {
+        this(product -> { });
+    }
+    
+    /**
+     * @param onExpired called once for every product as it expires
+     */
+    public ExpiryScheduler(Consumer<ExpirableProduct> onExpired) {
+        if (onExpired == null) {
+            throw new IllegalArgumentException("Expiry callback cannot be null");
+        }
+        this.onExpired = onExpired;
+    }
+    
+    /**
+     * Start tracking a product
+     * @param product product to expire at the end of its expiration day
+     */
+    public void track(ExpirableProduct product) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        long due = product.getExpirationEpochDay() + 1;
+        boolean expiredNow;
+        synchronized (this) {
+            expiredNow = due <= StoreClock.today();
+            if (expiredNow) {
+                expired.add(product);
+            } else {
+                buckets.computeIfAbsent(due, day -> new ArrayList<>()).add(product);
+                if (timer != null) {
+                    product.setScheduled(true);
+                }
+            }
+        }
+        if (expiredNow) {
+            product.markExpired();
+            notifyExpired(product);
+        }
+    }
+    
+    /**
+     * Stop tracking a product, e.g. when it is delisted
+     * @param product product to forget
+     * @return true if the product was tracked
+     */
+    public synchronized boolean untrack(ExpirableProduct product) {
+        List<ExpirableProduct> bucket = buckets.get(product.getExpirationEpochDay() + 1);
+        if (bucket != null && bucket.remove(product)) {
+            if (bucket.isEmpty()) {
+                buckets.remove(product.getExpirationEpochDay() + 1);
+            }
+            product.setScheduled(false);
+            return true;
+        }
+        return expired.remove(product);
+    }
+    
+    /**
+     * Expire every product whose day has passed
+     * @return number of products newly expired
+     */
+    public int advance() {
+        List<ExpirableProduct> due = new ArrayList<>();
+        synchronized (this) {
+            long today = StoreClock.today();
+            Iterator<Map.Entry<Long, List<ExpirableProduct>>> it = buckets.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, List<ExpirableProduct>> entry = it.next();
+                if (entry.getKey() > today) {
+                    break;
+                }
+                due.addAll(entry.getValue());
+                it.remove();
+            }
+            expired.addAll(due);
+            // Flag every due product before any callback runs, so none can stay sellable
+            for (ExpirableProduct product : due) {
+                product.markExpired();
+            }
+        }
+        for (ExpirableProduct product : due) {
+            notifyExpired(product);
+        }
+        return due.size();
+    }
+    
+    private void notifyExpired(ExpirableProduct product) {
+        try {
+            onExpired.accept(product);
+        } catch (RuntimeException e) {
+            CALLBACK_FAILURES.increment();
+        }
+        EventBus bus = Events.getBus();
+        if (bus != null) {
+            bus.publish(new ProductExpiredEvent(product));
+        }
+    }
+    
+    private void setScheduled(boolean scheduled) {
+        for (List<ExpirableProduct> bucket : buckets.values()) {
+            for (ExpirableProduct product : bucket) {
+                product.setScheduled(scheduled);
+            }
+        }
+    }
+    
+    /**
+     * Get products that have expired while tracked
+     * @return copy of the expired bucket
+     */
+    public synchronized List<ExpirableProduct> getExpired() {
+        return new ArrayList<>(expired);
+    }
+    
+    /**
+     * Get number of products still waiting to expire
+     * @return pending product count
+     */
+    public synchronized int pending() {
+        int count = 0;
+        for (List<ExpirableProduct> bucket : buckets.values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Run advance at every midnight of the store clock on a daemon thread, and let
+     * tracked products rely on it instead of reading the clock
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "expiry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Hand over first, so a day that ends meanwhile is still caught by advance
+        setScheduled(true);
+        advance();
+        scheduleNext();
+    }
+    
+    private synchronized void scheduleNext() {
+        if (timer == null) {
+            return;
+        }
+        long delay = Math.max(0, StoreClock.nextMidnight().toEpochMilli() - StoreClock.getClock().millis());
+        timer.schedule(() -> {
+            try {
+                advance();
+            } finally {
+                // Tracked products rely on the next run, so it must always be scheduled
+                scheduleNext();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop the midnight timer; tracked products are kept and go back to reading the
+     * store clock
+     */
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+            setScheduled(false);
+        }
+    }
+}
\ No newline at end of file
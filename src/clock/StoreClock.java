@@ -0,0 +1,94 @@
+package clock;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Store-wide source of the current date
+ * The current epoch day is cached together with the instant the next day starts,
+ * so reading it is one millisecond read and a compare; the zone is only consulted
+ * once a day. The clock can be replaced to make expiry deterministic in tests
+ */
+public final class StoreClock {
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile Day day = Day.of(clock);
+    
+    private StoreClock() {
+    }
+    
+    /**
+     * Cached day and the first millisecond after it
+     */
+    private static final class Day {
+        final long epochDay;
+        final long endMillis;
+        
+        Day(long epochDay, long endMillis) {
+            this.epochDay = epochDay;
+            this.endMillis = endMillis;
+        }
+        
+        static Day of(Clock clock) {
+            ZoneId zone = clock.getZone();
+            LocalDate today = LocalDate.now(clock);
+            long end = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            return new Day(today.toEpochDay(), end);
+        }
+    }
+    
+    /**
+     * Get the current day
+     * @return current day as LocalDate epoch day
+     */
+    public static long today() {
+        Day current = day;
+        if (clock.millis() >= current.endMillis) {
+            current = roll();
+        }
+        return current.epochDay;
+    }
+    
+    private static synchronized Day roll() {
+        Day current = day;
+        if (clock.millis() >= current.endMillis) {
+            current = Day.of(clock);
+            day = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Get the current date
+     * @return today's date
+     */
+    public static LocalDate todayDate() {
+        return LocalDate.ofEpochDay(today());
+    }
+    
+    /**
+     * Get the instant the current day ends
+     * @return start of the next day
+     */
+    public static Instant nextMidnight() {
+        today();
+        return Instant.ofEpochMilli(day.endMillis);
+    }
+    
+    /**
+     * Replace the clock, e.g. with Clock.fixed in tests
+     * @param newClock clock to read the time from
+     */
+    public static synchronized void setClock(Clock newClock) {
+        if (newClock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        clock = newClock;
+        day = Day.of(newClock);
+    }
+    
+    public static Clock getClock() {
+        return clock;
+    }
+}
\ No newline at end of file
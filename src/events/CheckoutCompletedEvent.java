@@ -0,0 +1,33 @@
+package events;
+
+import services.PricingSnapshot;
+
+/**
+ * A customer paid for an order
+ */
+public final class CheckoutCompletedEvent extends StoreEvent {
+    private final String customerName;
+    private final PricingSnapshot pricing;
+    private final long remainingBalanceMinor;
+    
+    /**
+     * @param customerName who paid
+     * @param pricing what was charged
+     * @param remainingBalanceMinor customer balance after payment, in minor units
+     */
+    public CheckoutCompletedEvent(String customerName, PricingSnapshot pricing, long remainingBalanceMinor) {
+        super(Type.CHECKOUT_COMPLETED);
+        this.customerName = customerName;
+        this.pricing = pricing;
+        this.remainingBalanceMinor = remainingBalanceMinor;
+    }
+    
+    public String getCustomerName() { return customerName; }
+    public PricingSnapshot getPricing() { return pricing; }
+    public long getRemainingBalanceMinor() { return remainingBalanceMinor; }
+    
+    @Override
+    public String toString() {
+        return String.format("CheckoutCompleted (Customer: %s, Total: %d)", customerName, pricing.getTotalAmountMinor());
+    }
+}
\ No newline at end of file
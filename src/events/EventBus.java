@@ -0,0 +1,420 @@
+package events;
+
+import metrics.Counter;
+import metrics.Metrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process publish/subscribe of StoreEvents over one bounded ring
+ * A publisher claims the next sequence with a single atomic increment and writes
+ * the event into its slot; the slot's state tells a reader whether it holds the
+ * event it expects, an older one not yet overwritten, or a newer one that lapped
+ * it. Every subscription reads the ring on a daemon thread of its own and hands
+ * whatever is ready to its consumer as one batch, so consumers never slow down
+ * publishers or each other. A consumer that falls a full ring behind is handled
+ * by its SlowConsumerPolicy; only WAIT makes publishers wait, and only up to the
+ * bus's maximum wait
+ */
+public class EventBus implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 256;
+    private static final int IDLE_YIELDS = 16;
+    private static final long MAX_IDLE_PARK_NANOS = 1_000_000;
+    
+    private static final Counter PUBLISHED = Metrics.counter("events.published");
+    private static final Counter DROPPED = Metrics.counter("events.dropped");
+    private static final Counter DISCONNECTED = Metrics.counter("events.disconnected");
+    private static final Counter WAIT_TIMEOUTS = Metrics.counter("events.wait.timeouts");
+    private static final Counter CONSUMER_ERRORS = Metrics.counter("events.consumer.errors");
+    
+    /**
+     * Called on the subscription's reader thread when its consumer throws; the
+     * reader carries on with the next batch either way
+     */
+    public interface ErrorHandler {
+        void onError(Subscription subscription, RuntimeException error);
+    }
+    
+    private final int mask;
+    private final AtomicReferenceArray<StoreEvent> slots;
+    // 0 before first use, then 2 * sequence + 1 while it is written, 2 * sequence + 2 once published
+    private final AtomicLongArray states;
+    private final AtomicLong cursor = new AtomicLong(); // next sequence to claim
+    private final long maxWaitNanos;
+    private volatile Subscription[] subscriptions = new Subscription[0];
+    private volatile Subscription[] waiting = new Subscription[0]; // those with SlowConsumerPolicy.WAIT
+    private volatile boolean closed;
+    private volatile ErrorHandler errorHandler = (subscription, error) -> { };
+    
+    public EventBus() {
+        this(DEFAULT_CAPACITY, Duration.ofMillis(1));
+    }
+    
+    /**
+     * @param capacity events kept for slow consumers, rounded up to a power of two
+     * @param maxWait longest a publisher waits for a consumer with SlowConsumerPolicy.WAIT
+     */
+    public EventBus(int capacity, Duration maxWait) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Maximum wait cannot be negative");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.states = new AtomicLongArray(size);
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+    
+    /**
+     * Publish an event to every subscription
+     * Never blocks unless a subscription with SlowConsumerPolicy.WAIT is a full ring
+     * behind, and then for at most the maximum wait
+     * Once the bus is closed, events are counted as dropped and discarded, so a
+     * checkout that already took payment never fails on a bus being shut down
+     * @param event the event
+     */
+    public void publish(StoreEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Event cannot be null");
+        }
+        if (closed) {
+            DROPPED.increment();
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        if (sequence > mask) {
+            awaitWaitingConsumers(sequence - mask - 1);
+        }
+        int index = (int) sequence & mask;
+        long writing = 2 * sequence + 1;
+        while (true) {
+            long state = states.get(index);
+            if (state > writing) {
+                // A publisher a full lap ahead took the slot; readers count this event as dropped
+                return;
+            }
+            if ((state & 1) != 0) {
+                // The publisher a lap behind is between its two writes
+                Thread.yield();
+            } else if (states.compareAndSet(index, state, writing)) {
+                break;
+            }
+        }
+        slots.set(index, event);
+        states.set(index, writing + 1);
+        PUBLISHED.increment();
+    }
+    
+    /**
+     * Give WAIT subscriptions still to read the event about to be overwritten time to catch up
+     */
+    private void awaitWaitingConsumers(long overwritten) {
+        long deadline = 0;
+        boolean waited = false;
+        for (Subscription subscription : waiting) {
+            while (subscription.next <= overwritten && subscription.active) {
+                long now = System.nanoTime();
+                if (!waited) {
+                    deadline = now + maxWaitNanos;
+                    waited = true;
+                } else if (now - deadline >= 0) {
+                    WAIT_TIMEOUTS.increment();
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+    }
+    
+    /**
+     * Set what sees consumer failures; they are always counted in events.consumer.errors
+     * @param handler called for every exception a consumer throws
+     */
+    public void setErrorHandler(ErrorHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        this.errorHandler = handler;
+    }
+    
+    /**
+     * Start delivering events published from now on to a consumer
+     * @param name name of the consumer, used for its thread
+     * @param consumer receives the events in batches
+     * @param policy what happens when the consumer falls a full ring behind
+     * @return the subscription, to watch its lag or unsubscribe
+     * @throws IllegalStateException if the bus is closed
+     */
+    public synchronized Subscription subscribe(String name, EventConsumer consumer, SlowConsumerPolicy policy) {
+        if (name == null || consumer == null || policy == null) {
+            throw new IllegalArgumentException("Name, consumer and policy cannot be null");
+        }
+        if (closed) {
+            throw new IllegalStateException("Event bus is closed");
+        }
+        Subscription subscription = new Subscription(name, consumer, policy, cursor.get());
+        subscriptions = append(subscriptions, subscription);
+        if (policy == SlowConsumerPolicy.WAIT) {
+            waiting = append(waiting, subscription);
+        }
+        subscription.reader.start();
+        return subscription;
+    }
+    
+    private static Subscription[] append(Subscription[] array, Subscription subscription) {
+        Subscription[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = subscription;
+        return copy;
+    }
+    
+    private synchronized void remove(Subscription subscription) {
+        subscriptions = without(subscriptions, subscription);
+        waiting = without(waiting, subscription);
+    }
+    
+    private static Subscription[] without(Subscription[] array, Subscription subscription) {
+        List<Subscription> kept = new ArrayList<>(Arrays.asList(array));
+        kept.remove(subscription);
+        return kept.toArray(new Subscription[0]);
+    }
+    
+    /**
+     * Get the current subscriptions
+     * @return copy of the subscriptions, in subscribe order
+     */
+    public List<Subscription> getSubscriptions() {
+        return Arrays.asList(subscriptions.clone());
+    }
+    
+    /**
+     * Get number of events kept for slow consumers
+     * @return ring capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Get number of events published so far
+     * @return published count, including events still being written
+     */
+    public long getPublished() {
+        return cursor.get();
+    }
+    
+    /**
+     * Stop accepting events, let every subscription finish what was published before
+     * the call, then stop their threads
+     * Events published concurrently with close may not be delivered
+     */
+    @Override
+    public void close() {
+        Subscription[] stopping;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stopping = subscriptions;
+        }
+        long end = cursor.get();
+        for (Subscription subscription : stopping) {
+            subscription.stopAt = end;
+            LockSupport.unpark(subscription.reader);
+        }
+        for (Subscription subscription : stopping) {
+            subscription.join();
+        }
+    }
+    
+    /**
+     * One consumer's position in the ring and the thread that reads for it
+     */
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final EventConsumer consumer;
+        private final SlowConsumerPolicy policy;
+        private final Thread reader;
+        private volatile long next; // first sequence not yet read
+        private volatile long stopAt = Long.MAX_VALUE; // reader stops once it has read up to here
+        private volatile boolean active = true;
+        private volatile long delivered;
+        private volatile long dropped;
+        
+        private Subscription(String name, EventConsumer consumer, SlowConsumerPolicy policy, long start) {
+            this.name = name;
+            this.consumer = consumer;
+            this.policy = policy;
+            this.next = start;
+            this.reader = new Thread(this::read, "event-consumer-" + name);
+            this.reader.setDaemon(true);
+        }
+        
+        public String getName() { return name; }
+        public SlowConsumerPolicy getPolicy() { return policy; }
+        
+        /**
+         * Get number of events published but not yet read by this consumer
+         * @return lag in events
+         */
+        public long getLag() {
+            return Math.max(0, cursor.get() - next);
+        }
+        
+        /**
+         * Get number of events handed to the consumer
+         * @return delivered count
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+        
+        /**
+         * Get number of events the consumer missed because it was lapped
+         * @return dropped count
+         */
+        public long getDropped() {
+            return dropped;
+        }
+        
+        /**
+         * Check whether events are still delivered to the consumer
+         * @return false once unsubscribed, disconnected or the bus is closed
+         */
+        public boolean isActive() {
+            return active;
+        }
+        
+        private void read() {
+            List<StoreEvent> batch = new ArrayList<>(MAX_BATCH);
+            long sequence = next;
+            int idle = 0;
+            try {
+                while (true) {
+                    long missed = 0;
+                    while (batch.size() < MAX_BATCH) {
+                        int index = (int) sequence & mask;
+                        long published = 2 * sequence + 2;
+                        long state = states.get(index);
+                        if (state < published) {
+                            break; // not written yet
+                        }
+                        if (state == published) {
+                            StoreEvent event = slots.get(index);
+                            // Still the same event after reading it, so it was not overwritten meanwhile
+                            if (states.get(index) == published) {
+                                batch.add(event);
+                                sequence++;
+                                continue;
+                            }
+                        }
+                        // Lapped; resume at the oldest event still in the ring
+                        long oldest = Math.max(sequence + 1, cursor.get() - mask - 1);
+                        missed = oldest - sequence;
+                        sequence = oldest;
+                        break;
+                    }
+                    next = sequence;
+                    
+                    boolean progressed = !batch.isEmpty() || missed > 0;
+                    if (!batch.isEmpty()) {
+                        deliver(batch);
+                        batch.clear();
+                    }
+                    if (missed > 0) {
+                        dropped += missed;
+                        DROPPED.add(missed);
+                        if (policy == SlowConsumerPolicy.DISCONNECT) {
+                            disconnect();
+                            return;
+                        }
+                        dropped(missed);
+                    }
+                    if (sequence >= stopAt) {
+                        return;
+                    }
+                    if (progressed) {
+                        idle = 0;
+                    } else if (++idle <= IDLE_YIELDS) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(Math.min(MAX_IDLE_PARK_NANOS, 1_000L << Math.min(idle - IDLE_YIELDS, 10)));
+                    }
+                }
+            } finally {
+                active = false;
+            }
+        }
+        
+        private void deliver(List<StoreEvent> batch) {
+            try {
+                consumer.onEvents(batch);
+            } catch (RuntimeException e) {
+                // A failing consumer must not stop its reader thread
+                failed(e);
+            }
+            delivered += batch.size();
+        }
+        
+        private void dropped(long missed) {
+            try {
+                consumer.onDropped(missed);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+        
+        private void disconnect() {
+            active = false;
+            remove(this);
+            DISCONNECTED.increment();
+            try {
+                consumer.onDisconnected();
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+        
+        private void failed(RuntimeException error) {
+            CONSUMER_ERRORS.increment();
+            try {
+                errorHandler.onError(this, error);
+            } catch (RuntimeException ignored) {
+                // Counted already; a failing handler must not stop the reader either
+            }
+        }
+        
+        private void join() {
+            if (Thread.currentThread() == reader) {
+                return;
+            }
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * Stop delivering events; a batch being handled is finished first
+         * Must not be called while holding anything the consumer may wait for
+         */
+        @Override
+        public void close() {
+            stopAt = Long.MIN_VALUE;
+            LockSupport.unpark(reader);
+            join();
+            remove(this);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package events;
+
+import java.util.List;
+
+/**
+ * Receives events from an EventBus in batches, on a thread of its own
+ */
+public interface EventConsumer {
+    
+    /**
+     * Handle the next events in publish order
+     * @param batch events since the previous call; the list is reused after the call returns
+     */
+    void onEvents(List<StoreEvent> batch);
+    
+    /**
+     * Events were overwritten before this consumer read them; called between the
+     * batches before and after the gap
+     * @param count number of events missed
+     */
+    default void onDropped(long count) {
+    }
+    
+    /**
+     * The consumer fell too far behind under SlowConsumerPolicy.DISCONNECT and will
+     * get no further events
+     */
+    default void onDisconnected() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package events;
+
+/**
+ * The bus that store code publishes to, if any
+ * Publishing sites read it once and skip building events when it is null, so the
+ * store costs nothing extra without a bus
+ */
+public final class Events {
+    private static volatile EventBus bus;
+    
+    private Events() {
+    }
+    
+    /**
+     * Set the bus that carts, checkout, stock, expiry and shipping publish to
+     * @param eventBus the bus, or null to stop publishing
+     */
+    public static void setBus(EventBus eventBus) {
+        bus = eventBus;
+    }
+    
+    public static EventBus getBus() {
+        return bus;
+    }
+}
\ No newline at end of file
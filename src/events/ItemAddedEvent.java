@@ -0,0 +1,33 @@
+package events;
+
+import models.Product;
+
+/**
+ * Units of a product were added to a cart
+ */
+public final class ItemAddedEvent extends StoreEvent {
+    private final Product product;
+    private final int quantity;
+    private final int cartQuantity;
+    
+    /**
+     * @param product the product added
+     * @param quantity units added
+     * @param cartQuantity units of the product in the cart after the add
+     */
+    public ItemAddedEvent(Product product, int quantity, int cartQuantity) {
+        super(Type.ITEM_ADDED);
+        this.product = product;
+        this.quantity = quantity;
+        this.cartQuantity = cartQuantity;
+    }
+    
+    public Product getProduct() { return product; }
+    public int getQuantity() { return quantity; }
+    public int getCartQuantity() { return cartQuantity; }
+    
+    @Override
+    public String toString() {
+        return String.format("ItemAdded (Product: %s, Quantity: %d, In cart: %d)", product.getName(), quantity, cartQuantity);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+package events;
+
+import models.ExpirableProduct;
+
+/**
+ * A tracked product passed its expiration day and can no longer be sold
+ */
+public final class ProductExpiredEvent extends StoreEvent {
+    private final ExpirableProduct product;
+    
+    public ProductExpiredEvent(ExpirableProduct product) {
+        super(Type.PRODUCT_EXPIRED);
+        this.product = product;
+    }
+    
+    public ExpirableProduct getProduct() { return product; }
+    
+    @Override
+    public String toString() {
+        return String.format("ProductExpired (Product: %s, Expired: %s)", product.getName(), product.getExpirationDate());
+    }
+}
\ No newline at end of file
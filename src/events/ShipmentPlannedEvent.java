@@ -0,0 +1,40 @@
+package events;
+
+import models.CartItem;
+import java.util.List;
+
+/**
+ * Items were planned to ship to a customer, straight from checkout or
+ * consolidated by a ShipmentPlanner
+ */
+public final class ShipmentPlannedEvent extends StoreEvent {
+    private final String customerName;
+    private final String origin;
+    private final List<CartItem> items;
+    private final int parcelCount;
+    
+    /**
+     * @param customerName who the shipment goes to
+     * @param origin name of the warehouse it ships from, or null if not allocated
+     * @param items everything in the shipment
+     * @param parcelCount number of parcels it is packed into, or 0 if not packed yet
+     */
+    public ShipmentPlannedEvent(String customerName, String origin, List<CartItem> items, int parcelCount) {
+        super(Type.SHIPMENT_PLANNED);
+        this.customerName = customerName;
+        this.origin = origin;
+        this.items = items;
+        this.parcelCount = parcelCount;
+    }
+    
+    public String getCustomerName() { return customerName; }
+    public String getOrigin() { return origin; }
+    public List<CartItem> getItems() { return items; }
+    public int getParcelCount() { return parcelCount; }
+    
+    @Override
+    public String toString() {
+        return String.format("ShipmentPlanned (Customer: %s, Origin: %s, Lines: %d, Parcels: %d)",
+                             customerName, origin, items.size(), parcelCount);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package events;
+
+/**
+ * What an EventBus does when publishers lap a consumer by the ring capacity
+ * DROP: publishers never wait; the consumer skips the events it missed and is told how many
+ * DISCONNECT: publishers never wait; the consumer is unsubscribed the first time it misses events
+ * WAIT: publishers wait for the consumer up to the bus's maximum wait, then drop as with DROP
+ */
+public enum SlowConsumerPolicy {
+    DROP,
+    DISCONNECT,
+    WAIT
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package events;
+
+import models.Product;
+
+/**
+ * The available stock of a product changed: units were reserved by a checkout or a
+ * cart lease, released by a failed checkout or an ended lease, taken, restocked or
+ * overwritten. The product's StockLedger publishes exactly one event per change, so
+ * the changes of a product sum to its available stock minus the initial quantity
+ * Concurrent changes may be published out of order; order by the change, not by
+ * the reported level, when the exact sequence matters
+ */
+public final class StockChangedEvent extends StoreEvent {
+    private final Product product;
+    private final int change;
+    private final int available;
+    
+    /**
+     * @param product the product
+     * @param change units added, negative for units taken
+     * @param available available quantity right after the change
+     */
+    public StockChangedEvent(Product product, int change, int available) {
+        super(Type.STOCK_CHANGED);
+        this.product = product;
+        this.change = change;
+        this.available = available;
+    }
+    
+    public Product getProduct() { return product; }
+    public int getChange() { return change; }
+    public int getAvailable() { return available; }
+    
+    @Override
+    public String toString() {
+        return String.format("StockChanged (Product: %s, Change: %+d, Available: %d)", product.getName(), change, available);
+    }
+}
\ No newline at end of file
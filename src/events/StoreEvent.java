@@ -0,0 +1,32 @@
+package events;
+
+import clock.StoreClock;
+
+/**
+ * Something that happened in the store, published on an EventBus
+ * Events are immutable; consumers switch on getType() or test the subclass
+ */
+public abstract class StoreEvent {
+    
+    /**
+     * Kind of event, one per subclass
+     */
+    public enum Type {
+        ITEM_ADDED,
+        CHECKOUT_COMPLETED,
+        STOCK_CHANGED,
+        PRODUCT_EXPIRED,
+        SHIPMENT_PLANNED
+    }
+    
+    private final Type type;
+    private final long timeMillis;
+    
+    protected StoreEvent(Type type) {
+        this.type = type;
+        this.timeMillis = StoreClock.getClock().millis();
+    }
+    
+    public Type getType() { return type; }
+    public long getTimeMillis() { return timeMillis; }
+}
\ No newline at end of file
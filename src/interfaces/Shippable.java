@@ -7,4 +7,18 @@ package interfaces;
 public interface Shippable {
     String getName();
     double getWeight();
+    
+    /**
+     * Get weight as whole grams, used for exact shipping arithmetic
+     * @return weight in grams
+     */
+    long getWeightGrams();
+    
+    /**
+     * Get packed volume, used for dimensional weight
+     * @return volume in cubic centimetres, 0 if unknown
+     */
+    default long getVolumeCm3() {
+        return 0;
+    }
 }
\ No newline at end of file
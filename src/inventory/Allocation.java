@@ -0,0 +1,61 @@
+package inventory;
+
+import models.CartItem;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Where the units of an order ship from: one shipment per origin warehouse, cheapest
+ * first, plus any units no warehouse had (stock that entered a product's ledger
+ * without going through WarehouseNetwork)
+ */
+public final class Allocation {
+    private final List<Warehouse> origins;
+    private final List<List<CartItem>> items;
+    private final int[] originIndexes; // index of each origin in its network
+    private final List<CartItem> unallocated;
+    
+    Allocation(List<Warehouse> origins, List<List<CartItem>> items, int[] originIndexes, List<CartItem> unallocated) {
+        this.origins = Collections.unmodifiableList(origins);
+        this.items = Collections.unmodifiableList(items);
+        this.originIndexes = originIndexes;
+        this.unallocated = Collections.unmodifiableList(unallocated);
+    }
+    
+    /**
+     * Get number of warehouses the order ships from
+     * @return shipment count, not counting unallocated units
+     */
+    public int getShipmentCount() {
+        return origins.size();
+    }
+    
+    public List<Warehouse> getOrigins() { return origins; }
+    public List<CartItem> getUnallocated() { return unallocated; }
+    
+    /**
+     * Get the units shipping from one origin
+     * @param shipment index into getOrigins
+     * @return items with the quantity taken from that warehouse
+     */
+    public List<CartItem> getItems(int shipment) {
+        return Collections.unmodifiableList(items.get(shipment));
+    }
+    
+    /**
+     * Check whether the order ships from more than one warehouse
+     * @return true if split
+     */
+    public boolean isSplit() {
+        return origins.size() > 1;
+    }
+    
+    int originIndex(int shipment) {
+        return originIndexes[shipment];
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Allocation (Origins: %s, Unallocated lines: %d)", origins, unallocated.size());
+    }
+}
\ No newline at end of file
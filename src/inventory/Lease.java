@@ -0,0 +1,136 @@
+package inventory;
+
+import models.Product;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Time-limited hold on reserved stock of one product
+ * The quantity sits in the product ledger's reserved count until exactly one of
+ * release, expiry or a checkout's claim and commit ends the lease; every end is a
+ * single CAS on the state, so a lease expiring while a checkout claims it cannot
+ * give its stock back twice
+ */
+public final class Lease {
+    /**
+     * Lease life cycle; ACTIVE and CLAIMED hold stock, the rest are final
+     * RETURNED means a failed checkout handed the stock on to a new lease
+     */
+    public enum State {
+        ACTIVE,
+        CLAIMED,
+        COMMITTED,
+        RELEASED,
+        EXPIRED,
+        RETURNED
+    }
+    
+    private static final State[] STATES = State.values();
+    private static final AtomicIntegerFieldUpdater<Lease> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Lease.class, "state");
+    
+    private final LeaseManager owner;
+    private final Product product;
+    private final int quantity;
+    private final long deadlineMillis;
+    private volatile int state = State.ACTIVE.ordinal();
+    Lease next; // next lease in the same timing wheel slot, owned by the wheel
+    
+    Lease(LeaseManager owner, Product product, int quantity, long deadlineMillis) {
+        this.owner = owner;
+        this.product = product;
+        this.quantity = quantity;
+        this.deadlineMillis = deadlineMillis;
+    }
+    
+    public Product getProduct() { return product; }
+    public int getQuantity() { return quantity; }
+    public long getDeadlineMillis() { return deadlineMillis; }
+    public State getState() { return STATES[state]; }
+    
+    public boolean isActive() {
+        return state == State.ACTIVE.ordinal();
+    }
+    
+    private boolean transition(State from, State to) {
+        return STATE.compareAndSet(this, from.ordinal(), to.ordinal());
+    }
+    
+    /**
+     * Give the stock back early, e.g. when the line leaves the cart
+     * @return true if this call ended the lease
+     */
+    public boolean release() {
+        if (!transition(State.ACTIVE, State.RELEASED)) {
+            return false;
+        }
+        product.getStock().release(quantity);
+        owner.ended(State.RELEASED);
+        return true;
+    }
+    
+    /**
+     * Take the lease over for a checkout so it can no longer expire
+     * The checkout must then call commit or abandon
+     * @return true if the lease was still active
+     */
+    public boolean claim() {
+        return transition(State.ACTIVE, State.CLAIMED);
+    }
+    
+    /**
+     * Sell the claimed quantity
+     * @throws IllegalStateException if the lease was not claimed
+     */
+    public void commit() {
+        if (!transition(State.CLAIMED, State.COMMITTED)) {
+            throw new IllegalStateException("Only a claimed lease can be committed");
+        }
+        product.getStock().commit(quantity);
+        owner.ended(State.COMMITTED);
+    }
+    
+    /**
+     * Give the claimed quantity back after a failed checkout
+     * @throws IllegalStateException if the lease was not claimed
+     */
+    public void abandon() {
+        if (!transition(State.CLAIMED, State.RELEASED)) {
+            throw new IllegalStateException("Only a claimed lease can be abandoned");
+        }
+        product.getStock().release(quantity);
+        owner.ended(State.RELEASED);
+    }
+    
+    /**
+     * Hand the claimed quantity back to the cart after a failed checkout
+     * The stock stays reserved under a new active lease with the same deadline, which
+     * expires as usual; this lease ends as RETURNED. A new lease is needed because the
+     * timing wheel drops leases it finds claimed
+     * @return the new lease
+     * @throws IllegalStateException if the lease was not claimed
+     */
+    public Lease giveBack() {
+        if (!transition(State.CLAIMED, State.RETURNED)) {
+            throw new IllegalStateException("Only a claimed lease can be given back");
+        }
+        return owner.reissue(this);
+    }
+    
+    /**
+     * End the lease at its deadline; called by the timing wheel
+     * @return true if the lease was still active
+     */
+    boolean expire() {
+        if (!transition(State.ACTIVE, State.EXPIRED)) {
+            return false;
+        }
+        product.getStock().release(quantity);
+        owner.ended(State.EXPIRED);
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%dx %s until %d (%s)", quantity, product.getName(), deadlineMillis, getState());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package inventory;
+
+import clock.StoreClock;
+import metrics.Counter;
+import metrics.Metrics;
+import models.Product;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grants time-limited stock reservations and expires them on a timing wheel
+ * Granting reserves in the product's ledger and queues the lease without locking;
+ * the advancing thread moves queued leases into the wheel and releases the stock
+ * of every lease past its deadline. Leases are never expired early, and expire
+ * late by at most a tick plus the advance interval
+ */
+public class LeaseManager implements AutoCloseable {
+    private static final Counter GRANTED = Metrics.counter("lease.granted");
+    private static final Counter DENIED = Metrics.counter("lease.denied");
+    private static final Counter[] ENDED = new Counter[Lease.State.values().length];
+    
+    static {
+        // Only final states are counted; a lease ends exactly once
+        for (Lease.State state : Lease.State.values()) {
+            if (state.ordinal() >= Lease.State.COMMITTED.ordinal()) {
+                ENDED[state.ordinal()] = Metrics.counter("lease." + state.name().toLowerCase());
+            }
+        }
+    }
+    
+    private final long leaseMillis;
+    private final ConcurrentLinkedQueue<Lease> granted = new ConcurrentLinkedQueue<>();
+    private final AtomicLong activeLeases = new AtomicLong();
+    private final TimingWheel wheel; // guarded by this
+    private ScheduledExecutorService timer;
+    
+    /**
+     * @param leaseTime how long a reservation holds stock
+     * @param tick resolution of lease deadlines
+     */
+    public LeaseManager(Duration leaseTime, Duration tick) {
+        if (leaseTime == null || leaseTime.isNegative() || leaseTime.isZero()) {
+            throw new IllegalArgumentException("Lease time must be positive");
+        }
+        if (tick == null || tick.toMillis() <= 0) {
+            throw new IllegalArgumentException("Tick must be at least a millisecond");
+        }
+        this.leaseMillis = leaseTime.toMillis();
+        this.wheel = new TimingWheel(tick.toMillis(), StoreClock.getClock().millis());
+    }
+    
+    /**
+     * Reserve stock for the lease time
+     * @param product product to hold
+     * @param quantity quantity to hold
+     * @return the lease, or null if not enough stock was available
+     */
+    public Lease reserve(Product product, int quantity) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        if (!product.getStock().tryReserve(quantity)) {
+            DENIED.increment();
+            return null;
+        }
+        Lease lease = new Lease(this, product, quantity, StoreClock.getClock().millis() + leaseMillis);
+        activeLeases.incrementAndGet();
+        granted.add(lease);
+        GRANTED.increment();
+        return lease;
+    }
+    
+    /**
+     * Hold the stock of a returned lease under a new lease with the same deadline
+     * The stock never leaves the reserved count, so the held lease count is unchanged
+     */
+    Lease reissue(Lease returned) {
+        Lease lease = new Lease(this, returned.getProduct(), returned.getQuantity(), returned.getDeadlineMillis());
+        ENDED[Lease.State.RETURNED.ordinal()].increment();
+        granted.add(lease);
+        return lease;
+    }
+    
+    /**
+     * Count a lease that left the held states
+     */
+    void ended(Lease.State state) {
+        activeLeases.decrementAndGet();
+        ENDED[state.ordinal()].increment();
+    }
+    
+    /**
+     * Get number of leases holding stock, claimed ones included
+     * @return held lease count
+     */
+    public long activeLeases() {
+        return activeLeases.get();
+    }
+    
+    /**
+     * Expire every lease whose deadline has passed
+     * @return number of leases expired
+     */
+    public synchronized int advance() {
+        Lease lease;
+        while ((lease = granted.poll()) != null) {
+            if (lease.isActive()) {
+                wheel.add(lease);
+            }
+        }
+        return wheel.advance(StoreClock.getClock().millis());
+    }
+    
+    /**
+     * Advance on a daemon thread
+     * @param interval time between advances, typically the tick
+     */
+    public synchronized void start(Duration interval) {
+        if (timer != null) {
+            throw new IllegalStateException("Lease manager already started");
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "lease-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::advance, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop the background advances; leases keep holding stock until released or advanced
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = timer;
+            timer = null;
+        }
+        if (stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,215 @@
+package inventory;
+
+import events.EventBus;
+import events.Events;
+import events.StockChangedEvent;
+import models.Product;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free stock counter for a single product
+ * Available and reserved counts are packed into one AtomicLong (available in the
+ * high 32 bits, reserved in the low 32 bits) so both change in a single CAS.
+ * A ledger that belongs to a product publishes one StockChangedEvent for every
+ * change to available stock (reserve, release, take, restock, overwrite) with the
+ * level that change produced; committing a reservation leaves available as it is
+ */
+public class StockLedger {
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+    
+    private final Product product;
+    private final AtomicLong state;
+    
+    public StockLedger(int available) {
+        this(null, available);
+    }
+    
+    /**
+     * @param product product whose stock changes are published, or null to publish nothing
+     * @param available initial available quantity
+     */
+    public StockLedger(Product product, int available) {
+        if (available < 0) {
+            throw new IllegalArgumentException("Available quantity cannot be negative");
+        }
+        this.product = product;
+        this.state = new AtomicLong(pack(available, 0));
+    }
+    
+    private static long pack(int available, int reserved) {
+        return ((long) available << 32) | (reserved & LOW_MASK);
+    }
+    
+    private static int available(long state) {
+        return (int) (state >>> 32);
+    }
+    
+    private static int reserved(long state) {
+        return (int) state;
+    }
+    
+    /**
+     * Get quantity that can still be reserved
+     * @return available quantity
+     */
+    public int getAvailable() {
+        return available(state.get());
+    }
+    
+    /**
+     * Get quantity held by reservations that are not yet committed or released
+     * @return reserved quantity
+     */
+    public int getReserved() {
+        return reserved(state.get());
+    }
+    
+    /**
+     * Get stock still in the store: available plus reserved, read together
+     * @return quantity on hand
+     */
+    public int getOnHand() {
+        long current = state.get();
+        return available(current) + reserved(current);
+    }
+    
+    /**
+     * Check without locking whether a quantity can be reserved
+     * @param quantity the requested quantity
+     * @return true if enough stock is available
+     */
+    public boolean isAvailable(int quantity) {
+        return available(state.get()) >= quantity;
+    }
+    
+    /**
+     * Move quantity from available to reserved if enough is available
+     * @param quantity quantity to reserve
+     * @return true if reserved, false if not enough stock was available
+     */
+    public boolean tryReserve(int quantity) {
+        requirePositive(quantity);
+        long current;
+        int available;
+        do {
+            current = state.get();
+            available = available(current);
+            if (quantity > available) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, pack(available - quantity, reserved(current) + quantity)));
+        changed(-quantity, available - quantity);
+        return true;
+    }
+    
+    /**
+     * Take quantity straight out of available stock without holding a reservation
+     * @param quantity quantity to take
+     * @return true if taken, false if not enough stock was available
+     */
+    public boolean tryTake(int quantity) {
+        requirePositive(quantity);
+        long current;
+        int available;
+        do {
+            current = state.get();
+            available = available(current);
+            if (quantity > available) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, pack(available - quantity, reserved(current))));
+        changed(-quantity, available - quantity);
+        return true;
+    }
+    
+    /**
+     * Turn a reservation into a sale, removing it from stock for good
+     * @param quantity previously reserved quantity
+     * @throws IllegalStateException if less than quantity is reserved
+     */
+    public void commit(int quantity) {
+        requirePositive(quantity);
+        long current;
+        int reserved;
+        do {
+            current = state.get();
+            reserved = reserved(current);
+            if (quantity > reserved) {
+                throw new IllegalStateException("Cannot commit more than reserved quantity");
+            }
+        } while (!state.compareAndSet(current, pack(available(current), reserved - quantity)));
+    }
+    
+    /**
+     * Return a reservation to available stock
+     * @param quantity previously reserved quantity
+     * @throws IllegalStateException if less than quantity is reserved
+     */
+    public void release(int quantity) {
+        requirePositive(quantity);
+        long current;
+        int reserved;
+        do {
+            current = state.get();
+            reserved = reserved(current);
+            if (quantity > reserved) {
+                throw new IllegalStateException("Cannot release more than reserved quantity");
+            }
+        } while (!state.compareAndSet(current, pack(available(current) + quantity, reserved - quantity)));
+        changed(quantity, available(current) + quantity);
+    }
+    
+    /**
+     * Add new stock to available quantity
+     * @param quantity quantity to add
+     */
+    public void restock(int quantity) {
+        requirePositive(quantity);
+        long current;
+        int available;
+        do {
+            current = state.get();
+            available = Math.addExact(available(current), quantity);
+        } while (!state.compareAndSet(current, pack(available, reserved(current))));
+        changed(quantity, available);
+    }
+    
+    /**
+     * Overwrite available quantity, keeping outstanding reservations
+     * @param quantity new available quantity
+     */
+    public void setAvailable(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        long current;
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, pack(quantity, reserved(current))));
+        if (quantity != available(current)) {
+            changed(quantity - available(current), quantity);
+        }
+    }
+    
+    private void changed(int change, int available) {
+        if (product == null) {
+            return;
+        }
+        EventBus bus = Events.getBus();
+        if (bus != null) {
+            bus.publish(new StockChangedEvent(product, change, available));
+        }
+    }
+    
+    private static void requirePositive(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+    }
+    
+    @Override
+    public String toString() {
+        long current = state.get();
+        return String.format("Stock (Available: %d, Reserved: %d)", available(current), reserved(current));
+    }
+}
\ No newline at end of file
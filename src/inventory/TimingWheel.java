@@ -0,0 +1,121 @@
+package inventory;
+
+/**
+ * Hierarchical timing wheel of leases, after Varghese and Lauck
+ * Four levels of 64 slots cover 64^4 ticks; a lease sits in the level whose slot
+ * width matches its distance to the deadline and moves down a level each time its
+ * slot comes up, so scheduling and expiring are O(1) however many leases are held.
+ * Slots are intrusive lists through Lease.next, so holding a lease allocates nothing.
+ * Leases that end early stay linked and are dropped when their slot comes up.
+ * Not thread-safe; LeaseManager owns the wheel
+ */
+final class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+    
+    private final long tickMillis;
+    private final Lease[][] slots = new Lease[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+    
+    /**
+     * @param tickMillis resolution of deadlines
+     * @param startMillis current time
+     */
+    TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+    
+    /**
+     * Get number of leases linked into the wheel, including ones that already ended
+     * @return linked lease count
+     */
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Link a lease into the slot of its deadline; a deadline already passed expires on the next tick
+     */
+    void add(Lease lease) {
+        place(lease, currentTick + 1);
+    }
+    
+    /**
+     * @param earliestTick first tick whose slot has not been processed yet
+     */
+    private void place(Lease lease, long earliestTick) {
+        long deadline = lease.getDeadlineMillis();
+        long tick = Math.max(deadline / tickMillis + (deadline % tickMillis == 0 ? 0 : 1), earliestTick);
+        // Beyond the top level the lease parks in its farthest slot and is placed again from there
+        tick = Math.min(tick, currentTick + SPAN - 1);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & MASK);
+        lease.next = slots[level][slot];
+        slots[level][slot] = lease;
+        size++;
+    }
+    
+    /**
+     * Move the wheel up to a time, expiring every active lease due by then
+     * @param nowMillis current time
+     * @return number of leases expired
+     */
+    int advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        int expired = 0;
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                break;
+            }
+            currentTick++;
+            cascade();
+            int slot = (int) (currentTick & MASK);
+            Lease lease = slots[0][slot];
+            slots[0][slot] = null;
+            while (lease != null) {
+                Lease next = lease.next;
+                lease.next = null;
+                size--;
+                if (lease.expire()) {
+                    expired++;
+                }
+                lease = next;
+            }
+        }
+        return expired;
+    }
+    
+    /**
+     * On a level boundary, empty the slot of each higher level that comes up and place
+     * its still active leases again; they land at least one level lower
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if (((currentTick >>> (SLOT_BITS * (level - 1))) & MASK) != 0) {
+                return;
+            }
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & MASK);
+            Lease lease = slots[level][slot];
+            slots[level][slot] = null;
+            while (lease != null) {
+                Lease next = lease.next;
+                lease.next = null;
+                size--;
+                if (lease.isActive()) {
+                    place(lease, currentTick);
+                }
+                lease = next;
+            }
+        }
+    }
+}
\ No newline at end of file
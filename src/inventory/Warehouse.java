@@ -0,0 +1,53 @@
+package inventory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A stock location and the relative cost of shipping from it to each shipping zone
+ */
+public final class Warehouse {
+    /**
+     * Cost to a zone the warehouse does not list, including the default (null) zone
+     */
+    public static final int UNLISTED_COST = Integer.MAX_VALUE;
+    
+    private final String name;
+    private final Map<String, Integer> zoneCosts;
+    
+    /**
+     * @param name warehouse name
+     * @param zoneCosts cost of shipping a parcel to each zone, see ShippingRules for zone names
+     */
+    public Warehouse(String name, Map<String, Integer> zoneCosts) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Warehouse name cannot be null or empty");
+        }
+        for (int cost : zoneCosts.values()) {
+            if (cost < 0) {
+                throw new IllegalArgumentException("Shipping cost cannot be negative");
+            }
+        }
+        this.name = name;
+        this.zoneCosts = Collections.unmodifiableMap(new HashMap<>(zoneCosts));
+    }
+    
+    public String getName() { return name; }
+    public Map<String, Integer> getZoneCosts() { return zoneCosts; }
+    
+    /**
+     * Get the cost of shipping to a zone
+     * @param zone zone name, or null for the default zone
+     * @return cost, UNLISTED_COST if the warehouse does not list the zone
+     */
+    public int costTo(String zone) {
+        Integer cost = zone == null ? null : zoneCosts.get(zone);
+        return cost == null ? UNLISTED_COST : cost;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,277 @@
+package inventory;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import models.CartItem;
+import models.Product;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stock of products across warehouses, and allocation of paid orders to them
+ * Every product has one counter per warehouse, taken with a single CAS, so concurrent
+ * allocations only meet on the same product in the same warehouse. A product's
+ * counters sit next to each other in one AtomicIntegerArray, so comparing every
+ * warehouse for an order line touches a few cache lines instead of one per warehouse.
+ * The product's StockLedger stays the one place that decides whether an order can be
+ * sold: stock enters both through restock, and an order that reserved stock in the
+ * ledger is always covered by the warehouses. Allocation picks the cheapest warehouse
+ * that can ship the whole order; when none can, it repeatedly takes from the one
+ * covering most of what is left
+ */
+public class WarehouseNetwork {
+    private static final LatencyHistogram ALLOCATE_TIME = Metrics.histogram("warehouse.allocate.ns");
+    private static final Counter SHIPMENTS = Metrics.counter("warehouse.shipments");
+    private static final Counter SPLIT_ORDERS = Metrics.counter("warehouse.split");
+    private static final Counter SHORTFALLS = Metrics.counter("warehouse.shortfall");
+    
+    private final Warehouse[] warehouses;
+    private final AtomicIntegerArray stock; // product slot * warehouse count + warehouse
+    private final int capacity;
+    private final Map<Long, Integer> slots = new ConcurrentHashMap<>(); // by product id
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final Map<String, int[]> orderByZone = new HashMap<>(); // warehouse indexes, cheapest first
+    private final int[] defaultOrder;
+    
+    /**
+     * @param warehouses the warehouses; order breaks ties between equal costs
+     * @param productCapacity most distinct products the network can stock
+     */
+    public WarehouseNetwork(List<Warehouse> warehouses, int productCapacity) {
+        if (warehouses.isEmpty()) {
+            throw new IllegalArgumentException("A warehouse network needs at least one warehouse");
+        }
+        if (productCapacity <= 0) {
+            throw new IllegalArgumentException("Product capacity must be positive");
+        }
+        this.warehouses = warehouses.toArray(new Warehouse[0]);
+        this.stock = new AtomicIntegerArray(Math.multiplyExact(productCapacity, this.warehouses.length));
+        this.capacity = productCapacity;
+        this.defaultOrder = new int[this.warehouses.length];
+        for (int w = 0; w < defaultOrder.length; w++) {
+            defaultOrder[w] = w;
+        }
+        Set<String> zones = new HashSet<>();
+        for (Warehouse warehouse : this.warehouses) {
+            zones.addAll(warehouse.getZoneCosts().keySet());
+        }
+        for (String zone : zones) {
+            Integer[] order = new Integer[this.warehouses.length];
+            for (int w = 0; w < order.length; w++) {
+                order[w] = w;
+            }
+            // Stable, so equal costs keep network order
+            Arrays.sort(order, Comparator.comparingInt(w -> this.warehouses[w].costTo(zone)));
+            orderByZone.put(zone, Arrays.stream(order).mapToInt(Integer::intValue).toArray());
+        }
+    }
+    
+    /**
+     * Get number of warehouses
+     * @return warehouse count
+     */
+    public int size() {
+        return warehouses.length;
+    }
+    
+    public Warehouse getWarehouse(int index) {
+        return warehouses[index];
+    }
+    
+    /**
+     * Add stock of a product to a warehouse, and to the product's ledger so it can be sold
+     * Stock of a product allocated here should only enter through this method; units
+     * set on the ledger directly have no warehouse and are reported as unallocated
+     * @param product the product
+     * @param warehouse index of the warehouse
+     * @param quantity units received
+     * @throws IllegalArgumentException if the warehouse index is out of range
+     * @throws IllegalStateException if the network already stocks its capacity of products
+     */
+    public void restock(Product product, int warehouse, int quantity) {
+        requireWarehouse(warehouse);
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        int slot = slots.computeIfAbsent(product.getId(), id -> newSlot());
+        // Warehouses first, so the ledger never promises stock the warehouses lack
+        stock.addAndGet(slot * warehouses.length + warehouse, quantity);
+        product.getStock().restock(quantity);
+    }
+    
+    private void requireWarehouse(int warehouse) {
+        if (warehouse < 0 || warehouse >= warehouses.length) {
+            throw new IllegalArgumentException("Warehouse index " + warehouse + " is out of range");
+        }
+    }
+    
+    private int newSlot() {
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= capacity) {
+            nextSlot.decrementAndGet();
+            throw new IllegalStateException("Warehouse network is full at " + capacity + " products");
+        }
+        return slot;
+    }
+    
+    /**
+     * Get units of a product in one warehouse
+     * @param product the product
+     * @param warehouse index of the warehouse
+     * @return unallocated units, 0 if the network never stocked the product
+     * @throws IllegalArgumentException if the warehouse index is out of range
+     */
+    public int getQuantity(Product product, int warehouse) {
+        requireWarehouse(warehouse);
+        Integer slot = slots.get(product.getId());
+        return slot == null ? 0 : stock.get(slot * warehouses.length + warehouse);
+    }
+    
+    /**
+     * Take the units of a paid order from the warehouses
+     * Call once the order's stock is reserved or committed in the product ledgers
+     * @param items the order lines
+     * @param zone shipping zone of the order, or null for the default zone
+     * @return the origins of every unit
+     */
+    public Allocation allocate(List<CartItem> items, String zone) {
+        long start = Metrics.now();
+        int lineCount = items.size();
+        int[] slot = new int[lineCount]; // first counter of each line's product
+        int[] need = new int[lineCount];
+        List<CartItem> unallocated = new ArrayList<>();
+        int pending = 0;
+        for (int i = 0; i < lineCount; i++) {
+            CartItem item = items.get(i);
+            Integer productSlot = slots.get(item.getProduct().getId());
+            if (productSlot == null) {
+                unallocated.add(item);
+            } else {
+                slot[i] = productSlot * warehouses.length;
+                need[i] = item.getQuantity();
+                pending++;
+            }
+        }
+        
+        int[] order = zone == null ? defaultOrder : orderByZone.getOrDefault(zone, defaultOrder);
+        List<List<CartItem>> taken = new ArrayList<>();
+        int[] takenFrom = new int[warehouses.length]; // index into taken, -1 if nothing taken
+        Arrays.fill(takenFrom, -1);
+        while (pending > 0) {
+            int best = pick(order, slot, need);
+            if (best < 0) {
+                break;
+            }
+            for (int i = 0; i < lineCount; i++) {
+                if (need[i] == 0) {
+                    continue;
+                }
+                int units = takeUpTo(slot[i] + best, need[i]);
+                if (units > 0) {
+                    if (takenFrom[best] < 0) {
+                        takenFrom[best] = taken.size();
+                        taken.add(new ArrayList<>());
+                    }
+                    taken.get(takenFrom[best]).add(new CartItem(items.get(i).getProduct(), units));
+                    need[i] -= units;
+                    if (need[i] == 0) {
+                        pending--;
+                    }
+                }
+            }
+        }
+        if (pending > 0) {
+            for (int i = 0; i < lineCount; i++) {
+                if (need[i] > 0) {
+                    unallocated.add(new CartItem(items.get(i).getProduct(), need[i]));
+                }
+            }
+            SHORTFALLS.increment();
+        }
+        
+        // Origins in cost order, whatever order the rounds picked them in
+        List<Warehouse> origins = new ArrayList<>(taken.size());
+        List<List<CartItem>> shipments = new ArrayList<>(taken.size());
+        int[] originIndexes = new int[taken.size()];
+        for (int w : order) {
+            if (takenFrom[w] >= 0) {
+                originIndexes[origins.size()] = w;
+                origins.add(warehouses[w]);
+                shipments.add(taken.get(takenFrom[w]));
+            }
+        }
+        SHIPMENTS.add(origins.size());
+        if (origins.size() > 1) {
+            SPLIT_ORDERS.increment();
+        }
+        ALLOCATE_TIME.recordSince(start);
+        return new Allocation(origins, shipments, originIndexes, unallocated);
+    }
+    
+    /**
+     * Choose the warehouse for the next round: the cheapest one holding everything
+     * still needed, otherwise the one holding the most units of it
+     * @return warehouse index, or -1 if no warehouse holds any of it
+     */
+    private int pick(int[] order, int[] slot, int[] need) {
+        int best = -1;
+        long bestUnits = 0;
+        for (int w : order) {
+            long units = 0;
+            boolean complete = true;
+            for (int i = 0; i < need.length; i++) {
+                if (need[i] > 0) {
+                    int available = stock.get(slot[i] + w);
+                    units += Math.min(available, need[i]);
+                    complete &= available >= need[i];
+                }
+            }
+            if (complete) {
+                return w;
+            }
+            if (units > bestUnits) {
+                best = w;
+                bestUnits = units;
+            }
+        }
+        return best;
+    }
+    
+    private int takeUpTo(int counter, int quantity) {
+        int available;
+        int units;
+        do {
+            available = stock.get(counter);
+            units = Math.min(available, quantity);
+            if (units == 0) {
+                return 0;
+            }
+        } while (!stock.compareAndSet(counter, available, available - units));
+        return units;
+    }
+    
+    /**
+     * Put the units of an allocation back into the warehouses they came from,
+     * e.g. when the order is cancelled before it ships; the caller returns the units to
+     * the product ledgers, by releasing the reservation or restocking the ledger
+     * @param allocation an allocation made by this network
+     */
+    public void release(Allocation allocation) {
+        for (int s = 0; s < allocation.getShipmentCount(); s++) {
+            int warehouse = allocation.originIndex(s);
+            for (CartItem item : allocation.getItems(s)) {
+                stock.addAndGet(slots.get(item.getProduct().getId()) * warehouses.length + warehouse, item.getQuantity());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free event counter; increments from many threads touch separate cells
+ */
+public final class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    
+    Counter(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+    
+    /**
+     * Count one event; does nothing when metrics are disabled
+     */
+    public void increment() {
+        if (Metrics.ENABLED) {
+            count.increment();
+        }
+    }
+    
+    /**
+     * Count several events; does nothing when metrics are disabled
+     * @param events number of events
+     */
+    public void add(long events) {
+        if (Metrics.ENABLED) {
+            count.add(events);
+        }
+    }
+    
+    public long get() {
+        return count.sum();
+    }
+    
+    void reset() {
+        count.reset();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram
+ * Values are bucketed by power of two and then linearly into 32 sub-buckets,
+ * so every recorded value is kept to within about 3% using a fixed 16 KB of
+ * counters. Recording is a couple of bit operations and one atomic increment;
+ * count and mean are derived from the buckets when a snapshot is taken
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+    
+    /**
+     * Record a duration; does nothing when metrics are disabled
+     * @param nanos duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        if (Metrics.ENABLED) {
+            counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+        }
+    }
+    
+    /**
+     * Record the time elapsed since a Metrics.now() reading
+     * @param startNanos the reading taken at the start
+     */
+    public void recordSince(long startNanos) {
+        if (Metrics.ENABLED) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+    
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+        return (magnitude + 1) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * Highest value that lands in a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << magnitude) - 1;
+    }
+    
+    public long getCount() {
+        return count(snapshot());
+    }
+    
+    /**
+     * Get a percentile of the recorded values
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = snapshot();
+        return percentile(snapshot, count(snapshot), percentile);
+    }
+    
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+    
+    private static long count(long[] snapshot) {
+        long count = 0;
+        for (long bucketCount : snapshot) {
+            count += bucketCount;
+        }
+        return count;
+    }
+    
+    private static long mean(long[] snapshot, long count) {
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] != 0) {
+                long low = i == 0 ? 0 : upperBound(i - 1) + 1;
+                sum += snapshot[i] * ((low + upperBound(i)) / 2.0);
+            }
+        }
+        return Math.round(sum / count);
+    }
+    
+    private static long percentile(long[] snapshot, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+    
+    /**
+     * Append one line with count, mean and percentiles
+     * @param out buffer to append to
+     */
+    void appendTo(StringBuilder out) {
+        long[] snapshot = snapshot();
+        long count = count(snapshot);
+        out.append(name).append(" count=").append(count);
+        if (count > 0) {
+            out.append(" mean=").append(mean(snapshot, count));
+            for (double p : PERCENTILES) {
+                out.append(" p").append(p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p))
+                   .append('=').append(percentile(snapshot, count, p));
+            }
+            out.append(" max=").append(percentile(snapshot, count, 100));
+        }
+        out.append('\n');
+    }
+    
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
\ No newline at end of file
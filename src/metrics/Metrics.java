@@ -0,0 +1,71 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of counters and latency histograms for the hot paths
+ * Instrumentation is switched on with -Dmetrics.enabled=true. The flag is a
+ * static final constant, so with metrics off the JIT folds every guarded call
+ * site away and instrumented code runs as if it were not instrumented
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("metrics.enabled");
+    
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    
+    private Metrics() {
+    }
+    
+    /**
+     * Get or create a counter
+     * @param name dotted metric name, e.g. checkout.expired
+     * @return the counter registered under the name
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+    
+    /**
+     * Get or create a latency histogram
+     * @param name dotted metric name, e.g. checkout.validate.ns
+     * @return the histogram registered under the name
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+    
+    /**
+     * Read the clock for a later recordSince
+     * @return System.nanoTime(), or 0 without reading the clock when metrics are disabled
+     */
+    public static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Render every metric as text, one per line, sorted by name
+     * @return the snapshot
+     */
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder(1024);
+        out.append("# metrics ").append(ENABLED ? "enabled" : "disabled (-Dmetrics.enabled=true)").append('\n');
+        for (Counter counter : new ConcurrentSkipListMap<>(counters).values()) {
+            out.append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+        for (LatencyHistogram histogram : new ConcurrentSkipListMap<>(histograms).values()) {
+            histogram.appendTo(out);
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Zero every metric, e.g. between load test phases
+     */
+    public static void reset() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves Metrics.snapshot() as text/plain on GET /metrics, bound to the loopback interface
+ */
+public class MetricsServer implements AutoCloseable {
+    private final HttpServer server;
+    
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+    
+    /**
+     * Start serving metrics
+     * @param port local port, 0 for any free port
+     * @return the running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static MetricsServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", MetricsServer::handle);
+        server.start();
+        return new MetricsServer(server);
+    }
+    
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.snapshot().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+    
+    /**
+     * Get the port the server listens on
+     * @return bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
\ No newline at end of file
@@ -1,18 +1,63 @@
 package models;
 
+import clock.StoreClock;
+import events.EventBus;
+import events.Events;
+import events.ItemAddedEvent;
+import interfaces.Shippable;
+import inventory.Lease;
+import inventory.LeaseManager;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Shopping cart implementation
+ * Lines are indexed by product id in insertion order, so add, remove and contains are O(1)
+ * Subtotal, shippable weight and volume, and shippable line count are kept up to date on every change
+ * so totals can be read without walking the cart
+ * A cart created with a LeaseManager holds the stock of every add for the lease time,
+ * so checkout cannot fail on stock the customer already saw in their cart
  */
 public class Cart {
-    private List<CartItem> items;
+    private static final LatencyHistogram ADD_TIME = Metrics.histogram("cart.add.ns");
+    private static final Counter[] ADD_OUTCOMES = new Counter[CartOutcome.values().length];
+    
+    static {
+        for (CartOutcome outcome : CartOutcome.values()) {
+            ADD_OUTCOMES[outcome.ordinal()] = Metrics.counter("cart.add." + outcome.name().toLowerCase());
+        }
+    }
+    
+    private final Map<Long, CartItem> items;
+    private long subtotal; // in minor units, see Money
+    private long shippableWeight; // in grams
+    private long shippableVolume; // in cubic centimetres
+    private int shippableLineCount;
+    private final LeaseManager leaseManager;
+    private Map<Long, List<Lease>> leases; // by product id, created on the first held add
+    private Set<String> couponCodes; // created on the first applied coupon
     
     public Cart() {
-        this.items = new ArrayList<>();
+        this(null);
+    }
+    
+    /**
+     * @param leaseManager grants a stock hold for every add, or null to only check availability
+     */
+    public Cart(LeaseManager leaseManager) {
+        this.items = new LinkedHashMap<>();
+        this.leaseManager = leaseManager;
     }
     
     /**
@@ -22,37 +67,165 @@ public class Cart {
      * @throws IllegalArgumentException if quantity exceeds available stock
      */
     public void add(Product product, int quantity) {
+        int alreadyInCart = getQuantity(product);
+        CartOutcome outcome = tryAdd(product, quantity);
+        if (!outcome.isSuccess()) {
+            throw new IllegalArgumentException(outcome.describe(product, quantity, alreadyInCart));
+        }
+    }
+    
+    /**
+     * Add product to cart, reporting failures as an outcome code instead of throwing
+     * @param product the product to add
+     * @param quantity the quantity to add
+     * @return ADDED, or the reason nothing was added
+     */
+    public CartOutcome tryAdd(Product product, int quantity) {
+        long start = Metrics.now();
+        CartOutcome outcome = addLine(product, quantity);
+        ADD_TIME.recordSince(start);
+        ADD_OUTCOMES[outcome.ordinal()].increment();
+        EventBus bus = Events.getBus();
+        if (bus != null && outcome == CartOutcome.ADDED) {
+            bus.publish(new ItemAddedEvent(product, quantity, getQuantity(product)));
+        }
+        return outcome;
+    }
+    
+    private CartOutcome addLine(Product product, int quantity) {
         if (product == null) {
-            throw new IllegalArgumentException("Product cannot be null");
+            return CartOutcome.NULL_PRODUCT;
         }
         if (quantity <= 0) {
-            throw new IllegalArgumentException("Quantity must be positive");
+            return CartOutcome.INVALID_QUANTITY;
+        }
+        if (leaseManager != null) {
+            return addHeld(product, quantity);
         }
         if (!product.isAvailable(quantity)) {
-            if (product.isExpired()) {
-                throw new IllegalArgumentException("Cannot add expired product: " + product.getName());
-            } else {
-                throw new IllegalArgumentException(
-                    String.format("Insufficient stock for %s. Available: %d, Requested: %d", 
-                                product.getName(), product.getQuantity(), quantity));
-            }
+            return product.isExpired() ? CartOutcome.EXPIRED : CartOutcome.INSUFFICIENT_STOCK;
         }
         
         // Check if product already exists in cart
-        Optional<CartItem> existingItem = items.stream()
-            .filter(item -> item.getProduct().equals(product))
-            .findFirst();
-            
-        if (existingItem.isPresent()) {
-            int newQuantity = existingItem.get().getQuantity() + quantity;
+        CartItem existingItem = items.get(product.getId());
+        
+        if (existingItem != null) {
+            int newQuantity = existingItem.getQuantity() + quantity;
             if (!product.isAvailable(newQuantity)) {
-                throw new IllegalArgumentException(
-                    String.format("Total quantity exceeds available stock for %s. Available: %d, Total requested: %d", 
-                                product.getName(), product.getQuantity(), newQuantity));
+                return CartOutcome.TOTAL_EXCEEDS_STOCK;
             }
-            existingItem.get().setQuantity(newQuantity);
+            changeQuantity(existingItem, newQuantity);
+        } else {
+            putLine(product, quantity);
+        }
+        return CartOutcome.ADDED;
+    }
+    
+    /**
+     * Add under a lease; what earlier adds hold is already out of available stock,
+     * so only the added quantity has to be reserved
+     */
+    private CartOutcome addHeld(Product product, int quantity) {
+        if (product.isExpired()) {
+            return CartOutcome.EXPIRED;
+        }
+        Lease lease = leaseManager.reserve(product, quantity);
+        if (lease == null) {
+            return CartOutcome.INSUFFICIENT_STOCK;
+        }
+        hold(lease);
+        CartItem existingItem = items.get(product.getId());
+        if (existingItem != null) {
+            changeQuantity(existingItem, existingItem.getQuantity() + quantity);
+        } else {
+            putLine(product, quantity);
+        }
+        return CartOutcome.ADDED;
+    }
+    
+    private void putLine(Product product, int quantity) {
+        items.put(product.getId(), new CartItem(product, quantity));
+        if (product.requiresShipping()) {
+            shippableLineCount++;
+        }
+        applyDelta(product, quantity);
+    }
+    
+    private void hold(Lease lease) {
+        if (leases == null) {
+            leases = new HashMap<>();
+        }
+        leases.computeIfAbsent(lease.getProduct().getId(), id -> new ArrayList<>(1)).add(lease);
+    }
+    
+    /**
+     * Put back a line from a snapshot without checking stock, which the snapshot may predate
+     * @param product the product of the line
+     * @param quantity the quantity to add to the line
+     */
+    public void restoreLine(Product product, int quantity) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        CartItem existingItem = items.get(product.getId());
+        if (existingItem != null) {
+            changeQuantity(existingItem, existingItem.getQuantity() + quantity);
         } else {
-            items.add(new CartItem(product, quantity));
+            putLine(product, quantity);
+        }
+    }
+    
+    /**
+     * Replace the quantity of a product already in cart
+     * @param product the product to update
+     * @param quantity the new quantity
+     * @throws IllegalArgumentException if product is not in cart or quantity exceeds available stock
+     */
+    public void updateQuantity(Product product, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        CartItem item = product == null ? null : items.get(product.getId());
+        if (item == null) {
+            throw new IllegalArgumentException("Product is not in cart");
+        }
+        if (leaseManager != null) {
+            holdQuantity(item, quantity);
+        } else if (!product.isAvailable(quantity)) {
+            throw new IllegalArgumentException(
+                String.format("Insufficient stock for %s. Available: %d, Requested: %d", 
+                            product.getName(), product.getQuantity(), quantity));
+        }
+        changeQuantity(item, quantity);
+    }
+    
+    /**
+     * Resize the holds of a line: growing reserves the difference, shrinking gives
+     * everything back and holds the new quantity afresh
+     */
+    private void holdQuantity(CartItem item, int quantity) {
+        Product product = item.getProduct();
+        if (product.isExpired()) {
+            throw new IllegalArgumentException("Cannot add expired product: " + product.getName());
+        }
+        if (quantity > item.getQuantity()) {
+            Lease lease = leaseManager.reserve(product, quantity - item.getQuantity());
+            if (lease == null) {
+                throw new IllegalArgumentException(
+                    String.format("Insufficient stock for %s. Available: %d, Requested: %d", 
+                                product.getName(), product.getQuantity(), quantity - item.getQuantity()));
+            }
+            hold(lease);
+        } else if (quantity < item.getQuantity()) {
+            releaseLeases(product.getId());
+            // Just released at least as much unless holds had expired; without stock the line stays unheld
+            Lease lease = leaseManager.reserve(product, quantity);
+            if (lease != null) {
+                hold(lease);
+            }
         }
     }
     
@@ -61,14 +234,147 @@ public class Cart {
      * @param product the product to remove
      */
     public void remove(Product product) {
-        items.removeIf(item -> item.getProduct().equals(product));
+        CartItem item = product == null ? null : items.remove(product.getId());
+        if (item == null) {
+            return;
+        }
+        releaseLeases(product.getId());
+        if (product.requiresShipping()) {
+            shippableLineCount--;
+        }
+        applyDelta(product, -item.getQuantity());
+    }
+    
+    /**
+     * Check if product is in cart
+     * @param product the product to look up
+     * @return true if cart has a line for the product
+     */
+    public boolean contains(Product product) {
+        return product != null && items.containsKey(product.getId());
+    }
+    
+    /**
+     * Get quantity of a product in cart
+     * @param product the product to look up
+     * @return quantity in cart, 0 if not in cart
+     */
+    public int getQuantity(Product product) {
+        CartItem item = product == null ? null : items.get(product.getId());
+        return item == null ? 0 : item.getQuantity();
+    }
+    
+    /**
+     * Get number of distinct products in cart
+     * @return number of cart lines
+     */
+    public int size() {
+        return items.size();
     }
     
     /**
      * Clear all items from cart
      */
     public void clear() {
+        releaseLeases();
         items.clear();
+        resetTotals();
+        if (couponCodes != null) {
+            couponCodes.clear();
+        }
+    }
+    
+    /**
+     * Apply a coupon code; codes are checked against the promotions when the cart is priced
+     * @param code the code the customer entered
+     */
+    public void applyCoupon(String code) {
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("Coupon code cannot be empty");
+        }
+        if (couponCodes == null) {
+            couponCodes = new LinkedHashSet<>();
+        }
+        couponCodes.add(code);
+    }
+    
+    /**
+     * Remove a coupon code
+     * @param code the code to remove
+     */
+    public void removeCoupon(String code) {
+        if (couponCodes != null) {
+            couponCodes.remove(code);
+        }
+    }
+    
+    /**
+     * Get the coupon codes applied to the cart
+     * @return unmodifiable view of the codes
+     */
+    public Set<String> getCouponCodes() {
+        return couponCodes == null ? Collections.emptySet() : Collections.unmodifiableSet(couponCodes);
+    }
+    
+    /**
+     * Give back every stock hold of the cart, keeping its lines
+     */
+    public void releaseLeases() {
+        if (leases == null || leases.isEmpty()) {
+            return;
+        }
+        for (List<Lease> held : leases.values()) {
+            for (Lease lease : held) {
+                lease.release();
+            }
+        }
+        leases.clear();
+    }
+    
+    private void releaseLeases(long productId) {
+        List<Lease> held = leases == null ? null : leases.remove(productId);
+        if (held != null) {
+            for (Lease lease : held) {
+                lease.release();
+            }
+        }
+    }
+    
+    /**
+     * Hand the cart's stock holds to a checkout; leases that already expired are dropped
+     * The caller must commit or abandon every returned lease
+     * @return claimed leases, empty if the cart holds none
+     */
+    public List<Lease> claimLeases() {
+        if (leases == null || leases.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Lease> claimed = new ArrayList<>();
+        for (List<Lease> held : leases.values()) {
+            for (Lease lease : held) {
+                if (lease.claim()) {
+                    claimed.add(lease);
+                }
+            }
+        }
+        leases.clear();
+        return claimed;
+    }
+    
+    /**
+     * Take back the leases of a checkout that failed, so the lines keep their stock
+     * Leases past their deadline, or for products no longer in the cart, are abandoned
+     * @param claimed leases returned by claimLeases and neither committed nor abandoned
+     */
+    public void returnLeases(List<Lease> claimed) {
+        long now = StoreClock.getClock().millis();
+        for (Lease lease : claimed) {
+            if (lease.getDeadlineMillis() <= now || !items.containsKey(lease.getProduct().getId())) {
+                lease.abandon();
+            } else {
+                hold(lease.giveBack());
+            }
+        }
     }
     
     /**
@@ -84,7 +390,15 @@ public class Cart {
      * @return list of cart items
      */
     public List<CartItem> getItems() {
-        return new ArrayList<>(items);
+        return new ArrayList<>(items.values());
+    }
+    
+    /**
+     * Visit the items in cart without copying them
+     * @param action called for each line in insertion order
+     */
+    public void forEachItem(Consumer<? super CartItem> action) {
+        items.values().forEach(action);
     }
     
     /**
@@ -92,9 +406,47 @@ public class Cart {
      * @return subtotal amount
      */
     public double getSubtotal() {
-        return items.stream()
-                   .mapToDouble(CartItem::getTotalPrice)
-                   .sum();
+        return Money.toMajor(subtotal);
+    }
+    
+    /**
+     * Get subtotal in minor units
+     * @return exact subtotal
+     */
+    public long getSubtotalMinor() {
+        return subtotal;
+    }
+    
+    /**
+     * Get total weight of all items that require shipping
+     * @return shippable weight in kg
+     */
+    public double getShippableWeight() {
+        return shippableWeight / 1000.0;
+    }
+    
+    /**
+     * Get total weight of all items that require shipping in grams
+     * @return exact shippable weight
+     */
+    public long getShippableWeightGrams() {
+        return shippableWeight;
+    }
+    
+    /**
+     * Get total packed volume of all items that require shipping
+     * @return shippable volume in cubic centimetres
+     */
+    public long getShippableVolumeCm3() {
+        return shippableVolume;
+    }
+    
+    /**
+     * Get number of cart lines that require shipping
+     * @return shippable line count
+     */
+    public int getShippableLineCount() {
+        return shippableLineCount;
     }
     
     /**
@@ -102,11 +454,36 @@ public class Cart {
      * @return list of cart items that require shipping
      */
     public List<CartItem> getShippableItems() {
-        return items.stream()
+        if (shippableLineCount == 0) {
+            return new ArrayList<>();
+        }
+        return items.values().stream()
                    .filter(item -> item.getProduct().requiresShipping())
                    .collect(Collectors.toList());
     }
     
+    private void changeQuantity(CartItem item, int newQuantity) {
+        int delta = newQuantity - item.getQuantity();
+        item.setQuantity(newQuantity);
+        applyDelta(item.getProduct(), delta);
+    }
+    
+    private void applyDelta(Product product, int quantityDelta) {
+        subtotal = Math.addExact(subtotal, Money.times(product.getPriceMinor(), quantityDelta));
+        if (product.requiresShipping()) {
+            Shippable shippable = (Shippable) product;
+            shippableWeight += shippable.getWeightGrams() * quantityDelta;
+            shippableVolume += shippable.getVolumeCm3() * quantityDelta;
+        }
+    }
+    
+    private void resetTotals() {
+        subtotal = 0;
+        shippableWeight = 0;
+        shippableVolume = 0;
+        shippableLineCount = 0;
+    }
+    
     @Override
     public String toString() {
         if (isEmpty()) {
@@ -114,7 +491,7 @@ public class Cart {
         }
         
         StringBuilder sb = new StringBuilder("Cart contents:\n");
-        for (CartItem item : items) {
+        for (CartItem item : items.values()) {
             sb.append(String.format("- %s (%.2f each)\n", 
                                   item.toString(), item.getProduct().getPrice()));
         }
@@ -22,7 +22,11 @@ public class CartItem {
     public Product getProduct() { return product; }
     public int getQuantity() { return quantity; }
     
-    public void setQuantity(int quantity) {
+    /**
+     * Change line quantity; only Cart does this so it can keep its totals in sync
+     * @param quantity the new quantity
+     */
+    void setQuantity(int quantity) {
         if (quantity <= 0) {
             throw new IllegalArgumentException("Quantity must be positive");
         }
@@ -30,7 +34,11 @@ public class CartItem {
     }
     
     public double getTotalPrice() {
-        return product.getPrice() * quantity;
+        return Money.toMajor(getTotalPriceMinor());
+    }
+    
+    public long getTotalPriceMinor() {
+        return Money.times(product.getPriceMinor(), quantity);
     }
     
     @Override
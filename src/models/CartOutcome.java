@@ -0,0 +1,47 @@
+package models;
+
+/**
+ * Outcome codes of adding to a cart without throwing
+ * Constants are shared, so reporting a routine failure allocates nothing;
+ * the message is only formatted when describe is called
+ */
+public enum CartOutcome {
+    ADDED,
+    NULL_PRODUCT,
+    INVALID_QUANTITY,
+    EXPIRED,
+    INSUFFICIENT_STOCK,
+    TOTAL_EXCEEDS_STOCK;
+    
+    public boolean isSuccess() {
+        return this == ADDED;
+    }
+    
+    /**
+     * Format the message for this outcome
+     * @param product the product that was added, may be null
+     * @param requested the quantity that was requested
+     * @param alreadyInCart the quantity of the product already in the cart
+     * @return human readable outcome
+     */
+    public String describe(Product product, int requested, int alreadyInCart) {
+        switch (this) {
+            case ADDED:
+                return String.format("Added %dx %s", requested, product.getName());
+            case NULL_PRODUCT:
+                return "Product cannot be null";
+            case INVALID_QUANTITY:
+                return "Quantity must be positive";
+            case EXPIRED:
+                return "Cannot add expired product: " + product.getName();
+            case INSUFFICIENT_STOCK:
+                return String.format("Insufficient stock for %s. Available: %d, Requested: %d", 
+                                   product.getName(), product.getQuantity(), requested);
+            case TOTAL_EXCEEDS_STOCK:
+                return String.format("Total quantity exceeds available stock for %s. Available: %d, Total requested: %d", 
+                                   product.getName(), product.getQuantity(), alreadyInCart + requested);
+            default:
+                throw new IllegalStateException("Unknown outcome " + this);
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package models;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * Customer class representing a customer in the e-commerce system
+ * Balance updates are lock-free so concurrent checkouts cannot push it negative
  */
 public class Customer {
+    private static final VarHandle BALANCE;
+    
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Customer.class, "balance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
     private String name;
-    private double balance;
+    private volatile long balance; // in minor units, see Money
+    private volatile String shippingZone; // null for the default zone
     
     public Customer(String name, double balance) {
         if (name == null || name.trim().isEmpty()) {
@@ -16,11 +31,21 @@ public class Customer {
         }
         
         this.name = name;
-        this.balance = balance;
+        this.balance = Money.ofMajor(balance);
     }
     
     public String getName() { return name; }
-    public double getBalance() { return balance; }
+    public double getBalance() { return Money.toMajor(balance); }
+    public long getBalanceMinor() { return balance; }
+    public String getShippingZone() { return shippingZone; }
+    
+    /**
+     * Set the zone orders ship to, see ShippingRules
+     * @param shippingZone zone name, or null for the default zone
+     */
+    public void setShippingZone(String shippingZone) {
+        this.shippingZone = shippingZone;
+    }
     
     /**
      * Deduct amount from customer balance
@@ -28,12 +53,30 @@ public class Customer {
      * @throws IllegalStateException if insufficient balance
      */
     public void deductBalance(double amount) {
-        if (amount > balance) {
+        if (!tryDeductBalance(Money.ofMajor(amount))) {
             throw new IllegalStateException(
                 String.format("Insufficient balance. Available: $%.2f, Required: $%.2f", 
-                            balance, amount));
+                            getBalance(), amount));
+        }
+    }
+    
+    /**
+     * Atomically deduct amount from customer balance if it is covered
+     * @param amountMinor amount to deduct in minor units
+     * @return true if the balance was deducted, false if it was insufficient
+     */
+    public boolean tryDeductBalance(long amountMinor) {
+        if (amountMinor < 0) {
+            throw new IllegalArgumentException("Amount to deduct cannot be negative");
         }
-        this.balance -= amount;
+        long current;
+        do {
+            current = balance;
+            if (amountMinor > current) {
+                return false;
+            }
+        } while (!BALANCE.compareAndSet(this, current, current - amountMinor));
+        return true;
     }
     
     /**
@@ -44,11 +87,25 @@ public class Customer {
         if (amount < 0) {
             throw new IllegalArgumentException("Amount to add cannot be negative");
         }
-        this.balance += amount;
+        addBalanceMinor(Money.ofMajor(amount));
+    }
+    
+    /**
+     * Add amount in minor units to customer balance
+     * @param amountMinor amount to add in minor units
+     */
+    public void addBalanceMinor(long amountMinor) {
+        if (amountMinor < 0) {
+            throw new IllegalArgumentException("Amount to add cannot be negative");
+        }
+        long current;
+        do {
+            current = balance;
+        } while (!BALANCE.compareAndSet(this, current, Math.addExact(current, amountMinor)));
     }
     
     @Override
     public String toString() {
-        return String.format("Customer: %s (Balance: $%.2f)", name, balance);
+        return String.format("Customer: %s (Balance: $%.2f)", name, getBalance());
     }
 }
\ No newline at end of file
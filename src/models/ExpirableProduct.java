@@ -1,12 +1,26 @@
 package models;
 
+import clock.StoreClock;
 import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Abstract class for products that can expire
+ * While a running ExpiryScheduler tracks the product, its flag alone answers
+ * isExpired, so the check is one volatile read; the scheduler sets it at its midnight
+ * run, a few milliseconds after the day ends. Untracked products compare the cached
+ * store clock day on every check
  */
 public abstract class ExpirableProduct extends Product {
     protected LocalDate expirationDate;
+    protected final long expirationEpochDay;
+    private static final int BY_CLOCK = 0;
+    private static final int SCHEDULED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<ExpirableProduct> EXPIRY =
+        AtomicIntegerFieldUpdater.newUpdater(ExpirableProduct.class, "expiry");
+    
+    private volatile int expiry = BY_CLOCK;
     
     public ExpirableProduct(String name, double price, int quantity, LocalDate expirationDate) {
         super(name, price, quantity);
@@ -14,20 +28,53 @@ public abstract class ExpirableProduct extends Product {
             throw new IllegalArgumentException("Expiration date cannot be null");
         }
         this.expirationDate = expirationDate;
+        this.expirationEpochDay = expirationDate.toEpochDay();
     }
     
     public LocalDate getExpirationDate() {
         return expirationDate;
     }
     
+    /**
+     * Get last day the product can be sold
+     * @return expiration date as LocalDate epoch day
+     */
+    public long getExpirationEpochDay() {
+        return expirationEpochDay;
+    }
+    
+    /**
+     * Flag the product as expired for good; set by ExpiryScheduler at midnight
+     */
+    public void markExpired() {
+        expiry = EXPIRED;
+    }
+    
+    /**
+     * Hand expiry over to a running ExpiryScheduler, or take it back for the store clock
+     * An expired product stays expired either way
+     * @param scheduled true once the scheduler will mark the product at its midnight run
+     */
+    public void setScheduled(boolean scheduled) {
+        if (scheduled) {
+            EXPIRY.compareAndSet(this, BY_CLOCK, SCHEDULED);
+        } else {
+            EXPIRY.compareAndSet(this, SCHEDULED, BY_CLOCK);
+        }
+    }
+    
     @Override
     public boolean isExpired() {
-        return LocalDate.now().isAfter(expirationDate);
+        int state = expiry;
+        if (state == BY_CLOCK) {
+            return StoreClock.today() > expirationEpochDay;
+        }
+        return state == EXPIRED;
     }
     
     @Override
     public String toString() {
         return String.format("%s - $%.2f (Qty: %d, Expires: %s)", 
-                           name, price, quantity, expirationDate);
+                           name, getPrice(), getQuantity(), expirationDate);
     }
 }
\ No newline at end of file
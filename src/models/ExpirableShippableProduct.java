@@ -8,14 +8,29 @@ import java.time.LocalDate;
  */
 public abstract class ExpirableShippableProduct extends ExpirableProduct implements Shippable {
     protected double weight; // in kg
+    protected long weightGrams;
+    protected final long volumeCm3;
     
     public ExpirableShippableProduct(String name, double price, int quantity, 
                                    LocalDate expirationDate, double weight) {
+        this(name, price, quantity, expirationDate, weight, 0);
+    }
+    
+    /**
+     * @param volumeCm3 packed volume in cubic centimetres for dimensional weight, 0 if unknown
+     */
+    public ExpirableShippableProduct(String name, double price, int quantity, 
+                                   LocalDate expirationDate, double weight, long volumeCm3) {
         super(name, price, quantity, expirationDate);
         if (weight <= 0) {
             throw new IllegalArgumentException("Weight must be positive");
         }
+        if (volumeCm3 < 0) {
+            throw new IllegalArgumentException("Volume cannot be negative");
+        }
         this.weight = weight;
+        this.weightGrams = Math.round(weight * 1000);
+        this.volumeCm3 = volumeCm3;
     }
     
     @Override
@@ -23,6 +38,16 @@ public abstract class ExpirableShippableProduct extends ExpirableProduct impleme
         return weight;
     }
     
+    @Override
+    public long getWeightGrams() {
+        return weightGrams;
+    }
+    
+    @Override
+    public long getVolumeCm3() {
+        return volumeCm3;
+    }
+    
     @Override
     public boolean requiresShipping() {
         return true;
@@ -31,6 +56,6 @@ public abstract class ExpirableShippableProduct extends ExpirableProduct impleme
     @Override
     public String toString() {
         return String.format("%s - $%.2f (Qty: %d, Weight: %.1fkg, Expires: %s)", 
-                           name, price, quantity, weight, expirationDate);
+                           name, getPrice(), getQuantity(), weight, expirationDate);
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact money arithmetic on primitive minor units (cents)
+ * Amounts are plain longs so pricing and balance updates never allocate and never drift;
+ * doubles are only used at the API edges for input and display
+ */
+public final class Money {
+    public static final String CURRENCY = "USD";
+    public static final int SCALE = 2;
+    public static final long MINOR_PER_MAJOR = 100;
+    
+    private Money() {
+    }
+    
+    /**
+     * Convert a major-unit amount (e.g. dollars) to minor units, rounding half up
+     * Only used when amounts enter the system, never on the checkout path
+     * @param amount amount in major units
+     * @return amount in minor units
+     * @throws ArithmeticException if the amount is not finite or does not fit in a long
+     */
+    public static long ofMajor(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new ArithmeticException("Amount must be finite");
+        }
+        return BigDecimal.valueOf(amount)
+                         .movePointRight(SCALE)
+                         .setScale(0, RoundingMode.HALF_UP)
+                         .longValueExact();
+    }
+    
+    /**
+     * Convert minor units to major units for display
+     * @param amountMinor amount in minor units
+     * @return amount in major units
+     */
+    public static double toMajor(long amountMinor) {
+        return (double) amountMinor / MINOR_PER_MAJOR;
+    }
+    
+    /**
+     * Multiply a unit price by a quantity
+     * @param unitPriceMinor unit price in minor units
+     * @param quantity number of units
+     * @return total in minor units
+     * @throws ArithmeticException on overflow
+     */
+    public static long times(long unitPriceMinor, int quantity) {
+        return Math.multiplyExact(unitPriceMinor, (long) quantity);
+    }
+}
@@ -1,14 +1,19 @@
 package models;
 
-import java.time.LocalDate;
+import inventory.StockLedger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract base class for all products in the e-commerce system
+ * Stock is kept in a lock-free ledger so concurrent checkouts of the same product never oversell
  */
 public abstract class Product {
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    
+    protected final long id;
     protected String name;
-    protected double price;
-    protected int quantity;
+    protected long price; // in minor units, see Money
+    protected final StockLedger stock;
     
     public Product(String name, double price, int quantity) {
         if (name == null || name.trim().isEmpty()) {
@@ -21,22 +26,37 @@ public abstract class Product {
             throw new IllegalArgumentException("Product quantity cannot be negative");
         }
         
+        this.id = NEXT_ID.getAndIncrement();
         this.name = name;
-        this.price = price;
-        this.quantity = quantity;
+        this.price = Money.ofMajor(price);
+        this.stock = new StockLedger(this, quantity);
     }
     
     // Getters
+    public long getId() { return id; }
     public String getName() { return name; }
-    public double getPrice() { return price; }
-    public int getQuantity() { return quantity; }
+    public double getPrice() { return Money.toMajor(price); }
+    public long getPriceMinor() { return price; }
+    public int getQuantity() { return stock.getAvailable(); }
+    public StockLedger getStock() { return stock; }
     
     // Setters
     public void setQuantity(int quantity) {
         if (quantity < 0) {
             throw new IllegalArgumentException("Quantity cannot be negative");
         }
-        this.quantity = quantity;
+        stock.setAvailable(quantity);
+    }
+    
+    /**
+     * Put back the exact price from a snapshot, which a major-unit double cannot always carry
+     * @param priceMinor price in minor units
+     */
+    public void restorePriceMinor(long priceMinor) {
+        if (priceMinor < 0) {
+            throw new IllegalArgumentException("Product price cannot be negative");
+        }
+        this.price = priceMinor;
     }
     
     /**
@@ -45,18 +65,27 @@ public abstract class Product {
      * @return true if available, false otherwise
      */
     public boolean isAvailable(int requestedQuantity) {
-        return quantity >= requestedQuantity && !isExpired();
+        return stock.isAvailable(requestedQuantity) && !isExpired();
     }
     
     /**
      * Reduce product quantity after purchase
      * @param soldQuantity quantity sold
+     * @throws IllegalStateException if not enough stock is left
      */
     public void reduceQuantity(int soldQuantity) {
-        if (soldQuantity > quantity) {
+        if (!tryReduceQuantity(soldQuantity)) {
             throw new IllegalStateException("Cannot sell more than available quantity");
         }
-        this.quantity -= soldQuantity;
+    }
+    
+    /**
+     * Reduce product quantity after purchase without throwing when stock is short
+     * @param soldQuantity quantity sold
+     * @return true if stock was reduced, false if not enough was left
+     */
+    public boolean tryReduceQuantity(int soldQuantity) {
+        return stock.tryTake(soldQuantity);
     }
     
     /**
@@ -75,8 +104,24 @@ public abstract class Product {
         return false;
     }
     
+    /**
+     * Products are identified by their id, assigned once at creation
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Product && id == ((Product) o).id;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+    
     @Override
     public String toString() {
-        return String.format("%s - $%.2f (Qty: %d)", name, price, quantity);
+        return String.format("%s - $%.2f (Qty: %d)", name, getPrice(), getQuantity());
     }
 }
\ No newline at end of file
@@ -7,13 +7,27 @@ import interfaces.Shippable;
  */
 public abstract class ShippableProduct extends Product implements Shippable {
     protected double weight; // in kg
+    protected long weightGrams;
+    protected final long volumeCm3;
     
     public ShippableProduct(String name, double price, int quantity, double weight) {
+        this(name, price, quantity, weight, 0);
+    }
+    
+    /**
+     * @param volumeCm3 packed volume in cubic centimetres for dimensional weight, 0 if unknown
+     */
+    public ShippableProduct(String name, double price, int quantity, double weight, long volumeCm3) {
         super(name, price, quantity);
         if (weight <= 0) {
             throw new IllegalArgumentException("Weight must be positive");
         }
+        if (volumeCm3 < 0) {
+            throw new IllegalArgumentException("Volume cannot be negative");
+        }
         this.weight = weight;
+        this.weightGrams = Math.round(weight * 1000);
+        this.volumeCm3 = volumeCm3;
     }
     
     @Override
@@ -21,6 +35,16 @@ public abstract class ShippableProduct extends Product implements Shippable {
         return weight;
     }
     
+    @Override
+    public long getWeightGrams() {
+        return weightGrams;
+    }
+    
+    @Override
+    public long getVolumeCm3() {
+        return volumeCm3;
+    }
+    
     @Override
     public boolean requiresShipping() {
         return true;
@@ -29,6 +53,6 @@ public abstract class ShippableProduct extends Product implements Shippable {
     @Override
     public String toString() {
         return String.format("%s - $%.2f (Qty: %d, Weight: %.1fkg)", 
-                           name, price, quantity, weight);
+                           name, getPrice(), getQuantity(), weight);
     }
 }
\ No newline at end of file
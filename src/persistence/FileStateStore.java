@@ -0,0 +1,209 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * StateStore in a single append-only file
+ * Each batch is one entry [length][crc32c][product count]([name length][name UTF-8][stock])*
+ * [customer count]([name length][name UTF-8][balance])*, forced to disk before write
+ * returns. Opening the file replays it into an in-memory map of latest values and
+ * drops a torn last entry. Overwritten values are garbage; once the file is four
+ * times the size of the live values it is rewritten as a single entry
+ */
+public class FileStateStore implements StateStore {
+    private static final int HEADER_SIZE = 8;
+    private static final long COMPACT_MIN_SIZE = 1 << 20;
+    
+    private final Path file;
+    private FileChannel channel;
+    // Guarded by this
+    private final Map<String, Integer> stock = new HashMap<>();
+    private final Map<String, Long> balances = new HashMap<>();
+    private long end;
+    private long liveBytes;
+    
+    private FileStateStore(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        recover();
+    }
+    
+    /**
+     * Open or create a state file
+     * @param file path of the file
+     * @return the store, holding every value from complete entries
+     * @throws IOException if the file cannot be opened or read
+     */
+    public static FileStateStore open(Path file) throws IOException {
+        return new FileStateStore(file);
+    }
+    
+    @Override
+    public synchronized void write(StateBatch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteBuffer entry = encode(batch);
+        long position = end;
+        while (entry.hasRemaining()) {
+            position += channel.write(entry, position);
+        }
+        channel.force(false);
+        end = position;
+        apply(batch);
+        if (end > COMPACT_MIN_SIZE && end > 4 * liveBytes) {
+            compact();
+        }
+    }
+    
+    @Override
+    public synchronized StateBatch read() {
+        StateBatch batch = new StateBatch();
+        stock.forEach(batch::addProduct);
+        balances.forEach(batch::addCustomer);
+        return batch;
+    }
+    
+    /**
+     * Get the file size
+     * @return bytes in the file up to the last complete entry
+     */
+    public synchronized long size() {
+        return end;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+    
+    private static ByteBuffer encode(StateBatch batch) {
+        byte[][] products = new byte[batch.getProductCount()][];
+        byte[][] names = new byte[batch.getCustomerCount()][];
+        int bodySize = 4 + 4;
+        for (int i = 0; i < products.length; i++) {
+            products[i] = batch.getProductName(i).getBytes(StandardCharsets.UTF_8);
+            bodySize += 4 + products[i].length + 4;
+        }
+        for (int i = 0; i < names.length; i++) {
+            names[i] = batch.getCustomerName(i).getBytes(StandardCharsets.UTF_8);
+            bodySize += 4 + names[i].length + 8;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        entry.position(HEADER_SIZE);
+        entry.putInt(products.length);
+        for (int i = 0; i < products.length; i++) {
+            entry.putInt(products[i].length).put(products[i]).putInt(batch.getStock(i));
+        }
+        entry.putInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            entry.putInt(names[i].length).put(names[i]).putLong(batch.getBalanceMinor(i));
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(entry.array(), HEADER_SIZE, bodySize);
+        entry.putInt(0, bodySize).putInt(4, (int) crc.getValue());
+        entry.flip();
+        return entry;
+    }
+    
+    private static StateBatch decode(ByteBuffer body) {
+        StateBatch batch = new StateBatch();
+        int products = body.getInt();
+        for (int i = 0; i < products; i++) {
+            byte[] name = new byte[body.getInt()];
+            body.get(name);
+            batch.addProduct(new String(name, StandardCharsets.UTF_8), body.getInt());
+        }
+        int customers = body.getInt();
+        for (int i = 0; i < customers; i++) {
+            byte[] name = new byte[body.getInt()];
+            body.get(name);
+            batch.addCustomer(new String(name, StandardCharsets.UTF_8), body.getLong());
+        }
+        return batch;
+    }
+    
+    private void apply(StateBatch batch) {
+        for (int i = 0; i < batch.getProductCount(); i++) {
+            String name = batch.getProductName(i);
+            if (stock.put(name, batch.getStock(i)) == null) {
+                liveBytes += 8 + name.length();
+            }
+        }
+        for (int i = 0; i < batch.getCustomerCount(); i++) {
+            String name = batch.getCustomerName(i);
+            if (balances.put(name, batch.getBalanceMinor(i)) == null) {
+                liveBytes += 12 + name.length();
+            }
+        }
+    }
+    
+    /**
+     * Replay complete entries and cut the file after the last one
+     */
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= fileSize) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            while (body.hasRemaining()) {
+                channel.read(body, position + HEADER_SIZE + body.position());
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            body.flip();
+            apply(decode(body));
+            position += HEADER_SIZE + length;
+        }
+        if (position < fileSize) {
+            // A torn entry from a crash
+            channel.truncate(position);
+            channel.force(true);
+        }
+        end = position;
+    }
+    
+    /**
+     * Rewrite the file as one entry of the live values
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        ByteBuffer entry = encode(read());
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (entry.hasRemaining()) {
+                target.write(entry);
+            }
+            target.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // The old file if the move failed, which still holds every value
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            end = channel.size();
+        }
+    }
+}
\ No newline at end of file
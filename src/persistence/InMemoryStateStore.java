@@ -0,0 +1,73 @@
+package persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StateStore kept in memory, for tests and benchmarks
+ */
+public class InMemoryStateStore implements StateStore {
+    private final Map<String, Integer> stock = new ConcurrentHashMap<>();
+    private final Map<String, Long> balances = new ConcurrentHashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong values = new AtomicLong();
+    
+    @Override
+    public void write(StateBatch batch) {
+        for (int i = 0; i < batch.getProductCount(); i++) {
+            stock.put(batch.getProductName(i), batch.getStock(i));
+        }
+        for (int i = 0; i < batch.getCustomerCount(); i++) {
+            balances.put(batch.getCustomerName(i), batch.getBalanceMinor(i));
+        }
+        batches.incrementAndGet();
+        values.addAndGet(batch.getProductCount() + batch.getCustomerCount());
+    }
+    
+    @Override
+    public StateBatch read() {
+        StateBatch batch = new StateBatch();
+        stock.forEach(batch::addProduct);
+        balances.forEach(batch::addCustomer);
+        return batch;
+    }
+    
+    /**
+     * Get the stored stock of a product
+     * @param name product name
+     * @return quantity on hand, or null if never written
+     */
+    public Integer getStock(String name) {
+        return stock.get(name);
+    }
+    
+    /**
+     * Get the stored balance of a customer
+     * @param name customer name
+     * @return balance in minor units, or null if never written
+     */
+    public Long getBalanceMinor(String name) {
+        return balances.get(name);
+    }
+    
+    /**
+     * Get number of batches written
+     * @return batch count
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+    
+    /**
+     * Get number of values written over all batches
+     * @return value count
+     */
+    public long getValueCount() {
+        return values.get();
+    }
+    
+    @Override
+    public void close() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,389 @@
+package persistence;
+
+import models.Customer;
+import models.Product;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of completed checkouts, backed by a memory-mapped file
+ * 
+ * The file is mapped in fixed-size regions. Each entry is [length][crc32c][body];
+ * an entry never spans two regions, a length of -1 pads to the next region and a
+ * length of 0 marks the end of the log. Opening an existing file scans it and drops
+ * a torn last entry, so appends continue after the last complete one.
+ * 
+ * Appends only copy bytes into the mapping. A single committer thread forces
+ * everything appended since its last pass to disk in one go (group commit), so
+ * concurrent checkouts share fsyncs instead of each paying for one.
+ */
+public class OrderJournal implements AutoCloseable {
+    private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+    
+    private final FileChannel channel;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final Thread committer;
+    
+    // Guarded by this
+    private long position;        // file offset where the next entry goes
+    private long appendedCount;   // entries written to the mapping
+    private long durableCount;    // entries forced to disk
+    private long durablePosition; // file offset up to which everything is forced
+    private IOException failure;
+    private boolean closed;
+    
+    private OrderJournal(Path file, int regionSize) throws IOException {
+        if (regionSize < 4096) {
+            throw new IllegalArgumentException("Region size must be at least 4096 bytes");
+        }
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, 
+                                        StandardOpenOption.WRITE);
+        recover();
+        this.committer = new Thread(this::commitLoop, "order-journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+    
+    /**
+     * Open or create a journal file
+     * @param file path of the journal
+     * @return the journal, positioned after the last complete entry
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static OrderJournal open(Path file) throws IOException {
+        return new OrderJournal(file, DEFAULT_REGION_SIZE);
+    }
+    
+    /**
+     * Open or create a journal file with a custom mapping region size
+     * @param file path of the journal
+     * @param regionSize bytes mapped at a time; also the largest possible entry
+     * @return the journal
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static OrderJournal open(Path file, int regionSize) throws IOException {
+        return new OrderJournal(file, regionSize);
+    }
+    
+    /**
+     * Append an entry without waiting for it to reach disk
+     * @param record the entry
+     * @return ticket to pass to awaitDurable
+     */
+    public long append(OrderRecord record) {
+        int size = HEADER_SIZE + record.encodedSize();
+        if (size > regionSize) {
+            throw new IllegalArgumentException("Entry is larger than a journal region");
+        }
+        
+        ByteBuffer body = ByteBuffer.allocate(size - HEADER_SIZE);
+        record.encode(body);
+        CRC32C crc = new CRC32C();
+        crc.update(body.array(), 0, body.capacity());
+        
+        synchronized (this) {
+            ensureOpen();
+            int offset = (int) (position % regionSize);
+            MappedByteBuffer region = region(position);
+            if (offset + size + 4 > regionSize) {
+                // Not enough room for the entry plus a following end marker
+                if (offset + 4 <= regionSize) {
+                    region.putInt(offset, PADDING);
+                }
+                position += regionSize - offset;
+                offset = 0;
+                region = region(position);
+            }
+            region.put(offset + HEADER_SIZE, body.array(), 0, body.capacity());
+            region.putInt(offset + 4, (int) crc.getValue());
+            region.putInt(offset + size, 0);
+            // Length last, so a reader never sees a length without its body
+            region.putInt(offset, size - HEADER_SIZE);
+            position += size;
+            notifyAll();
+            return ++appendedCount;
+        }
+    }
+    
+    /**
+     * Wait until the entry with the given ticket, and all before it, are on disk
+     * @param ticket value returned by append
+     * @throws UncheckedIOException if forcing the journal failed; the journal then accepts
+     *         no more entries, and entries not yet forced may or may not be in the file
+     */
+    public synchronized void awaitDurable(long ticket) {
+        boolean interrupted = false;
+        while (durableCount < ticket && failure == null) {
+            if (closed && !committer.isAlive()) {
+                throw new IllegalStateException("Journal closed before entry became durable");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null && durableCount < ticket) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+    
+    /**
+     * Append an entry and wait until it is on disk
+     * @param record the entry
+     */
+    public void appendDurably(OrderRecord record) {
+        awaitDurable(append(record));
+    }
+    
+    /**
+     * Get number of entries in the journal, including recovered ones
+     * @return entry count
+     */
+    public synchronized long size() {
+        return appendedCount;
+    }
+    
+    /**
+     * Read every complete entry from the start of the journal
+     * @param consumer receives the entries in append order
+     */
+    public void replay(Consumer<OrderRecord> consumer) {
+        long end;
+        synchronized (this) {
+            end = position;
+        }
+        long offset = 0;
+        while (offset < end) {
+            MappedByteBuffer region;
+            synchronized (this) {
+                region = region(offset);
+            }
+            int inRegion = (int) (offset % regionSize);
+            int length = region.getInt(inRegion);
+            if (length == PADDING) {
+                offset += regionSize - inRegion;
+                continue;
+            }
+            ByteBuffer body = region.slice(inRegion + HEADER_SIZE, length);
+            consumer.accept(OrderRecord.decode(body));
+            offset += HEADER_SIZE + length;
+        }
+    }
+    
+    /**
+     * Rebuild state by applying every journaled checkout to products and customers
+     * that were created with their initial quantities and balances
+     * Both are matched by name, which unlike a product id survives a restart; lines
+     * and customers whose name is not in the maps are skipped, and lines whose
+     * products share a name all come out of the one product of that name
+     * @param products products by name
+     * @param customers customers by name
+     * @return number of entries applied
+     * @throws IllegalStateException if an entry sells more than is left of a product or
+     *         charges more than a customer has, i.e. the starting state does not match the
+     *         journal; that entry is not applied, the ones before it are
+     */
+    public long replayInto(Map<String, Product> products, Map<String, Customer> customers) {
+        long[] applied = new long[1];
+        replay(record -> {
+            // Check the whole entry first, so a mismatch leaves none of it applied; lines
+            // of products that share a name draw on the same product, so sum them
+            Map<String, Integer> sold = new HashMap<>();
+            for (int i = 0; i < record.getLineCount(); i++) {
+                sold.merge(record.getProductName(i), record.getQuantity(i), Math::addExact);
+            }
+            for (Map.Entry<String, Integer> line : sold.entrySet()) {
+                Product product = products.get(line.getKey());
+                if (product != null && product.getQuantity() < line.getValue()) {
+                    throw new IllegalStateException(String.format(
+                        "Journal entry %d sells %d of %s but only %d are left", 
+                        applied[0] + 1, line.getValue(), product.getName(), product.getQuantity()));
+                }
+            }
+            Customer customer = customers.get(record.getCustomerName());
+            if (customer != null && customer.getBalanceMinor() < record.getTotalAmountMinor()) {
+                throw new IllegalStateException(String.format(
+                    "Journal entry %d charges %s %d but the balance is %d", 
+                    applied[0] + 1, customer.getName(), record.getTotalAmountMinor(), customer.getBalanceMinor()));
+            }
+            for (int i = 0; i < record.getLineCount(); i++) {
+                Product product = products.get(record.getProductName(i));
+                if (product != null) {
+                    product.reduceQuantity(record.getQuantity(i));
+                }
+            }
+            if (customer != null) {
+                customer.tryDeductBalance(record.getTotalAmountMinor());
+            }
+            applied[0]++;
+        });
+        return applied[0];
+    }
+    
+    /**
+     * Force everything to disk, stop the committer and close the file
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void commitLoop() {
+        while (true) {
+            long targetCount;
+            long targetPosition;
+            long fromPosition;
+            synchronized (this) {
+                while (appendedCount == durableCount && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (appendedCount == durableCount) {
+                    return;
+                }
+                targetCount = appendedCount;
+                targetPosition = position;
+                fromPosition = durablePosition;
+            }
+            
+            IOException error = null;
+            try {
+                force(fromPosition, targetPosition);
+            } catch (IOException e) {
+                error = e;
+            } catch (UncheckedIOException e) {
+                error = e.getCause();
+            }
+            
+            synchronized (this) {
+                if (error != null) {
+                    failure = error;
+                    notifyAll();
+                    return;
+                }
+                durableCount = targetCount;
+                durablePosition = targetPosition;
+                notifyAll();
+            }
+        }
+    }
+    
+    private void force(long from, long to) throws IOException {
+        long offset = from;
+        while (offset < to) {
+            MappedByteBuffer region;
+            synchronized (this) {
+                region = region(offset);
+            }
+            int start = (int) (offset % regionSize);
+            long regionEnd = offset - start + regionSize;
+            // Include the end marker that follows the last entry
+            int end = (int) (Math.min(to + 4, regionEnd) - (offset - start));
+            region.force(start, end - start);
+            offset = regionEnd;
+        }
+    }
+    
+    /**
+     * Scan an existing file to find the end of the last complete entry
+     */
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        long offset = 0;
+        long count = 0;
+        while (offset < fileSize) {
+            MappedByteBuffer region = region(offset);
+            int inRegion = (int) (offset % regionSize);
+            int length = inRegion + 4 <= regionSize ? region.getInt(inRegion) : PADDING;
+            if (length == PADDING) {
+                offset += regionSize - inRegion;
+                continue;
+            }
+            if (length <= 0 || inRegion + HEADER_SIZE + length > regionSize 
+                || !checksumMatches(region, inRegion, length)) {
+                // End of log, or a torn entry from a crash: wipe the rest of the region
+                if (length != 0) {
+                    for (int i = inRegion; i < regionSize; i++) {
+                        region.put(i, (byte) 0);
+                    }
+                    region.force();
+                }
+                break;
+            }
+            offset += HEADER_SIZE + length;
+            count++;
+        }
+        position = offset;
+        durablePosition = offset;
+        appendedCount = count;
+        durableCount = count;
+    }
+    
+    private static boolean checksumMatches(MappedByteBuffer region, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(region.slice(offset + HEADER_SIZE, length));
+        return (int) crc.getValue() == region.getInt(offset + 4);
+    }
+    
+    /**
+     * Get the mapped region holding a file offset, mapping it on first use
+     * Callers hold the lock
+     */
+    private MappedByteBuffer region(long offset) {
+        int index = (int) (offset / regionSize);
+        try {
+            while (regions.size() <= index) {
+                long start = (long) regions.size() * regionSize;
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return regions.get(index);
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package persistence;
+
+import models.CartItem;
+import models.Customer;
+import services.PricingSnapshot;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Journal entry for one completed checkout
+ * Lines are kept as parallel arrays of product name and quantity; names, unlike
+ * product ids, stay the same across restarts
+ */
+public final class OrderRecord {
+    private final long timestampMillis;
+    private final String customerName;
+    private final byte[] customerNameUtf8;
+    private final String[] productNames;
+    private final byte[][] productNamesUtf8;
+    private final int[] quantities;
+    private final long subtotalMinor;
+    private final long shippingFeeMinor;
+    private final long totalAmountMinor;
+    
+    public OrderRecord(long timestampMillis, String customerName, String[] productNames, int[] quantities, 
+                     long subtotalMinor, long shippingFeeMinor, long totalAmountMinor) {
+        if (customerName == null) {
+            throw new IllegalArgumentException("Customer name cannot be null");
+        }
+        if (productNames.length != quantities.length) {
+            throw new IllegalArgumentException("Every line needs a product name and a quantity");
+        }
+        
+        this.timestampMillis = timestampMillis;
+        this.customerName = customerName;
+        this.customerNameUtf8 = customerName.getBytes(StandardCharsets.UTF_8);
+        this.productNames = productNames;
+        this.productNamesUtf8 = new byte[productNames.length][];
+        for (int i = 0; i < productNames.length; i++) {
+            productNamesUtf8[i] = productNames[i].getBytes(StandardCharsets.UTF_8);
+        }
+        this.quantities = quantities;
+        this.subtotalMinor = subtotalMinor;
+        this.shippingFeeMinor = shippingFeeMinor;
+        this.totalAmountMinor = totalAmountMinor;
+    }
+    
+    /**
+     * Capture a completed checkout
+     * @param customer the customer that paid
+     * @param pricing what was charged
+     * @return the journal entry
+     */
+    public static OrderRecord of(Customer customer, PricingSnapshot pricing) {
+        List<CartItem> items = pricing.getItems();
+        String[] productNames = new String[items.size()];
+        int[] quantities = new int[items.size()];
+        for (int i = 0; i < productNames.length; i++) {
+            CartItem item = items.get(i);
+            productNames[i] = item.getProduct().getName();
+            quantities[i] = item.getQuantity();
+        }
+        return new OrderRecord(System.currentTimeMillis(), customer.getName(), productNames, quantities, 
+                             pricing.getSubtotalMinor(), pricing.getShippingFeeMinor(), 
+                             pricing.getTotalAmountMinor());
+    }
+    
+    public long getTimestampMillis() { return timestampMillis; }
+    public String getCustomerName() { return customerName; }
+    public int getLineCount() { return productNames.length; }
+    public String getProductName(int line) { return productNames[line]; }
+    public int getQuantity(int line) { return quantities[line]; }
+    public long getSubtotalMinor() { return subtotalMinor; }
+    public long getShippingFeeMinor() { return shippingFeeMinor; }
+    public long getTotalAmountMinor() { return totalAmountMinor; }
+    
+    /**
+     * Write the record body
+     * Layout: timestamp, name length, name UTF-8, subtotal, shipping, total, line count,
+     * then product name length, name UTF-8 and quantity per line
+     * @param out buffer with enough room, see encodedSize
+     */
+    void encode(ByteBuffer out) {
+        out.putLong(timestampMillis);
+        out.putInt(customerNameUtf8.length);
+        out.put(customerNameUtf8);
+        out.putLong(subtotalMinor);
+        out.putLong(shippingFeeMinor);
+        out.putLong(totalAmountMinor);
+        out.putInt(productNames.length);
+        for (int i = 0; i < productNames.length; i++) {
+            out.putInt(productNamesUtf8[i].length);
+            out.put(productNamesUtf8[i]);
+            out.putInt(quantities[i]);
+        }
+    }
+    
+    int encodedSize() {
+        int size = 8 + 4 + customerNameUtf8.length + 8 * 3 + 4 + productNames.length * 8;
+        for (byte[] name : productNamesUtf8) {
+            size += name.length;
+        }
+        return size;
+    }
+    
+    static OrderRecord decode(ByteBuffer in) {
+        long timestampMillis = in.getLong();
+        byte[] name = new byte[in.getInt()];
+        in.get(name);
+        long subtotal = in.getLong();
+        long shipping = in.getLong();
+        long total = in.getLong();
+        int lines = in.getInt();
+        String[] productNames = new String[lines];
+        int[] quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            byte[] productName = new byte[in.getInt()];
+            in.get(productName);
+            productNames[i] = new String(productName, StandardCharsets.UTF_8);
+            quantities[i] = in.getInt();
+        }
+        return new OrderRecord(timestampMillis, new String(name, StandardCharsets.UTF_8), 
+                             productNames, quantities, subtotal, shipping, total);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Order (%s, %d lines, Total: %d)", customerName, productNames.length, totalAmountMinor);
+    }
+}
@@ -0,0 +1,463 @@
+package persistence;
+
+import interfaces.Shippable;
+import models.Cart;
+import models.Customer;
+import models.ExpirableProduct;
+import models.Product;
+import products.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Compact, versioned binary snapshots of products, carts and customers
+ * Every snapshot starts with a format version byte and a kind byte. Integers are
+ * LEB128 varints (zigzag for signed ones) and strings are length-prefixed UTF-8
+ * encoded straight into the buffer, so writing allocates nothing. A product is a
+ * tag for its concrete class followed by the fields of each level of the hierarchy:
+ * Product, then ExpirableProduct and Shippable where they apply. Carts refer to
+ * products by id, resolved against the reader's catalog. Reservations are transient
+ * and not part of a snapshot; a product is written with its available stock.
+ * Readers reject a snapshot of another version or kind, or one that is malformed or
+ * cut short, with IllegalArgumentException
+ */
+public class SnapshotCodec {
+    public static final int VERSION = 1;
+    
+    private static final byte PRODUCT = 1;
+    private static final byte CART = 2;
+    private static final byte CUSTOMER = 3;
+    private static final byte CATALOG = 4;
+    
+    // Tags of the concrete product classes are part of the format; never reuse one
+    private static final byte CHEESE = 1;
+    private static final byte BISCUITS = 2;
+    private static final byte TV_SET = 3;
+    private static final byte MOBILE = 4;
+    private static final byte SCRATCH_CARD = 5;
+    
+    private static final int EXPIRED = 1;
+    private static final int WHOLE_GRAMS = 2; // weight is written as a gram count instead of a double
+    
+    /**
+     * Write one product
+     * @param out buffer with at least sizeOf(product) bytes remaining
+     * @param product the product
+     * @throws IllegalArgumentException if the product class has no tag
+     */
+    public static void writeProduct(ByteBuffer out, Product product) {
+        writeHeader(out, PRODUCT);
+        putProduct(out, product);
+    }
+    
+    /**
+     * Read one product; it is a new catalog entry with a new id
+     * @param in buffer positioned at a product snapshot
+     * @return the product
+     */
+    public static Product readProduct(ByteBuffer in) {
+        try {
+            readHeader(in, PRODUCT);
+            getVarLong(in); // id of the original
+            return getProduct(in);
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+    
+    /**
+     * Get the encoded size of a product snapshot
+     * @param product the product
+     * @return size in bytes
+     */
+    public static int sizeOf(Product product) {
+        return 2 + productSize(product);
+    }
+    
+    /**
+     * Write a set of products, e.g. a catalog to ship to another node
+     * @param out buffer with at least sizeOfProducts(products) bytes remaining
+     * @param products the products
+     */
+    public static void writeProducts(ByteBuffer out, Collection<? extends Product> products) {
+        writeHeader(out, CATALOG);
+        putVarLong(out, products.size());
+        for (Product product : products) {
+            putProduct(out, product);
+        }
+    }
+    
+    /**
+     * Read a set of products
+     * @param in buffer positioned at a product set snapshot
+     * @return the new products by their id in the snapshot, in snapshot order, so carts
+     *         written against the original catalog can be resolved with map::get
+     */
+    public static Map<Long, Product> readProducts(ByteBuffer in) {
+        try {
+            readHeader(in, CATALOG);
+            int count = getLength(in);
+            Map<Long, Product> products = new LinkedHashMap<>(Math.max(16, Math.min(count, in.remaining()) * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                long id = getVarLong(in);
+                products.put(id, getProduct(in));
+            }
+            return products;
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+    
+    public static int sizeOfProducts(Collection<? extends Product> products) {
+        int size = 2 + varLongSize(products.size());
+        for (Product product : products) {
+            size += productSize(product);
+        }
+        return size;
+    }
+    
+    /**
+     * Write a cart as product id and quantity per line
+     * @param out buffer with at least sizeOf(cart) bytes remaining
+     * @param cart the cart
+     */
+    public static void writeCart(ByteBuffer out, Cart cart) {
+        writeHeader(out, CART);
+        putVarLong(out, cart.size());
+        cart.forEachItem(item -> {
+            putVarLong(out, item.getProduct().getId());
+            putVarLong(out, item.getQuantity());
+        });
+    }
+    
+    /**
+     * Read a cart; lines are restored as written, without checking stock
+     * @param in buffer positioned at a cart snapshot
+     * @param products resolves the product ids of the lines
+     * @return the cart
+     * @throws IllegalArgumentException if a product id cannot be resolved
+     */
+    public static Cart readCart(ByteBuffer in, LongFunction<Product> products) {
+        try {
+            readHeader(in, CART);
+            int lines = getLength(in);
+            Cart cart = new Cart();
+            for (int i = 0; i < lines; i++) {
+                long id = getVarLong(in);
+                Product product = products.apply(id);
+                if (product == null) {
+                    throw new IllegalArgumentException("Unknown product id " + id + " in cart snapshot");
+                }
+                cart.restoreLine(product, getLength(in));
+            }
+            return cart;
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+    
+    public static int sizeOf(Cart cart) {
+        int[] size = {2 + varLongSize(cart.size())};
+        cart.forEachItem(item -> size[0] += varLongSize(item.getProduct().getId()) + varLongSize(item.getQuantity()));
+        return size[0];
+    }
+    
+    /**
+     * Write a customer's name, balance and shipping zone
+     * @param out buffer with at least sizeOf(customer) bytes remaining
+     * @param customer the customer
+     */
+    public static void writeCustomer(ByteBuffer out, Customer customer) {
+        writeHeader(out, CUSTOMER);
+        putString(out, customer.getName());
+        putVarLong(out, customer.getBalanceMinor());
+        putNullableString(out, customer.getShippingZone());
+    }
+    
+    public static Customer readCustomer(ByteBuffer in) {
+        try {
+            readHeader(in, CUSTOMER);
+            Customer customer = new Customer(getString(in), 0);
+            customer.addBalanceMinor(getVarLong(in));
+            customer.setShippingZone(getNullableString(in));
+            return customer;
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+    
+    public static int sizeOf(Customer customer) {
+        String zone = customer.getShippingZone();
+        int zoneBytes = zone == null ? 0 : utf8Length(zone);
+        return 2 + stringSize(customer.getName()) + varLongSize(customer.getBalanceMinor())
+             + varLongSize(zone == null ? 0 : zoneBytes + 1L) + zoneBytes;
+    }
+    
+    private static IllegalArgumentException truncated() {
+        return new IllegalArgumentException("Snapshot is truncated");
+    }
+    
+    private static void writeHeader(ByteBuffer out, byte kind) {
+        out.put((byte) VERSION).put(kind);
+    }
+    
+    private static void readHeader(ByteBuffer in, byte kind) {
+        int version = in.get();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+        byte found = in.get();
+        if (found != kind) {
+            throw new IllegalArgumentException("Expected snapshot kind " + kind + " but found " + found);
+        }
+    }
+    
+    private static byte tagOf(Product product) {
+        Class<?> type = product.getClass();
+        if (type == Cheese.class) {
+            return CHEESE;
+        } else if (type == Biscuits.class) {
+            return BISCUITS;
+        } else if (type == TV.class) {
+            return TV_SET;
+        } else if (type == Mobile.class) {
+            return MOBILE;
+        } else if (type == ScratchCard.class) {
+            return SCRATCH_CARD;
+        }
+        throw new IllegalArgumentException("No snapshot format for " + type.getName());
+    }
+    
+    private static int flagsOf(Product product) {
+        int flags = 0;
+        if (product.isExpired()) {
+            flags |= EXPIRED;
+        }
+        if (product instanceof Shippable) {
+            Shippable shippable = (Shippable) product;
+            if (shippable.getWeightGrams() / 1000.0 == shippable.getWeight()) {
+                flags |= WHOLE_GRAMS;
+            }
+        }
+        return flags;
+    }
+    
+    /**
+     * Body: id, tag, flags, name, price, available stock, then expiry day if expirable,
+     * then weight and volume if shippable
+     */
+    private static void putProduct(ByteBuffer out, Product product) {
+        byte tag = tagOf(product);
+        int flags = flagsOf(product);
+        putVarLong(out, product.getId());
+        out.put(tag).put((byte) flags);
+        putString(out, product.getName());
+        putVarLong(out, product.getPriceMinor());
+        putVarLong(out, product.getQuantity());
+        if (product instanceof ExpirableProduct) {
+            putVarLong(out, zigzag(((ExpirableProduct) product).getExpirationEpochDay()));
+        }
+        if (product instanceof Shippable) {
+            Shippable shippable = (Shippable) product;
+            if ((flags & WHOLE_GRAMS) != 0) {
+                putVarLong(out, shippable.getWeightGrams());
+            } else {
+                out.putDouble(shippable.getWeight());
+            }
+            putVarLong(out, shippable.getVolumeCm3());
+        }
+    }
+    
+    private static int productSize(Product product) {
+        tagOf(product);
+        int flags = flagsOf(product);
+        int size = 2 + varLongSize(product.getId()) + stringSize(product.getName())
+                 + varLongSize(product.getPriceMinor()) + varLongSize(product.getQuantity());
+        if (product instanceof ExpirableProduct) {
+            size += varLongSize(zigzag(((ExpirableProduct) product).getExpirationEpochDay()));
+        }
+        if (product instanceof Shippable) {
+            Shippable shippable = (Shippable) product;
+            size += (flags & WHOLE_GRAMS) != 0 ? varLongSize(shippable.getWeightGrams()) : 8;
+            size += varLongSize(shippable.getVolumeCm3());
+        }
+        return size;
+    }
+    
+    /**
+     * Read a product body after its id
+     */
+    private static Product getProduct(ByteBuffer in) {
+        byte tag = in.get();
+        int flags = in.get();
+        String name = getString(in);
+        long priceMinor = getVarLong(in);
+        int quantity = getLength(in);
+        double price = 0; // the exact minor-unit price is put back once the product exists
+        Product product;
+        switch (tag) {
+            case CHEESE:
+                product = new Cheese(name, price, quantity, getDate(in), getWeight(in, flags), getVarLong(in));
+                break;
+            case BISCUITS:
+                product = new Biscuits(name, price, quantity, getDate(in), getWeight(in, flags), getVarLong(in));
+                break;
+            case TV_SET:
+                product = new TV(name, price, quantity, getWeight(in, flags), getVarLong(in));
+                break;
+            case MOBILE:
+                product = new Mobile(name, price, quantity);
+                break;
+            case SCRATCH_CARD:
+                product = new ScratchCard(name, price, quantity);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown product tag " + tag);
+        }
+        product.restorePriceMinor(priceMinor);
+        if ((flags & EXPIRED) != 0 && product instanceof ExpirableProduct) {
+            ((ExpirableProduct) product).markExpired();
+        }
+        return product;
+    }
+    
+    private static LocalDate getDate(ByteBuffer in) {
+        return LocalDate.ofEpochDay(unzigzag(getVarLong(in)));
+    }
+    
+    private static double getWeight(ByteBuffer in, int flags) {
+        return (flags & WHOLE_GRAMS) != 0 ? getVarLong(in) / 1000.0 : in.getDouble();
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in snapshot");
+    }
+    
+    private static int getLength(ByteBuffer in) {
+        long length = getVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid length " + length + " in snapshot");
+        }
+        return (int) length;
+    }
+    
+    private static int varLongSize(long value) {
+        return value == 0 ? 1 : (64 - Long.numberOfLeadingZeros(value) + 6) / 7;
+    }
+    
+    private static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                // A surrogate pair is four bytes for two chars, everything else three for one
+                bytes += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+    
+    private static int stringSize(String s) {
+        int bytes = utf8Length(s);
+        return varLongSize(bytes) + bytes;
+    }
+    
+    private static void putString(ByteBuffer out, String s) {
+        putVarLong(out, utf8Length(s));
+        putUtf8(out, s);
+    }
+    
+    /**
+     * Encode char by char; an unpaired surrogate becomes "??" to keep the size of utf8Length
+     */
+    private static void putUtf8(ByteBuffer out, String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                out.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                   .put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18))).put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                   .put((byte) (0x80 | ((codePoint >> 6) & 0x3F))).put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                out.put((byte) '?').put((byte) '?');
+            }
+        }
+    }
+    
+    private static String getString(ByteBuffer in) {
+        return getUtf8(in, getLength(in));
+    }
+    
+    private static String getUtf8(ByteBuffer in, int length) {
+        if (length > in.remaining()) {
+            throw truncated();
+        }
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+    
+    /**
+     * A null string is written as length 0 and any other shifted up by one
+     */
+    private static void putNullableString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.put((byte) 0);
+        } else {
+            putVarLong(out, utf8Length(s) + 1L);
+            putUtf8(out, s);
+        }
+    }
+    
+    private static String getNullableString(ByteBuffer in) {
+        int length = getLength(in);
+        return length == 0 ? null : getUtf8(in, length - 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package persistence;
+
+import models.Customer;
+import models.Product;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Latest stock of some products and balances of some customers, as handed to a
+ * StateStore in one write or read back from it
+ * Values live in parallel arrays; a key appears at most once per batch when built
+ * by WriteBehindStore. Products are keyed by name, which unlike a product id stays
+ * the same across restarts; WriteBehindStore lets each name belong to one product
+ */
+public final class StateBatch {
+    private String[] productNames = new String[16];
+    private int[] stock = new int[16];
+    private int productCount;
+    private String[] customerNames = new String[16];
+    private long[] balances = new long[16];
+    private int customerCount;
+    
+    /**
+     * Add the stock on hand of a product
+     * @param name product name
+     * @param onHand available plus reserved quantity
+     */
+    public void addProduct(String name, int onHand) {
+        if (productCount == productNames.length) {
+            productNames = Arrays.copyOf(productNames, productCount * 2);
+            stock = Arrays.copyOf(stock, productCount * 2);
+        }
+        productNames[productCount] = name;
+        stock[productCount] = onHand;
+        productCount++;
+    }
+    
+    /**
+     * Add the balance of a customer
+     * @param name customer name
+     * @param balanceMinor balance in minor units
+     */
+    public void addCustomer(String name, long balanceMinor) {
+        if (customerCount == customerNames.length) {
+            customerNames = Arrays.copyOf(customerNames, customerCount * 2);
+            balances = Arrays.copyOf(balances, customerCount * 2);
+        }
+        customerNames[customerCount] = name;
+        balances[customerCount] = balanceMinor;
+        customerCount++;
+    }
+    
+    public int getProductCount() { return productCount; }
+    public String getProductName(int index) { return productNames[index]; }
+    public int getStock(int index) { return stock[index]; }
+    public int getCustomerCount() { return customerCount; }
+    public String getCustomerName(int index) { return customerNames[index]; }
+    public long getBalanceMinor(int index) { return balances[index]; }
+    
+    /**
+     * Check whether the batch holds no values
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return productCount == 0 && customerCount == 0;
+    }
+    
+    /**
+     * Set products and customers to the values in this batch, e.g. on startup from
+     * StateStore.read; keys without an object are skipped
+     * @param products products by name
+     * @param customers customers by name
+     */
+    public void applyTo(Map<String, Product> products, Map<String, Customer> customers) {
+        for (int i = 0; i < productCount; i++) {
+            Product product = products.get(productNames[i]);
+            if (product != null) {
+                product.setQuantity(stock[i]);
+            }
+        }
+        for (int i = 0; i < customerCount; i++) {
+            Customer customer = customers.get(customerNames[i]);
+            if (customer != null) {
+                long difference = balances[i] - customer.getBalanceMinor();
+                if (difference > 0) {
+                    customer.addBalanceMinor(difference);
+                } else if (difference < 0) {
+                    customer.tryDeductBalance(-difference);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("StateBatch (Products: %d, Customers: %d)", productCount, customerCount);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package persistence;
+
+import java.io.IOException;
+
+/**
+ * Durable home of the latest stock and balance values, written in batches by
+ * WriteBehindStore; see FileStateStore and InMemoryStateStore
+ */
+public interface StateStore extends AutoCloseable {
+    /**
+     * Write a batch, returning once it is durable
+     * A later batch overrides values of the same keys in earlier ones
+     * @param batch the values to store
+     * @throws IOException if the batch could not be written; it then counts as not written
+     */
+    void write(StateBatch batch) throws IOException;
+    
+    /**
+     * Read the latest stored value of every key
+     * @return all stored values
+     * @throws IOException if the store cannot be read
+     */
+    StateBatch read() throws IOException;
+    
+    @Override
+    void close() throws IOException;
+}
\ No newline at end of file
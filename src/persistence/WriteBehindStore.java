@@ -0,0 +1,286 @@
+package persistence;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import models.Customer;
+import models.Product;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind persistence of product stock and customer balances
+ * Checkouts only mark what they changed as dirty. Marks of the same product or
+ * customer coalesce, and the current value is read when a background flush writes
+ * the dirty set to the StateStore as one batch, so a hot product costs one write per
+ * flush however often it sells. A flush runs every half of the staleness bound and
+ * as soon as a full batch is dirty, so a change reaches the store within the bound
+ * unless the store itself takes longer to write. A writer that pushes the dirty set
+ * past its limit waits for a flush to make room; while the store is failing, writers
+ * do not wait and the dirty set, at most one entry per product and customer, is kept
+ * for the next attempt. Closing flushes everything that is still dirty; changes
+ * marked after that are not written
+ * The store keys products by name, so each name may belong to one product only;
+ * marking a second product of the same name is rejected instead of letting the two
+ * overwrite each other's stock
+ */
+public class WriteBehindStore implements AutoCloseable {
+    private static final LatencyHistogram FLUSH_TIME = Metrics.histogram("writebehind.flush.ns");
+    private static final Counter FLUSHES = Metrics.counter("writebehind.flushes");
+    private static final Counter FLUSH_FAILURES = Metrics.counter("writebehind.flush.failures");
+    private static final Counter WRITTEN = Metrics.counter("writebehind.written");
+    private static final Counter COALESCED = Metrics.counter("writebehind.coalesced");
+    private static final Counter BLOCKED = Metrics.counter("writebehind.blocked");
+    
+    private final StateStore store;
+    private final int batchSize;
+    private final int maxDirty;
+    private final Map<Long, Product> dirtyProducts = new ConcurrentHashMap<>();
+    private final Map<String, Product> productsByName = new ConcurrentHashMap<>(); // every product marked so far
+    private final Map<String, Customer> dirtyCustomers = new ConcurrentHashMap<>();
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private volatile IOException failure; // of the last flush, null once one succeeds
+    private volatile boolean closed;
+    
+    /**
+     * @param store where flushes write
+     * @param maxStaleness longest a change should stay in memory only
+     * @param batchSize dirty entries that trigger a flush before the staleness bound
+     * @param maxDirty dirty entries beyond which writers wait for a flush
+     */
+    public WriteBehindStore(StateStore store, Duration maxStaleness, int batchSize, int maxDirty) {
+        if (store == null) {
+            throw new IllegalArgumentException("Store cannot be null");
+        }
+        if (maxStaleness.toMillis() < 2) {
+            throw new IllegalArgumentException("Staleness bound must be at least 2 ms");
+        }
+        if (batchSize <= 0 || maxDirty < batchSize) {
+            throw new IllegalArgumentException("Batch size must be positive and no larger than the dirty limit");
+        }
+        this.store = store;
+        this.batchSize = batchSize;
+        this.maxDirty = maxDirty;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = maxStaleness.toMillis() / 2;
+        flusher.scheduleWithFixedDelay(this::flushDirty, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Record that a product's stock changed
+     * @param product the product
+     * @throws IllegalArgumentException if another product with the same name was marked before
+     */
+    public void markDirty(Product product) {
+        Product owner = productsByName.putIfAbsent(product.getName(), product);
+        if (owner != null && owner != product) {
+            throw new IllegalArgumentException("Another product is already persisted as " + product.getName());
+        }
+        if (dirtyProducts.putIfAbsent(product.getId(), product) == null) {
+            added();
+        } else {
+            COALESCED.increment();
+        }
+    }
+    
+    /**
+     * Record that a customer's balance changed
+     * @param customer the customer
+     */
+    public void markDirty(Customer customer) {
+        if (dirtyCustomers.putIfAbsent(customer.getName(), customer) == null) {
+            added();
+        } else {
+            COALESCED.increment();
+        }
+    }
+    
+    private void added() {
+        int count = dirtyCount.incrementAndGet();
+        if (count >= batchSize && !closed && flushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushDirty);
+            } catch (RejectedExecutionException e) {
+                // Closing; the final flush writes it
+            }
+        }
+        if (count > maxDirty && failure == null && !closed) {
+            awaitRoom();
+        }
+    }
+    
+    /**
+     * Block until a flush brings the dirty set back to its limit, the store fails or
+     * the store is closed
+     */
+    private void awaitRoom() {
+        BLOCKED.increment();
+        boolean interrupted = false;
+        synchronized (dirtyCount) {
+            while (dirtyCount.get() > maxDirty && failure == null && !closed) {
+                try {
+                    dirtyCount.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Get number of products and customers changed since they were last written
+     * @return dirty entry count
+     */
+    public int getDirtyCount() {
+        return dirtyCount.get();
+    }
+    
+    /**
+     * Get the error of the last flush
+     * @return the error, or null if the last flush succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+    
+    /**
+     * Write everything dirty now and wait for it
+     * @throws UncheckedIOException if the store failed to write
+     */
+    public void flush() {
+        if (closed) {
+            throw new IllegalStateException("Write-behind store is closed");
+        }
+        Future<?> done = flusher.submit(this::flushDirty);
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Flush failed", e.getCause());
+        }
+        IOException error = failure;
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+    
+    /**
+     * Take the dirty set and write its current values as one batch
+     * Runs on the flusher thread only, or after it stopped
+     */
+    private void flushDirty() {
+        flushQueued.set(false);
+        if (dirtyCount.get() == 0) {
+            return;
+        }
+        long start = Metrics.now();
+        List<Product> products = new ArrayList<>();
+        List<Customer> customers = new ArrayList<>();
+        StateBatch batch = new StateBatch();
+        // Remove before reading, so a change after the read marks the key dirty again
+        for (Map.Entry<Long, Product> entry : dirtyProducts.entrySet()) {
+            if (dirtyProducts.remove(entry.getKey(), entry.getValue())) {
+                Product product = entry.getValue();
+                products.add(product);
+                batch.addProduct(product.getName(), product.getStock().getOnHand());
+            }
+        }
+        for (Map.Entry<String, Customer> entry : dirtyCustomers.entrySet()) {
+            if (dirtyCustomers.remove(entry.getKey(), entry.getValue())) {
+                Customer customer = entry.getValue();
+                customers.add(customer);
+                batch.addCustomer(customer.getName(), customer.getBalanceMinor());
+            }
+        }
+        int written = products.size() + customers.size();
+        IOException error = null;
+        try {
+            store.write(batch);
+        } catch (IOException e) {
+            error = e;
+        } catch (UncheckedIOException e) {
+            error = e.getCause();
+        }
+        int released = written;
+        if (error == null) {
+            WRITTEN.add(written);
+            FLUSHES.increment();
+        } else {
+            FLUSH_FAILURES.increment();
+            // Keep the entries for the next flush, which reads their values again;
+            // an entry marked again in the meantime was already counted by that mark
+            released = 0;
+            for (Product product : products) {
+                if (dirtyProducts.putIfAbsent(product.getId(), product) != null) {
+                    released++;
+                }
+            }
+            for (Customer customer : customers) {
+                if (dirtyCustomers.putIfAbsent(customer.getName(), customer) != null) {
+                    released++;
+                }
+            }
+        }
+        failure = error;
+        dirtyCount.addAndGet(-released);
+        synchronized (dirtyCount) {
+            dirtyCount.notifyAll();
+        }
+        FLUSH_TIME.recordSince(start);
+    }
+    
+    /**
+     * Stop the flusher, write everything still dirty and close the store
+     * @throws UncheckedIOException if the final flush or closing the store failed
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (dirtyCount) {
+            dirtyCount.notifyAll();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushDirty();
+        IOException error = failure;
+        try {
+            store.close();
+        } catch (IOException e) {
+            error = error == null ? e : error;
+        }
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+}
\ No newline at end of file
@@ -12,6 +12,10 @@ public class Biscuits extends ExpirableShippableProduct {
         super(name, price, quantity, expirationDate, weight);
     }
     
+    public Biscuits(String name, double price, int quantity, LocalDate expirationDate, double weight, long volumeCm3) {
+        super(name, price, quantity, expirationDate, weight, volumeCm3);
+    }
+    
     // Convenience constructor with default weight per unit
     public Biscuits(String name, double price, int quantity, LocalDate expirationDate) {
         super(name, price, quantity, expirationDate, 0.7); // 700g per unit
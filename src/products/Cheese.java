@@ -12,6 +12,10 @@ public class Cheese extends ExpirableShippableProduct {
         super(name, price, quantity, expirationDate, weight);
     }
     
+    public Cheese(String name, double price, int quantity, LocalDate expirationDate, double weight, long volumeCm3) {
+        super(name, price, quantity, expirationDate, weight, volumeCm3);
+    }
+    
     // Convenience constructor with default weight per unit
     public Cheese(String name, double price, int quantity, LocalDate expirationDate) {
         super(name, price, quantity, expirationDate, 0.2); // 200g per unit
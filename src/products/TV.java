@@ -11,6 +11,11 @@ public class TV extends ShippableProduct {
         super(name, price, quantity, weight);
     }
     
+    // Boxed TVs are bulky, so their volume can be given for dimensional weight
+    public TV(String name, double price, int quantity, double weight, long volumeCm3) {
+        super(name, price, quantity, weight, volumeCm3);
+    }
+    
     // Convenience constructor with default weight
     public TV(String name, double price, int quantity) {
         super(name, price, quantity, 15.0); // 15kg default weight
@@ -0,0 +1,226 @@
+package promotions;
+
+import models.Money;
+import java.util.Arrays;
+
+/**
+ * One promotion rule with an optional validity window
+ * Item rules (tiered discounts and buy X get Y) discount the units of one product,
+ * bundles discount a set of products bought together, and coupons discount the cart
+ * once a code is applied. A unit of a product is discounted by at most one item rule
+ * or bundle; at most one coupon applies on top. Percentages are in basis points
+ */
+public final class Promotion {
+    /**
+     * Promotion kinds; PromotionEngine indexes each kind separately
+     */
+    public enum Type {
+        TIERED,
+        BUY_X_GET_Y,
+        BUNDLE,
+        COUPON
+    }
+    
+    private final String id;
+    private final Type type;
+    private final long[] productIds;
+    private final int[] quantities; // units of each product in a bundle, or tier thresholds
+    private final int[] basisPoints; // discount of each tier
+    private final long amountMinor; // bundle price, or coupon amount off
+    private final long minSubtotal; // coupon threshold
+    private final String code;
+    private final long startMillis;
+    private final long endMillis;
+    
+    private Promotion(String id, Type type, long[] productIds, int[] quantities, int[] basisPoints,
+                      long amountMinor, long minSubtotal, String code, long startMillis, long endMillis) {
+        if (id == null) {
+            throw new IllegalArgumentException("Promotion id cannot be null");
+        }
+        this.id = id;
+        this.type = type;
+        this.productIds = productIds;
+        this.quantities = quantities;
+        this.basisPoints = basisPoints;
+        this.amountMinor = amountMinor;
+        this.minSubtotal = minSubtotal;
+        this.code = code;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+    }
+    
+    private Promotion(String id, Type type, long[] productIds, int[] quantities, int[] basisPoints,
+                      long amountMinor, long minSubtotal, String code) {
+        this(id, type, productIds, quantities, basisPoints, amountMinor, minSubtotal, code,
+             Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Percentage off every unit once the quantity of a product reaches a tier
+     * @param id promotion id
+     * @param productId discounted product
+     * @param minQuantities ascending quantity thresholds
+     * @param basisPoints discount of each tier, e.g. 500 for 5%
+     * @return the promotion
+     */
+    public static Promotion tiered(String id, long productId, int[] minQuantities, int[] basisPoints) {
+        if (minQuantities.length == 0 || minQuantities.length != basisPoints.length) {
+            throw new IllegalArgumentException("Every tier needs a threshold and a discount");
+        }
+        for (int i = 0; i < minQuantities.length; i++) {
+            if (minQuantities[i] <= 0 || (i > 0 && minQuantities[i] <= minQuantities[i - 1])) {
+                throw new IllegalArgumentException("Tier thresholds must be positive and ascending");
+            }
+            requirePercentage(basisPoints[i]);
+        }
+        return new Promotion(id, Type.TIERED, new long[] {productId}, minQuantities.clone(), basisPoints.clone(), 0, 0, null);
+    }
+    
+    /**
+     * For every buy units of a product, free more units of it are free
+     * @param id promotion id
+     * @param productId discounted product
+     * @param buy units paid for in each group
+     * @param free units given away in each group
+     * @return the promotion
+     */
+    public static Promotion buyXGetY(String id, long productId, int buy, int free) {
+        if (buy <= 0 || free <= 0) {
+            throw new IllegalArgumentException("Buy and free quantities must be positive");
+        }
+        return new Promotion(id, Type.BUY_X_GET_Y, new long[] {productId}, new int[] {buy, free}, null, 0, 0, null);
+    }
+    
+    /**
+     * A fixed price for a set of products bought together
+     * @param id promotion id
+     * @param productIds products in the bundle
+     * @param quantities units of each product in one bundle
+     * @param bundlePrice price of one bundle
+     * @return the promotion
+     */
+    public static Promotion bundle(String id, long[] productIds, int[] quantities, double bundlePrice) {
+        if (productIds.length < 2 || productIds.length != quantities.length) {
+            throw new IllegalArgumentException("A bundle needs at least two products with a quantity each");
+        }
+        for (int i = 0; i < quantities.length; i++) {
+            if (quantities[i] <= 0) {
+                throw new IllegalArgumentException("Bundle quantities must be positive");
+            }
+            for (int j = 0; j < i; j++) {
+                if (productIds[i] == productIds[j]) {
+                    throw new IllegalArgumentException("A bundle cannot list a product twice");
+                }
+            }
+        }
+        if (bundlePrice < 0) {
+            throw new IllegalArgumentException("Bundle price cannot be negative");
+        }
+        return new Promotion(id, Type.BUNDLE, productIds.clone(), quantities.clone(), null, Money.ofMajor(bundlePrice), 0, null);
+    }
+    
+    /**
+     * Cart discount unlocked by a code: a percentage, an amount, or whichever is larger
+     * @param id promotion id
+     * @param code code the customer enters
+     * @param minSubtotal smallest discounted subtotal the coupon applies to
+     * @param basisPoints percentage off the discounted subtotal
+     * @param amountOff amount off
+     * @return the promotion
+     */
+    public static Promotion coupon(String id, String code, double minSubtotal, int basisPoints, double amountOff) {
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("Coupon code cannot be empty");
+        }
+        requirePercentage(basisPoints);
+        if (minSubtotal < 0 || amountOff < 0) {
+            throw new IllegalArgumentException("Coupon amounts cannot be negative");
+        }
+        return new Promotion(id, Type.COUPON, new long[0], new int[0], new int[] {basisPoints},
+                             Money.ofMajor(amountOff), Money.ofMajor(minSubtotal), code);
+    }
+    
+    private static void requirePercentage(int basisPoints) {
+        if (basisPoints < 0 || basisPoints > 10_000) {
+            throw new IllegalArgumentException("Discount must be between 0 and 10000 basis points");
+        }
+    }
+    
+    /**
+     * Limit the promotion to a time window
+     * @param startMillis first instant the promotion applies, epoch millis
+     * @param endMillis first instant it no longer applies
+     * @return a copy of this promotion with the window
+     */
+    public Promotion activeBetween(long startMillis, long endMillis) {
+        if (endMillis <= startMillis) {
+            throw new IllegalArgumentException("Promotion must end after it starts");
+        }
+        return new Promotion(id, type, productIds, quantities, basisPoints, amountMinor, minSubtotal, code,
+                             startMillis, endMillis);
+    }
+    
+    public String getId() { return id; }
+    public Type getType() { return type; }
+    public String getCode() { return code; }
+    
+    /**
+     * Get the products the promotion applies to
+     * @return product ids, empty for a coupon
+     */
+    public long[] getProductIds() { return productIds.clone(); }
+    
+    boolean isActiveAt(long nowMillis) {
+        return nowMillis >= startMillis && nowMillis < endMillis;
+    }
+    
+    long productId(int index) { return productIds[index]; }
+    int productCount() { return productIds.length; }
+    int bundleQuantity(int index) { return quantities[index]; }
+    
+    /**
+     * Discount of an item rule on some units of its product
+     * @param unitPriceMinor price of one unit
+     * @param quantity units covered
+     * @return discount in minor units
+     */
+    long itemDiscount(long unitPriceMinor, int quantity) {
+        if (type == Type.BUY_X_GET_Y) {
+            int group = quantities[0] + quantities[1];
+            return Money.times(unitPriceMinor, (quantity / group) * quantities[1]);
+        }
+        int tier = Arrays.binarySearch(quantities, quantity);
+        tier = tier >= 0 ? tier : -tier - 2;
+        if (tier < 0) {
+            return 0;
+        }
+        return Math.multiplyExact(Money.times(unitPriceMinor, quantity), (long) basisPoints[tier]) / 10_000;
+    }
+    
+    /**
+     * Saving of one bundle over its list price
+     * @param listPriceMinor summed price of the bundle's units
+     * @return saving in minor units, 0 if the bundle price is not lower
+     */
+    long bundleSaving(long listPriceMinor) {
+        return Math.max(0, listPriceMinor - amountMinor);
+    }
+    
+    /**
+     * Discount of a coupon on a subtotal
+     * @param subtotalMinor subtotal after item and bundle discounts
+     * @return discount in minor units, 0 below the coupon's minimum
+     */
+    long couponDiscount(long subtotalMinor) {
+        if (subtotalMinor < minSubtotal) {
+            return 0;
+        }
+        long percent = Math.multiplyExact(subtotalMinor, (long) basisPoints[0]) / 10_000;
+        return Math.min(subtotalMinor, Math.max(percent, amountMinor));
+    }
+    
+    @Override
+    public String toString() {
+        return id + " (" + type + ")";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,316 @@
+package promotions;
+
+import clock.StoreClock;
+import models.Cart;
+import models.CartItem;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prices carts against a fixed set of promotions
+ * Item rules and bundles are indexed by product id and coupons by code when the
+ * engine is built, so pricing a cart looks at the rules of its own products only,
+ * never the whole promotion list. Choosing the combination:
+ * 1. bundles are applied one at a time, always the one whose saving most exceeds the
+ *    item discounts its units would otherwise get, while any gains
+ * 2. each line's remaining units get its best item rule
+ * 3. the best applied coupon is taken off what is left
+ * Step 2 and 3 are exact; step 1 is greedy, which is optimal unless bundles compete
+ * for the same units in unusual ways. Immutable and safe to share between threads
+ */
+public class PromotionEngine {
+    private static final Promotion[] NONE = new Promotion[0];
+    
+    /**
+     * Rules touching one product, by kind
+     */
+    private static final class ProductRules {
+        Promotion[] itemRules = NONE;
+        Promotion[] bundles = NONE;
+    }
+    
+    private final Map<Long, ProductRules> byProduct = new HashMap<>();
+    private final Map<String, Promotion> coupons = new HashMap<>();
+    private final int size;
+    
+    /**
+     * @param promotions the promotions; expired or future ones may be included and are
+     *                   skipped at pricing time
+     * @throws IllegalArgumentException if two coupons share a code
+     */
+    public PromotionEngine(Collection<Promotion> promotions) {
+        Map<Long, List<Promotion>> itemRules = new HashMap<>();
+        Map<Long, List<Promotion>> bundles = new HashMap<>();
+        for (Promotion promotion : promotions) {
+            switch (promotion.getType()) {
+                case TIERED:
+                case BUY_X_GET_Y:
+                    itemRules.computeIfAbsent(promotion.productId(0), id -> new ArrayList<>()).add(promotion);
+                    break;
+                case BUNDLE:
+                    for (int i = 0; i < promotion.productCount(); i++) {
+                        bundles.computeIfAbsent(promotion.productId(i), id -> new ArrayList<>()).add(promotion);
+                    }
+                    break;
+                case COUPON:
+                    if (coupons.putIfAbsent(promotion.getCode(), promotion) != null) {
+                        throw new IllegalArgumentException("Duplicate coupon code " + promotion.getCode());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown promotion type " + promotion.getType());
+            }
+        }
+        for (Map.Entry<Long, List<Promotion>> entry : itemRules.entrySet()) {
+            rulesFor(entry.getKey()).itemRules = entry.getValue().toArray(NONE);
+        }
+        for (Map.Entry<Long, List<Promotion>> entry : bundles.entrySet()) {
+            rulesFor(entry.getKey()).bundles = entry.getValue().toArray(NONE);
+        }
+        this.size = promotions.size();
+    }
+    
+    private ProductRules rulesFor(long productId) {
+        return byProduct.computeIfAbsent(productId, id -> new ProductRules());
+    }
+    
+    /**
+     * Get number of promotions the engine was built with
+     * @return promotion count
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * A bundle all of whose products are in the cart
+     */
+    private static final class Candidate {
+        final Promotion bundle;
+        final int[] lines; // cart line of each bundle product
+        boolean stale = true; // gain must be recomputed, a line it uses changed
+        boolean fits;
+        long saving;
+        long gain;
+        int times;
+        long discount;
+        
+        Candidate(Promotion bundle, int[] lines) {
+            this.bundle = bundle;
+            this.lines = lines;
+        }
+        
+        boolean uses(int[] changed) {
+            for (int line : lines) {
+                for (int other : changed) {
+                    if (line == other) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Pick the best combination of active promotions for a cart
+     * @param cart the cart, with any coupon codes applied to it
+     * @return chosen promotions and their total discount
+     */
+    public PromotionResult price(Cart cart) {
+        if (cart.isEmpty()) {
+            return PromotionResult.none();
+        }
+        long now = StoreClock.getClock().millis();
+        List<CartItem> items = cart.getItems();
+        int lineCount = items.size();
+        long[] unitPrice = new long[lineCount];
+        int[] remaining = new int[lineCount];
+        Promotion[][] itemRules = new Promotion[lineCount][];
+        boolean anyRule = false;
+        boolean anyBundle = false;
+        for (int i = 0; i < lineCount; i++) {
+            CartItem item = items.get(i);
+            unitPrice[i] = item.getProduct().getPriceMinor();
+            remaining[i] = item.getQuantity();
+            ProductRules rules = byProduct.get(item.getProduct().getId());
+            itemRules[i] = rules == null ? NONE : active(rules.itemRules, now);
+            anyRule |= rules != null;
+            anyBundle |= rules != null && rules.bundles.length > 0;
+        }
+        Set<String> codes = cart.getCouponCodes();
+        if (!anyRule && codes.isEmpty()) {
+            return PromotionResult.none();
+        }
+        
+        List<PromotionResult.Applied> applied = new ArrayList<>();
+        long discount = 0;
+        if (anyBundle) {
+            discount += applyBundles(items, unitPrice, remaining, itemRules, now, applied);
+        }
+        
+        for (int i = 0; i < lineCount; i++) {
+            Promotion best = null;
+            long bestDiscount = 0;
+            for (Promotion rule : itemRules[i]) {
+                long ruleDiscount = rule.itemDiscount(unitPrice[i], remaining[i]);
+                if (ruleDiscount > bestDiscount) {
+                    best = rule;
+                    bestDiscount = ruleDiscount;
+                }
+            }
+            if (best != null) {
+                applied.add(new PromotionResult.Applied(best, 1, bestDiscount));
+                discount += bestDiscount;
+            }
+        }
+        
+        Promotion bestCoupon = null;
+        long couponDiscount = 0;
+        long discounted = cart.getSubtotalMinor() - discount;
+        for (String code : codes) {
+            Promotion coupon = coupons.get(code);
+            if (coupon != null && coupon.isActiveAt(now)) {
+                long amount = coupon.couponDiscount(discounted);
+                if (amount > couponDiscount) {
+                    bestCoupon = coupon;
+                    couponDiscount = amount;
+                }
+            }
+        }
+        if (bestCoupon != null) {
+            applied.add(new PromotionResult.Applied(bestCoupon, 1, couponDiscount));
+            discount += couponDiscount;
+        }
+        return applied.isEmpty() ? PromotionResult.none() : new PromotionResult(discount, applied);
+    }
+    
+    /**
+     * Apply bundles greedily by net gain over the item discounts of the units they take
+     * @return bundle discount; remaining is reduced by the units bundled
+     */
+    private long applyBundles(List<CartItem> items, long[] unitPrice, int[] remaining, Promotion[][] itemRules,
+                              long now, List<PromotionResult.Applied> applied) {
+        Map<Long, Integer> lineOf = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            lineOf.put(items.get(i).getProduct().getId(), i);
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (CartItem item : items) {
+            ProductRules rules = byProduct.get(item.getProduct().getId());
+            if (rules == null) {
+                continue;
+            }
+            for (Promotion bundle : rules.bundles) {
+                // A bundle is listed under each of its products; take it from its first one only
+                if (bundle.productId(0) != item.getProduct().getId() || !bundle.isActiveAt(now)) {
+                    continue;
+                }
+                int[] lines = new int[bundle.productCount()];
+                for (int p = 0; p < lines.length; p++) {
+                    Integer line = lineOf.get(bundle.productId(p));
+                    if (line == null) {
+                        lines = null;
+                        break;
+                    }
+                    lines[p] = line;
+                }
+                if (lines != null) {
+                    candidates.add(new Candidate(bundle, lines));
+                }
+            }
+        }
+        
+        // Applying a bundle only changes the gains of bundles sharing one of its lines
+        long total = 0;
+        while (true) {
+            Candidate best = null;
+            for (Candidate candidate : candidates) {
+                if (candidate.stale) {
+                    gain(candidate, unitPrice, remaining, itemRules);
+                }
+                if (candidate.fits && candidate.gain > 0 && (best == null || candidate.gain > best.gain)) {
+                    best = candidate;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            for (int p = 0; p < best.lines.length; p++) {
+                remaining[best.lines[p]] -= best.bundle.bundleQuantity(p);
+            }
+            best.times++;
+            best.discount += best.saving;
+            total += best.saving;
+            for (Candidate candidate : candidates) {
+                if (!candidate.stale && candidate.fits && candidate.uses(best.lines)) {
+                    candidate.stale = true;
+                }
+            }
+        }
+        for (Candidate candidate : candidates) {
+            if (candidate.times > 0) {
+                applied.add(new PromotionResult.Applied(candidate.bundle, candidate.times, candidate.discount));
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Net gain of one more application of a bundle: its saving less the item discounts
+     * its units stop getting
+     */
+    private static void gain(Candidate candidate, long[] unitPrice, int[] remaining, Promotion[][] itemRules) {
+        long listPrice = 0;
+        long lost = 0;
+        for (int p = 0; p < candidate.lines.length; p++) {
+            int line = candidate.lines[p];
+            int units = candidate.bundle.bundleQuantity(p);
+            if (remaining[line] < units) {
+                // Quantities only go down, so the bundle never fits again
+                candidate.fits = false;
+                candidate.stale = false;
+                return;
+            }
+            listPrice += unitPrice[line] * units;
+            lost += bestItemDiscount(itemRules[line], unitPrice[line], remaining[line])
+                  - bestItemDiscount(itemRules[line], unitPrice[line], remaining[line] - units);
+        }
+        candidate.fits = true;
+        candidate.saving = candidate.bundle.bundleSaving(listPrice);
+        candidate.gain = candidate.saving - lost;
+        candidate.stale = false;
+    }
+    
+    private static long bestItemDiscount(Promotion[] rules, long unitPrice, int quantity) {
+        long best = 0;
+        for (Promotion rule : rules) {
+            best = Math.max(best, rule.itemDiscount(unitPrice, quantity));
+        }
+        return best;
+    }
+    
+    private static Promotion[] active(Promotion[] rules, long now) {
+        int count = 0;
+        for (Promotion rule : rules) {
+            if (rule.isActiveAt(now)) {
+                count++;
+            }
+        }
+        if (count == rules.length) {
+            return rules;
+        }
+        Promotion[] active = new Promotion[count];
+        count = 0;
+        for (Promotion rule : rules) {
+            if (rule.isActiveAt(now)) {
+                active[count++] = rule;
+            }
+        }
+        return active;
+    }
+}
\ No newline at end of file
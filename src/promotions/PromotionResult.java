@@ -0,0 +1,61 @@
+package promotions;
+
+import models.Money;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Promotions chosen for a cart and the discount they add up to
+ */
+public final class PromotionResult {
+    private static final PromotionResult NONE = new PromotionResult(0, Collections.emptyList());
+    
+    /**
+     * One promotion as applied to the cart
+     */
+    public static final class Applied {
+        private final Promotion promotion;
+        private final int times;
+        private final long discountMinor;
+        
+        Applied(Promotion promotion, int times, long discountMinor) {
+            this.promotion = promotion;
+            this.times = times;
+            this.discountMinor = discountMinor;
+        }
+        
+        public Promotion getPromotion() { return promotion; }
+        public int getTimes() { return times; }
+        public long getDiscountMinor() { return discountMinor; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s x%d -$%.2f", promotion.getId(), times, Money.toMajor(discountMinor));
+        }
+    }
+    
+    private final long discountMinor;
+    private final List<Applied> applied;
+    
+    PromotionResult(long discountMinor, List<Applied> applied) {
+        this.discountMinor = discountMinor;
+        this.applied = Collections.unmodifiableList(applied);
+    }
+    
+    /**
+     * Get the result for a cart no promotion applies to
+     * @return shared empty result
+     */
+    public static PromotionResult none() {
+        return NONE;
+    }
+    
+    public long getDiscountMinor() { return discountMinor; }
+    public double getDiscount() { return Money.toMajor(discountMinor); }
+    public List<Applied> getApplied() { return applied; }
+    
+    @Override
+    public String toString() {
+        return "Promotions " + applied + " (Discount: $" + String.format("%.2f", getDiscount()) + ")";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,450 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import models.Cart;
+import models.CartItem;
+import models.CartOutcome;
+import models.Customer;
+import models.Money;
+import models.Product;
+import products.*;
+import services.CheckoutResult;
+import services.CheckoutService;
+import services.PricingSnapshot;
+import sinks.NoOpSink;
+import store.CartStore;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HTTP front end for carts and checkout on the JDK's built-in server
+ * Every request runs on its own virtual thread when the JDK has them (21+), so
+ * sessions waiting on the network hold no platform thread; older JDKs fall back
+ * to a bounded platform pool. All endpoints take query parameters and answer JSON:
+ * <pre>
+ * GET  /products
+ * POST /sessions?customer=NAME&amp;balance=AMOUNT   returns {"session": ID}
+ * GET  /cart?session=ID
+ * POST /cart/add?session=ID&amp;product=PID&amp;quantity=N
+ * POST /cart/remove?session=ID&amp;product=PID
+ * POST /checkout?session=ID[&amp;key=IDEMPOTENCY_KEY]   a retried key returns the first result
+ * </pre>
+ * Session carts live in a CartStore, so sessions idle for 30 minutes, or the least
+ * recently used beyond the store's bounds, are closed and their leases released;
+ * a closed session answers 404
+ */
+public class CheckoutServer implements AutoCloseable {
+    static {
+        // Small JSON responses otherwise wait on Nagle and delayed ACKs for ~40 ms each;
+        // read once when the JDK server classes load, so it must be set first
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private static final int MAX_SESSIONS = 100_000;
+    private static final long MAX_CART_BYTES = 64L * 1024 * 1024;
+    private static final Duration SESSION_IDLE_TTL = Duration.ofMinutes(30);
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Map<Long, Product> products = new HashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final CartStore carts = new CartStore(MAX_SESSIONS, MAX_CART_BYTES, SESSION_IDLE_TTL);
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong nextSession = new AtomicLong(1);
+    
+    /**
+     * A customer and their cart; Cart is not thread-safe, so requests of one session
+     * take turns. A ReentrantLock rather than synchronized keeps virtual threads unpinned
+     */
+    private static final class Session {
+        final Customer customer;
+        volatile Cart cart; // set once the cart store holds it
+        final ReentrantLock lock = new ReentrantLock();
+        
+        Session(Customer customer) {
+            this.customer = customer;
+        }
+    }
+    
+    /**
+     * Request that cannot be served, answered with an HTTP error status
+     */
+    private static final class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        final int status;
+        
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    private CheckoutServer(HttpServer server, ExecutorService executor, boolean virtualThreads,
+                           Collection<? extends Product> catalog) {
+        this.server = server;
+        this.executor = executor;
+        this.virtualThreads = virtualThreads;
+        for (Product product : catalog) {
+            products.put(product.getId(), product);
+        }
+        // The store has already released the cart's leases when it evicts it
+        carts.setEvictionListener((key, cart, cause) -> sessions.remove(key));
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = SWEEP_INTERVAL.toMillis();
+        sweeper.scheduleWithFixedDelay(carts::evictExpired, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Start serving a catalog
+     * @param port local port, 0 for any free port
+     * @param catalog products that can be added to carts
+     * @return the running server
+     * @throws IOException if the port cannot be bound
+     */
+    public static CheckoutServer start(int port, Collection<? extends Product> catalog) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        ExecutorService executor = newRequestExecutor(Math.max(16, Runtime.getRuntime().availableProcessors() * 8));
+        boolean virtualThreads = !(executor instanceof ThreadPoolExecutor);
+        CheckoutServer server = new CheckoutServer(httpServer, executor, virtualThreads, catalog);
+        httpServer.createContext("/products", exchange -> server.serve(exchange, "GET", server::listProducts));
+        httpServer.createContext("/sessions", exchange -> server.serve(exchange, "POST", server::createSession));
+        httpServer.createContext("/cart/add", exchange -> server.serve(exchange, "POST", server::addToCart));
+        httpServer.createContext("/cart/remove", exchange -> server.serve(exchange, "POST", server::removeFromCart));
+        httpServer.createContext("/cart", exchange -> server.serve(exchange, "GET", server::viewCart));
+        httpServer.createContext("/checkout", exchange -> server.serve(exchange, "POST", server::checkout));
+        httpServer.setExecutor(executor);
+        httpServer.start();
+        return server;
+    }
+    
+    /**
+     * Create an executor that runs each task on a new virtual thread
+     * Executors.newVirtualThreadPerTaskExecutor is looked up reflectively so the code
+     * still compiles and runs on JDKs without virtual threads, where a fixed pool of
+     * platform threads is used instead so a burst cannot exhaust threads
+     * @param platformThreads pool size for the fallback
+     * @return the executor
+     */
+    static ExecutorService newRequestExecutor(int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Fall back to platform threads below
+        }
+        return Executors.newFixedThreadPool(platformThreads, task -> {
+            Thread thread = new Thread(task, "checkout-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Check if requests run on virtual threads
+     * @return false if the platform pool fallback is in use
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    /**
+     * Get the port the server listens on
+     * @return bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Get number of open sessions
+     * @return session count
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Close every session idle for longer than the TTL; also runs once a minute
+     * @return number of sessions closed
+     */
+    int evictIdleSessions() {
+        return carts.evictExpired();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        sweeper.shutdown();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private interface Handler {
+        String handle(Map<String, String> params);
+    }
+    
+    private void serve(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String body;
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    throw new RequestException(405, "Use " + method);
+                }
+                body = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (RequestException e) {
+                status = e.status;
+                body = error(e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                // Anything else is a bug or an overflow on our side; answer rather than drop the connection
+                status = 500;
+                body = error("Internal error");
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+    
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new RequestException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+    
+    private static long number(Map<String, String> params, String name) {
+        String value = required(params, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid number for " + name + ": " + value);
+        }
+    }
+    
+    private Session session(Map<String, String> params) {
+        String id = required(params, "session");
+        Session session = sessions.get(id);
+        // Looking the cart up also marks the session as used
+        if (session == null || session.cart == null || carts.get(id) == null) {
+            throw new RequestException(404, "Unknown session: " + id);
+        }
+        return session;
+    }
+    
+    private Product product(Map<String, String> params) {
+        long id = number(params, "product");
+        Product product = products.get(id);
+        if (product == null) {
+            throw new RequestException(404, "Unknown product: " + id);
+        }
+        return product;
+    }
+    
+    private String listProducts(Map<String, String> params) {
+        StringBuilder out = new StringBuilder("{\"products\":[");
+        boolean first = true;
+        for (Product product : products.values()) {
+            out.append(first ? "" : ",").append("{\"id\":").append(product.getId())
+               .append(",\"name\":").append(quote(product.getName()))
+               .append(",\"price\":").append(Money.toMajor(product.getPriceMinor()))
+               .append(",\"quantity\":").append(product.getQuantity())
+               .append(",\"shipping\":").append(product.requiresShipping()).append('}');
+            first = false;
+        }
+        return out.append("]}").toString();
+    }
+    
+    private String createSession(Map<String, String> params) {
+        String balance = params.getOrDefault("balance", "0");
+        double amount;
+        try {
+            amount = Double.parseDouble(balance);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid number for balance: " + balance);
+        }
+        if (!Double.isFinite(amount)) {
+            throw new RequestException(400, "Invalid number for balance: " + balance);
+        }
+        Customer customer;
+        try {
+            customer = new Customer(required(params, "customer"), amount);
+        } catch (ArithmeticException e) {
+            throw new RequestException(400, "Balance out of range: " + balance);
+        }
+        String id = Long.toString(nextSession.getAndIncrement());
+        Session session = new Session(customer);
+        // Session first, so evicting the new cart straight away also removes it
+        sessions.put(id, session);
+        session.cart = carts.getOrCreate(id);
+        return "{\"session\":" + quote(id) + "}";
+    }
+    
+    private String viewCart(Map<String, String> params) {
+        Session session = session(params);
+        session.lock.lock();
+        try {
+            return cartJson(session.cart);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+    
+    private String addToCart(Map<String, String> params) {
+        Session session = session(params);
+        Product product = product(params);
+        long quantity = number(params, "quantity");
+        if (quantity > Integer.MAX_VALUE) {
+            throw new RequestException(400, "Quantity too large: " + quantity);
+        }
+        session.lock.lock();
+        try {
+            int alreadyInCart = session.cart.getQuantity(product);
+            CartOutcome outcome = session.cart.tryAdd(product, (int) quantity);
+            if (!outcome.isSuccess()) {
+                throw new RequestException(409, outcome.describe(product, (int) quantity, alreadyInCart));
+            }
+            return cartJson(session.cart);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+    
+    private String removeFromCart(Map<String, String> params) {
+        Session session = session(params);
+        Product product = product(params);
+        session.lock.lock();
+        try {
+            session.cart.remove(product);
+            return cartJson(session.cart);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+    
+    private String checkout(Map<String, String> params) {
+        Session session = session(params);
+        CheckoutResult result;
+        session.lock.lock();
+        try {
+            result = CheckoutService.tryCheckout(params.get("key"), session.customer, session.cart);
+        } finally {
+            session.lock.unlock();
+        }
+        if (!result.isSuccess()) {
+            throw new RequestException(409, result.getMessage());
+        }
+        PricingSnapshot pricing = result.getPricing();
+        return "{\"status\":\"SUCCESS\",\"subtotal\":" + pricing.getSubtotal()
+             + ",\"shipping\":" + pricing.getShippingFee()
+             + ",\"total\":" + pricing.getTotalAmount()
+             + ",\"balance\":" + Money.toMajor(result.getRemainingBalanceMinor()) + "}";
+    }
+    
+    private static String cartJson(Cart cart) {
+        StringBuilder out = new StringBuilder("{\"items\":[");
+        boolean first = true;
+        for (CartItem item : cart.getItems()) {
+            out.append(first ? "" : ",").append("{\"product\":").append(item.getProduct().getId())
+               .append(",\"name\":").append(quote(item.getProduct().getName()))
+               .append(",\"quantity\":").append(item.getQuantity())
+               .append(",\"total\":").append(item.getTotalPrice()).append('}');
+            first = false;
+        }
+        return out.append("],\"subtotal\":").append(cart.getSubtotal()).append('}').toString();
+    }
+    
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+    
+    private static String quote(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+    
+    /**
+     * Run the server on a demo catalog with deep stock
+     * @param args optional port, 8080 by default
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int stock = Integer.MAX_VALUE / 2;
+        List<Product> catalog = new ArrayList<>();
+        catalog.add(new Cheese("Cheese", 100.0, stock, LocalDate.now().plusYears(1)));
+        catalog.add(new TV("TV", 500.0, stock));
+        catalog.add(new ScratchCard("Mobile Scratch Card", 25.0, stock));
+        catalog.add(new Biscuits("Biscuits", 150.0, stock, LocalDate.now().plusYears(1)));
+        catalog.add(new Mobile("Mobile Phone", 800.0, stock));
+        // Receipts would flood the console under load
+        CheckoutService.setReceiptSink(new NoOpSink());
+        CheckoutServer server = start(port, catalog);
+        System.out.printf("Checkout server on http://localhost:%d (%s threads)%n",
+                          server.getPort(), server.usesVirtualThreads() ? "virtual" : "platform");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,246 @@
+package server;
+
+import models.Product;
+import products.*;
+import services.CheckoutService;
+import sinks.NoOpSink;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop load generator for CheckoutServer
+ * Each client owns a slice of the sessions and repeatedly fills a cart and checks it
+ * out, recording the latency of every request. Without --url an in-process server is
+ * started on a free port, so one command measures the whole stack on one box
+ *
+ * Usage: LoadGenerator [--url http://localhost:8080] [--clients 200] [--sessions 20000]
+ *                      [--items 3] [--seconds 10]
+ */
+public class LoadGenerator {
+    private static final Pattern SESSION = Pattern.compile("\"session\":\"([^\"]+)\"");
+    private static final Pattern PRODUCT_ID = Pattern.compile("\"id\":(\\d+)");
+    
+    private final HttpClient client;
+    private final String baseUrl;
+    private final AtomicLong errors = new AtomicLong();
+    
+    private LoadGenerator(String baseUrl) {
+        this.baseUrl = baseUrl;
+        // The client keeps its own executor: with the platform fallback every client
+        // thread blocks in send and could not also complete responses
+        this.client = HttpClient.newBuilder()
+                                .connectTimeout(Duration.ofSeconds(10))
+                                .build();
+    }
+    
+    /**
+     * Latencies recorded by one client thread, merged once the run ends
+     */
+    private static final class Latencies {
+        long[] values = new long[1024];
+        int size;
+        
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+        
+        static long[] merge(List<Latencies> parts) {
+            int total = 0;
+            for (Latencies part : parts) {
+                total += part.size;
+            }
+            long[] all = new long[total];
+            int at = 0;
+            for (Latencies part : parts) {
+                System.arraycopy(part.values, 0, all, at, part.size);
+                at += part.size;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+    }
+    
+    /**
+     * What one client measured
+     */
+    private static final class ClientResult {
+        final Latencies add = new Latencies();
+        final Latencies checkout = new Latencies();
+        long checkouts;
+    }
+    
+    private String send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                                         .method(method, HttpRequest.BodyPublishers.noBody())
+                                         .timeout(Duration.ofSeconds(30))
+                                         .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            errors.incrementAndGet();
+        }
+        return response.body();
+    }
+    
+    private long[] productIds() throws IOException, InterruptedException {
+        Matcher matcher = PRODUCT_ID.matcher(send("GET", "/products"));
+        List<Long> ids = new ArrayList<>();
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("Server has no products");
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    private String openSession(int index) throws IOException, InterruptedException {
+        Matcher matcher = SESSION.matcher(send("POST", "/sessions?customer=load" + index + "&balance=1000000000"));
+        if (!matcher.find()) {
+            throw new IllegalStateException("Could not open a session");
+        }
+        return matcher.group(1);
+    }
+    
+    private ClientResult runClient(List<String> sessions, long[] products, int items, long deadline, int seed)
+            throws IOException, InterruptedException {
+        ClientResult result = new ClientResult();
+        SplittableRandom random = new SplittableRandom(seed);
+        int next = 0;
+        while (System.nanoTime() - deadline < 0) {
+            String session = sessions.get(next++ % sessions.size());
+            for (int i = 0; i < items; i++) {
+                long start = System.nanoTime();
+                send("POST", "/cart/add?session=" + session + "&product="
+                     + products[random.nextInt(products.length)] + "&quantity=1");
+                result.add.add(System.nanoTime() - start);
+            }
+            long start = System.nanoTime();
+            send("POST", "/checkout?session=" + session);
+            result.checkout.add(System.nanoTime() - start);
+            result.checkouts++;
+        }
+        return result;
+    }
+    
+    private static String percentiles(long[] sorted) {
+        if (sorted.length == 0) {
+            return "no requests";
+        }
+        return String.format("p50 %.2fms, p99 %.2fms, max %.2fms",
+                           sorted[(int) ((sorted.length - 1) * 0.50)] / 1e6,
+                           sorted[(int) ((sorted.length - 1) * 0.99)] / 1e6,
+                           sorted[sorted.length - 1] / 1e6);
+    }
+    
+    private static int intOption(String[] args, String name, int defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return Integer.parseInt(args[i + 1]);
+            }
+        }
+        return defaultValue;
+    }
+    
+    private static String option(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int clients = intOption(args, "--clients", 200);
+        int sessionCount = Math.max(clients, intOption(args, "--sessions", 20_000));
+        int items = intOption(args, "--items", 3);
+        int seconds = intOption(args, "--seconds", 10);
+        String url = option(args, "--url");
+        
+        CheckoutServer local = null;
+        if (url == null) {
+            int stock = Integer.MAX_VALUE / 2;
+            List<Product> catalog = List.of(
+                new Cheese("Cheese", 100.0, stock, LocalDate.now().plusYears(1)),
+                new TV("TV", 500.0, stock),
+                new ScratchCard("Mobile Scratch Card", 25.0, stock),
+                new Biscuits("Biscuits", 150.0, stock, LocalDate.now().plusYears(1)),
+                new Mobile("Mobile Phone", 800.0, stock));
+            CheckoutService.setReceiptSink(new NoOpSink());
+            local = CheckoutServer.start(0, catalog);
+            url = "http://localhost:" + local.getPort();
+        }
+        
+        ExecutorService executor = CheckoutServer.newRequestExecutor(clients);
+        LoadGenerator generator = new LoadGenerator(url);
+        try {
+            long[] products = generator.productIds();
+            
+            // Open every session up front; they stay live for the whole run
+            List<Future<String>> opening = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                int index = i;
+                opening.add(executor.submit(() -> generator.openSession(index)));
+            }
+            List<List<String>> slices = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                slices.add(new ArrayList<>());
+            }
+            for (int i = 0; i < sessionCount; i++) {
+                slices.get(i % clients).add(opening.get(i).get());
+            }
+            
+            System.out.printf("Load: %d clients, %d sessions, %d items per cart, %ds against %s%n",
+                            clients, sessionCount, items, seconds, url);
+            long start = System.nanoTime();
+            long deadline = start + seconds * 1_000_000_000L;
+            List<Future<ClientResult>> running = new ArrayList<>(clients);
+            for (int c = 0; c < clients; c++) {
+                List<String> slice = slices.get(c);
+                int seed = c;
+                running.add(executor.submit(() -> generator.runClient(slice, products, items, deadline, seed)));
+            }
+            List<Latencies> adds = new ArrayList<>();
+            List<Latencies> checkouts = new ArrayList<>();
+            long checkoutCount = 0;
+            for (Future<ClientResult> future : running) {
+                ClientResult result = future.get();
+                adds.add(result.add);
+                checkouts.add(result.checkout);
+                checkoutCount += result.checkouts;
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            
+            System.out.printf("Checkouts: %d in %.1fs, %.0f checkouts/s%n", checkoutCount, elapsed, checkoutCount / elapsed);
+            System.out.println("Cart add: " + percentiles(Latencies.merge(adds)));
+            System.out.println("Checkout: " + percentiles(Latencies.merge(checkouts)));
+            System.out.println("Errors:   " + generator.errors.get());
+            if (local != null) {
+                System.out.println("Server threads: " + (local.usesVirtualThreads() ? "virtual" : "platform pool")
+                                 + ", open sessions " + local.sessionCount());
+            }
+        } finally {
+            executor.shutdownNow();
+            if (local != null) {
+                local.close();
+            }
+        }
+    }
+}
\ No newline at end of file
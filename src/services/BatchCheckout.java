@@ -0,0 +1,276 @@
+package services;
+
+import inventory.Lease;
+import models.Cart;
+import models.CartItem;
+import models.Customer;
+import models.Product;
+import persistence.OrderJournal;
+import persistence.OrderRecord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Checks out a batch of carts in one pass
+ * 1. carts are priced in parallel, then their stock holds are claimed as a single
+ *    checkout claims them, so stock a shopper already holds stays theirs
+ * 2. demand not covered by holds is summed per product and expiry is evaluated once per product
+ * 3. each product's whole demand is reserved with a single ledger operation when stock allows;
+ *    oversubscribed products fall back to per-line reservation, first come first served
+ * 4. carts are paid for in parallel on the fork/join pool, each all-or-nothing
+ * 5. leftover pooled stock is released and the rest committed, again once per product
+ * 6. the batch waits once for all its journal entries to reach disk; if journaling
+ *    fails, every paid cart is refunded and its stock restocked before the failure is rethrown
+ * 7. paid carts commit their holds and failed ones take them back, then shipments
+ *    and receipts are produced in request order
+ */
+class BatchCheckout {
+    
+    /**
+     * Batch-wide state of one product
+     */
+    private static final class ProductDemand {
+        final Product product;
+        int demand;
+        boolean expired;
+        boolean pooled;
+        final AtomicInteger pool = new AtomicInteger(); // reserved up front, not yet claimed
+        
+        ProductDemand(Product product) {
+            this.product = product;
+        }
+        
+        boolean take(int quantity) {
+            if (pooled) {
+                // The pool holds the summed demand of every cart, so it never runs dry
+                pool.addAndGet(-quantity);
+                return true;
+            }
+            return product.getStock().tryReserve(quantity);
+        }
+        
+        void giveBack(int quantity) {
+            if (pooled) {
+                pool.addAndGet(quantity);
+            } else {
+                product.getStock().release(quantity);
+            }
+        }
+    }
+    
+    private final List<CheckoutRequest> requests;
+    private final Map<Long, ProductDemand> demands = new HashMap<>();
+    private final OrderJournal journal = CheckoutService.getOrderJournal();
+    private final AtomicLong lastJournalTicket = new AtomicLong();
+    private final AtomicReference<RuntimeException> journalFailure = new AtomicReference<>();
+    
+    BatchCheckout(List<CheckoutRequest> requests) {
+        if (requests == null) {
+            throw new IllegalArgumentException("Requests cannot be null");
+        }
+        this.requests = requests;
+    }
+    
+    List<CheckoutResult> run() {
+        int size = requests.size();
+        PricingSnapshot[] pricing = new PricingSnapshot[size];
+        IntStream.range(0, size).parallel().forEach(i -> {
+            Cart cart = requests.get(i).getCart();
+            if (!cart.isEmpty()) {
+                pricing[i] = PricingSnapshot.of(cart, requests.get(i).getCustomer().getShippingZone());
+            }
+        });
+        
+        // Take over the carts' stock holds so none can expire mid-checkout
+        List<List<Lease>> leases = new ArrayList<>(size);
+        int[][] held = new int[size][];
+        for (int i = 0; i < size; i++) {
+            leases.add(requests.get(i).getCart().claimLeases());
+            if (pricing[i] != null) {
+                held[i] = CheckoutService.heldQuantities(pricing[i].getItems(), leases.get(i));
+            }
+        }
+        
+        collectDemand(pricing, held);
+        reservePools();
+        
+        CheckoutResult[] results = new CheckoutResult[size];
+        IntStream.range(0, size).parallel().forEach(i -> 
+            results[i] = pay(requests.get(i).getCustomer(), pricing[i], held[i]));
+        
+        settlePools();
+        
+        if (journalFailure.get() == null && journal != null && lastJournalTicket.get() > 0) {
+            try {
+                journal.awaitDurable(lastJournalTicket.get());
+            } catch (RuntimeException e) {
+                journalFailure.compareAndSet(null, e);
+            }
+        }
+        if (journalFailure.get() != null) {
+            refund(results, held);
+            for (int i = 0; i < size; i++) {
+                requests.get(i).getCart().returnLeases(leases.get(i));
+            }
+            throw journalFailure.get();
+        }
+        
+        // Complete every paid cart even if one fails; the first failure is reported after
+        RuntimeException incomplete = null;
+        for (int i = 0; i < size; i++) {
+            CheckoutService.recordOutcome(results[i]);
+            if (!results[i].isSuccess()) {
+                requests.get(i).getCart().returnLeases(leases.get(i));
+                continue;
+            }
+            for (Lease lease : leases.get(i)) {
+                lease.commit();
+            }
+            try {
+                CheckoutService.complete(requests.get(i).getCustomer(), results[i], requests.get(i).getCart());
+            } catch (RuntimeException e) {
+                if (incomplete == null) {
+                    incomplete = new CheckoutIncompleteException(results[i], e);
+                }
+            }
+        }
+        if (incomplete != null) {
+            throw incomplete;
+        }
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Undo every paid cart of the batch after its journal entries failed to reach disk
+     * Only stock the batch sold is restocked; what holds covered is still claimed
+     */
+    private void refund(CheckoutResult[] results, int[][] held) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null || !results[i].isSuccess()) {
+                continue;
+            }
+            PricingSnapshot pricing = results[i].getPricing();
+            List<CartItem> items = pricing.getItems();
+            for (int line = 0; line < items.size(); line++) {
+                int quantity = CheckoutService.unheld(items.get(line), held[i], line);
+                if (quantity > 0) {
+                    items.get(line).getProduct().getStock().restock(quantity);
+                }
+            }
+            requests.get(i).getCustomer().addBalanceMinor(pricing.getTotalAmountMinor());
+        }
+    }
+    
+    private void collectDemand(PricingSnapshot[] pricing, int[][] held) {
+        for (int i = 0; i < pricing.length; i++) {
+            if (pricing[i] == null) {
+                continue;
+            }
+            List<CartItem> items = pricing[i].getItems();
+            for (int line = 0; line < items.size(); line++) {
+                CartItem item = items.get(line);
+                ProductDemand demand = demands.computeIfAbsent(item.getProduct().getId(), 
+                                                             id -> new ProductDemand(item.getProduct()));
+                demand.demand = Math.addExact(demand.demand, Math.max(0, CheckoutService.unheld(item, held[i], line)));
+            }
+        }
+    }
+    
+    private void reservePools() {
+        for (ProductDemand demand : demands.values()) {
+            demand.expired = demand.product.isExpired();
+            if (!demand.expired && (demand.demand == 0 || demand.product.getStock().tryReserve(demand.demand))) {
+                demand.pooled = true;
+                demand.pool.set(demand.demand);
+            }
+        }
+    }
+    
+    private CheckoutResult pay(Customer customer, PricingSnapshot pricing, int[] held) {
+        if (pricing == null) {
+            return CheckoutResult.emptyCart();
+        }
+        
+        List<CartItem> items = pricing.getItems();
+        long totalAmount = pricing.getTotalAmountMinor();
+        for (CartItem item : items) {
+            if (demands.get(item.getProduct().getId()).expired) {
+                return CheckoutResult.expired(item.getProduct());
+            }
+        }
+        if (customer.getBalanceMinor() < totalAmount) {
+            return CheckoutResult.insufficientBalance(totalAmount, customer.getBalanceMinor());
+        }
+        
+        int taken = 0;
+        CheckoutResult failure = null;
+        for (CartItem item : items) {
+            int quantity = CheckoutService.unheld(item, held, taken);
+            if (quantity > 0 && !demands.get(item.getProduct().getId()).take(quantity)) {
+                Product product = item.getProduct();
+                failure = CheckoutResult.outOfStock(product, item.getQuantity(), product.getQuantity());
+                break;
+            }
+            taken++;
+        }
+        
+        if (failure == null && !customer.tryDeductBalance(totalAmount)) {
+            failure = CheckoutResult.insufficientBalance(totalAmount, customer.getBalanceMinor());
+        }
+        
+        if (failure == null && journal != null) {
+            try {
+                long ticket = journal.append(OrderRecord.of(customer, pricing));
+                lastJournalTicket.accumulateAndGet(ticket, Math::max);
+            } catch (RuntimeException e) {
+                // The whole batch is undone once every cart has been paid for
+                journalFailure.compareAndSet(null, e);
+                customer.addBalanceMinor(totalAmount);
+                failure = CheckoutResult.notRecorded();
+            }
+        }
+        
+        if (failure != null) {
+            for (int i = 0; i < taken; i++) {
+                CartItem item = items.get(i);
+                int quantity = CheckoutService.unheld(item, held, i);
+                if (quantity > 0) {
+                    demands.get(item.getProduct().getId()).giveBack(quantity);
+                }
+            }
+            return failure;
+        }
+        
+        for (int i = 0; i < items.size(); i++) {
+            ProductDemand demand = demands.get(items.get(i).getProduct().getId());
+            int quantity = CheckoutService.unheld(items.get(i), held, i);
+            if (!demand.pooled && quantity > 0) {
+                demand.product.getStock().commit(quantity);
+            }
+        }
+        return CheckoutResult.success(pricing, customer.getBalanceMinor());
+    }
+    
+    private void settlePools() {
+        for (ProductDemand demand : demands.values()) {
+            if (!demand.pooled) {
+                continue;
+            }
+            int left = demand.pool.get();
+            int sold = demand.demand - left;
+            if (sold > 0) {
+                demand.product.getStock().commit(sold);
+            }
+            if (left > 0) {
+                demand.product.getStock().release(left);
+            }
+        }
+    }
+}
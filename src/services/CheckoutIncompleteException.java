@@ -0,0 +1,25 @@
+package services;
+
+/**
+ * A checkout was paid for and journaled, so the order stands, but a step after
+ * that (shipping, receipt, events) failed
+ * Retrying the checkout would charge again; the cart has already been cleared
+ */
+public class CheckoutIncompleteException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+    
+    private final transient CheckoutResult result;
+    
+    public CheckoutIncompleteException(CheckoutResult result, RuntimeException cause) {
+        super("Order was placed but could not be completed: " + cause.getMessage(), cause);
+        this.result = result;
+    }
+    
+    /**
+     * Get the result of the order that was placed
+     * @return the successful checkout result
+     */
+    public CheckoutResult getResult() {
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package services;
+
+import models.Cart;
+import models.Customer;
+
+/**
+ * A single customer and cart pair submitted to a batch checkout
+ */
+public final class CheckoutRequest {
+    private final Customer customer;
+    private final Cart cart;
+    
+    public CheckoutRequest(Customer customer, Cart cart) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer cannot be null");
+        }
+        if (cart == null) {
+            throw new IllegalArgumentException("Cart cannot be null");
+        }
+        
+        this.customer = customer;
+        this.cart = cart;
+    }
+    
+    public Customer getCustomer() { return customer; }
+    public Cart getCart() { return cart; }
+    
+    @Override
+    public String toString() {
+        return String.format("CheckoutRequest (%s, %d lines)", customer.getName(), cart.size());
+    }
+}
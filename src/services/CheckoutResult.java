@@ -0,0 +1,121 @@
+package services;
+
+import models.Money;
+import models.Product;
+
+/**
+ * Outcome of a checkout: either success with the pricing that was charged,
+ * or a typed failure reason
+ * Failures carry no stack trace and the message is only formatted when asked for;
+ * the empty cart and not recorded results are shared
+ */
+public final class CheckoutResult {
+    private static final CheckoutResult EMPTY_CART = 
+        new CheckoutResult(Status.EMPTY_CART, null, null, 0, 0);
+    private static final CheckoutResult NOT_RECORDED = 
+        new CheckoutResult(Status.NOT_RECORDED, null, null, 0, 0);
+    
+    /**
+     * Checkout outcome codes
+     */
+    public enum Status {
+        SUCCESS,
+        EMPTY_CART,
+        EXPIRED,
+        OUT_OF_STOCK,
+        INSUFFICIENT_BALANCE,
+        NOT_RECORDED // the order journal failed, so the payment was undone
+    }
+    
+    private final Status status;
+    private final PricingSnapshot pricing;
+    private final Product product;
+    private final long required;
+    private final long available;
+    
+    private CheckoutResult(Status status, PricingSnapshot pricing, Product product, 
+                         long required, long available) {
+        this.status = status;
+        this.pricing = pricing;
+        this.product = product;
+        this.required = required;
+        this.available = available;
+    }
+    
+    static CheckoutResult success(PricingSnapshot pricing, long remainingBalanceMinor) {
+        return new CheckoutResult(Status.SUCCESS, pricing, null, pricing.getTotalAmountMinor(), remainingBalanceMinor);
+    }
+    
+    static CheckoutResult emptyCart() {
+        return EMPTY_CART;
+    }
+    
+    static CheckoutResult notRecorded() {
+        return NOT_RECORDED;
+    }
+    
+    static CheckoutResult expired(Product product) {
+        return new CheckoutResult(Status.EXPIRED, null, product, 0, 0);
+    }
+    
+    static CheckoutResult outOfStock(Product product, int required, int available) {
+        return new CheckoutResult(Status.OUT_OF_STOCK, null, product, required, available);
+    }
+    
+    static CheckoutResult insufficientBalance(long requiredMinor, long availableMinor) {
+        return new CheckoutResult(Status.INSUFFICIENT_BALANCE, null, null, requiredMinor, availableMinor);
+    }
+    
+    public Status getStatus() { return status; }
+    public boolean isSuccess() { return status == Status.SUCCESS; }
+    
+    /**
+     * Get pricing that was charged
+     * @return pricing snapshot, or null if checkout failed
+     */
+    public PricingSnapshot getPricing() { return pricing; }
+    
+    /**
+     * Get product that caused the failure
+     * @return the expired or out of stock product, otherwise null
+     */
+    public Product getProduct() { return product; }
+    
+    /**
+     * Get customer balance left after a successful checkout
+     * @return remaining balance in minor units, or 0 if checkout failed
+     */
+    public long getRemainingBalanceMinor() {
+        return status == Status.SUCCESS ? available : 0;
+    }
+    
+    /**
+     * Describe the outcome, formatting the message on demand
+     * @return human readable outcome
+     */
+    public String getMessage() {
+        switch (status) {
+            case SUCCESS:
+                return String.format("Checkout complete. Charged: $%.2f", Money.toMajor(required));
+            case EMPTY_CART:
+                return "Cart is empty";
+            case EXPIRED:
+                return String.format("Product '%s' has expired", product.getName());
+            case OUT_OF_STOCK:
+                return String.format("Product '%s' is out of stock. Available: %d, Required: %d", 
+                                   product.getName(), available, required);
+            case INSUFFICIENT_BALANCE:
+                return String.format("Insufficient balance. Required: $%.2f, Available: $%.2f", 
+                                   Money.toMajor(required), Money.toMajor(available));
+            case NOT_RECORDED:
+                return "Order could not be recorded; nothing was charged";
+            default:
+                throw new IllegalStateException("Unknown status " + status);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return status + ": " + getMessage();
+    }
+}
@@ -1,12 +1,148 @@
 package services;
 
+import events.CheckoutCompletedEvent;
+import events.EventBus;
+import events.Events;
+import events.ShipmentPlannedEvent;
+import inventory.Allocation;
+import inventory.Lease;
+import inventory.WarehouseNetwork;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import models.*;
+import persistence.OrderJournal;
+import persistence.OrderRecord;
+import persistence.WriteBehindStore;
+import promotions.PromotionEngine;
+import shipping.ShipmentPlanner;
+import sinks.ConsoleSink;
+import java.time.Duration;
 import java.util.List;
 
 /**
  * Service for handling checkout operations
+ * Checkout is safe to call from many threads: stock for every cart line is reserved
+ * in the product's lock-free ledger and the customer is debited in the same
+ * all-or-nothing step, so checkouts of unrelated products never contend. Stock a
+ * cart already holds under leases is claimed instead of reserved again
  */
 public class CheckoutService {
+    private static volatile ReceiptSink receiptSink = new ConsoleSink();
+    private static volatile OrderJournal orderJournal;
+    private static volatile ShipmentPlanner shipmentPlanner;
+    private static volatile PromotionEngine promotionEngine;
+    private static volatile WarehouseNetwork warehouseNetwork;
+    private static volatile WriteBehindStore writeBehind;
+    private static volatile IdempotencyCache idempotencyCache = new IdempotencyCache(Duration.ofHours(24), 100_000);
+    
+    private static final LatencyHistogram CHECKOUT_TIME = Metrics.histogram("checkout.total.ns");
+    private static final LatencyHistogram VALIDATE_TIME = Metrics.histogram("checkout.validate.ns");
+    private static final LatencyHistogram PAYMENT_TIME = Metrics.histogram("checkout.payment.ns");
+    private static final LatencyHistogram STOCK_TIME = Metrics.histogram("checkout.stock.ns");
+    private static final LatencyHistogram JOURNAL_TIME = Metrics.histogram("checkout.journal.ns");
+    private static final LatencyHistogram SHIPPING_TIME = Metrics.histogram("checkout.shipping.ns");
+    private static final LatencyHistogram RECEIPT_TIME = Metrics.histogram("checkout.receipt.ns");
+    private static final LatencyHistogram BATCH_TIME = Metrics.histogram("checkout.batch.ns");
+    private static final Counter HELD_LINES = Metrics.counter("checkout.lines.held");
+    private static final Counter UNHELD_LINES = Metrics.counter("checkout.lines.unheld");
+    private static final Counter[] OUTCOMES = new Counter[CheckoutResult.Status.values().length];
+    
+    static {
+        for (CheckoutResult.Status status : CheckoutResult.Status.values()) {
+            OUTCOMES[status.ordinal()] = Metrics.counter("checkout." + status.name().toLowerCase());
+        }
+    }
+    
+    /**
+     * Set where receipts and shipment notices go (console by default)
+     * @param sink the sink to use for subsequent checkouts
+     */
+    public static void setReceiptSink(ReceiptSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        receiptSink = sink;
+    }
+    
+    public static ReceiptSink getReceiptSink() {
+        return receiptSink;
+    }
+    
+    /**
+     * Set the journal that every completed checkout is durably appended to
+     * @param journal the journal, or null to stop journaling
+     */
+    public static void setOrderJournal(OrderJournal journal) {
+        orderJournal = journal;
+    }
+    
+    public static OrderJournal getOrderJournal() {
+        return orderJournal;
+    }
+    
+    /**
+     * Hand shipments to a planner for consolidation instead of shipping each checkout at once
+     * @param planner the planner, or null to ship immediately
+     */
+    public static void setShipmentPlanner(ShipmentPlanner planner) {
+        shipmentPlanner = planner;
+    }
+    
+    public static ShipmentPlanner getShipmentPlanner() {
+        return shipmentPlanner;
+    }
+    
+    /**
+     * Discount every priced cart with a set of promotions
+     * @param engine the promotions, or null to charge list prices
+     */
+    public static void setPromotionEngine(PromotionEngine engine) {
+        promotionEngine = engine;
+    }
+    
+    public static PromotionEngine getPromotionEngine() {
+        return promotionEngine;
+    }
+    
+    /**
+     * Allocate every paid order to warehouses and ship it from there
+     * @param network the warehouses, or null to ship without an origin
+     */
+    public static void setWarehouseNetwork(WarehouseNetwork network) {
+        warehouseNetwork = network;
+    }
+    
+    public static WarehouseNetwork getWarehouseNetwork() {
+        return warehouseNetwork;
+    }
+    
+    /**
+     * Persist the stock and balance changes of every paid order in the background
+     * @param store the write-behind store, or null to keep changes in memory only
+     */
+    public static void setWriteBehind(WriteBehindStore store) {
+        writeBehind = store;
+    }
+    
+    public static WriteBehindStore getWriteBehind() {
+        return writeBehind;
+    }
+    
+    /**
+     * Replace the cache of recent idempotency keys (24 hours and 100,000 keys by default)
+     * @param cache the cache
+     */
+    public static void setIdempotencyCache(IdempotencyCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("Idempotency cache cannot be null");
+        }
+        idempotencyCache = cache;
+    }
+    
+    public static IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
     
     /**
      * Process checkout for customer with items in cart
@@ -15,102 +151,339 @@ public class CheckoutService {
      * @throws IllegalStateException for various checkout errors
      */
     public static void checkout(Customer customer, Cart cart) {
-        // Validate checkout preconditions
-        validateCheckout(customer, cart);
-        
-        // Get cart details
-        List<CartItem> allItems = cart.getItems();
-        List<CartItem> shippableItems = cart.getShippableItems();
+        CheckoutResult result = tryCheckout(customer, cart);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(result.getMessage());
+        }
+    }
+    
+    /**
+     * Process checkout, reporting routine failures (empty cart, expired, out of stock,
+     * insufficient balance) as a result instead of throwing
+     * @param customer the customer making the purchase
+     * @param cart the shopping cart
+     * @return success with the charged pricing, or the failure reason
+     */
+    public static CheckoutResult tryCheckout(Customer customer, Cart cart) {
+        long start = Metrics.now();
+        CheckoutResult result = process(customer, cart);
+        CHECKOUT_TIME.recordSince(start);
+        recordOutcome(result);
+        return result;
+    }
+    
+    /**
+     * Process checkout at most once per idempotency key
+     * A retry with the key of an earlier successful checkout returns that checkout's
+     * result without touching the customer, the cart or stock; a retry arriving while
+     * the first is still running waits for it and gets the same result. Failed
+     * checkouts are not kept, so retrying one with the same key checks out again
+     * @param idempotencyKey key chosen by the client for this order, or null to always check out
+     * @param customer the customer making the purchase
+     * @param cart the shopping cart
+     * @return result of the order placed with the key, or the failure of this attempt
+     * @throws IllegalArgumentException if another customer already used the key
+     */
+    public static CheckoutResult tryCheckout(String idempotencyKey, Customer customer, Cart cart) {
+        if (idempotencyKey == null) {
+            return tryCheckout(customer, cart);
+        }
+        return idempotencyCache.execute(idempotencyKey, customer, () -> tryCheckout(customer, cart));
+    }
+    
+    /**
+     * Count a checkout outcome in the metrics
+     * @param result the outcome
+     */
+    static void recordOutcome(CheckoutResult result) {
+        OUTCOMES[result.getStatus().ordinal()].increment();
+    }
+    
+    private static CheckoutResult process(Customer customer, Cart cart) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer cannot be null");
+        }
+        if (cart == null) {
+            throw new IllegalArgumentException("Cart cannot be null");
+        }
         
-        // Calculate amounts
-        double subtotal = cart.getSubtotal();
-        double shippingFee = ShippingService.calculateShippingFee(shippableItems);
-        double totalAmount = subtotal + shippingFee;
+        if (cart.isEmpty()) {
+            return CheckoutResult.emptyCart();
+        }
         
-        // Process payment
-        customer.deductBalance(totalAmount);
+        // Validate checkout preconditions and price the cart once
+        long phase = Metrics.now();
+        PricingSnapshot pricing = PricingSnapshot.of(cart, customer.getShippingZone());
+        // Take over the cart's stock holds so none can expire mid-checkout
+        List<Lease> leases = cart.claimLeases();
+        int[] held = heldQuantities(pricing.getItems(), leases);
+        CheckoutResult failure = validateCheckout(customer, pricing, held);
+        VALIDATE_TIME.recordSince(phase);
+        if (failure != null) {
+            cart.returnLeases(leases);
+            return failure;
+        }
         
-        // Update product quantities
-        for (CartItem item : allItems) {
-            item.getProduct().reduceQuantity(item.getQuantity());
+        // Reserve the rest of the stock and process payment atomically; both stay
+        // reversible until the order is journaled
+        failure = reserveAndPay(customer, pricing.getItems(), held, pricing.getTotalAmountMinor());
+        if (failure != null) {
+            cart.returnLeases(leases);
+            return failure;
         }
         
-        // Process shipment if needed
-        if (!shippableItems.isEmpty()) {
-            ShippingService.processShipment(shippableItems);
+        // The order must be on disk before it takes effect; if the journal fails, undo the
+        // payment and reservations so the checkout leaves nothing behind
+        OrderJournal journal = orderJournal;
+        if (journal != null) {
+            phase = Metrics.now();
+            try {
+                journal.appendDurably(OrderRecord.of(customer, pricing));
+            } catch (RuntimeException e) {
+                refund(customer, pricing.getItems(), held, pricing.getTotalAmountMinor());
+                cart.returnLeases(leases);
+                throw e;
+            }
+            JOURNAL_TIME.recordSince(phase);
         }
         
-        // Print checkout receipt
-        printCheckoutReceipt(allItems, subtotal, shippingFee, totalAmount, customer.getBalance());
+        commitReservations(pricing.getItems(), held);
+        for (Lease lease : leases) {
+            lease.commit();
+        }
         
-        // Clear cart after successful checkout
-        cart.clear();
+        CheckoutResult result = CheckoutResult.success(pricing, customer.getBalanceMinor());
+        try {
+            complete(customer, result, cart);
+        } catch (RuntimeException e) {
+            // The order is paid and journaled, so it stands; tell the caller not to retry
+            throw new CheckoutIncompleteException(result, e);
+        }
+        return result;
     }
     
     /**
-     * Validate checkout preconditions
-     * @param customer the customer
-     * @param cart the cart
-     * @throws IllegalStateException if validation fails
+     * Check out many carts in one call
+     * Stock a cart holds under leases is claimed as in a single checkout; the rest
+     * is reserved once per product for the whole batch, expiry is checked once
+     * per product, and carts are priced and paid for in parallel. Every cart in the
+     * batch must be a distinct Cart instance
+     * @param requests the customer and cart pairs to check out
+     * @return one result per request, in request order; failures never stop the batch
      */
-    private static void validateCheckout(Customer customer, Cart cart) {
-        if (cart.isEmpty()) {
-            throw new IllegalStateException("Cart is empty");
-        }
+    public static List<CheckoutResult> checkoutBatch(List<CheckoutRequest> requests) {
+        long start = Metrics.now();
+        List<CheckoutResult> results = new BatchCheckout(requests).run();
+        BATCH_TIME.recordSince(start);
+        return results;
+    }
+    
+    /**
+     * Clear the cart, ship and emit the receipt of a paid checkout
+     * @param customer the customer who paid
+     * @param result the successful checkout
+     * @param cart the cart that was paid for
+     */
+    static void complete(Customer customer, CheckoutResult result, Cart cart) {
+        PricingSnapshot pricing = result.getPricing();
+        ReceiptSink sink = receiptSink;
         
-        // Check for expired or out of stock products
-        for (CartItem item : cart.getItems()) {
-            Product product = item.getProduct();
-            
-            if (product.isExpired()) {
-                throw new IllegalStateException(
-                    String.format("Product '%s' has expired", product.getName()));
+        // Clear the cart first, so a paid cart is empty even if a later step fails
+        cart.clear();
+        
+        // Queue the new balance and stock for the next flush; may wait if the store lags.
+        // Balance first, as marking a product is rejected if its name is taken
+        WriteBehindStore store = writeBehind;
+        if (store != null) {
+            store.markDirty(customer);
+            for (CartItem item : pricing.getItems()) {
+                store.markDirty(item.getProduct());
             }
-            
-            if (!product.isAvailable(item.getQuantity())) {
-                throw new IllegalStateException(
-                    String.format("Product '%s' is out of stock. Available: %d, Required: %d", 
-                                product.getName(), product.getQuantity(), item.getQuantity()));
+        }
+        
+        // Take the order's units from the warehouses nearest the customer
+        long phase = Metrics.now();
+        WarehouseNetwork network = warehouseNetwork;
+        Allocation allocation = network == null ? null : network.allocate(pricing.getItems(), customer.getShippingZone());
+        
+        // Process shipment if needed, or leave it to the planner to consolidate
+        EventBus bus = Events.getBus();
+        if (!pricing.getShippableItems().isEmpty()) {
+            ShipmentPlanner planner = shipmentPlanner;
+            if (planner != null) {
+                planner.submit(customer, pricing.getShippableItems());
+            } else if (allocation != null) {
+                ShippingService.processShipment(allocation, sink);
+                if (bus != null) {
+                    publishShipments(bus, customer, allocation);
+                }
+            } else {
+                ShippingService.processShipment(pricing.getShippableItems(), sink);
+                if (bus != null) {
+                    bus.publish(new ShipmentPlannedEvent(customer.getName(), null, pricing.getShippableItems(), 0));
+                }
             }
         }
         
-        // Check customer balance
-        double subtotal = cart.getSubtotal();
-        double shippingFee = ShippingService.calculateShippingFee(cart.getShippableItems());
-        double totalAmount = subtotal + shippingFee;
+        SHIPPING_TIME.recordSince(phase);
         
-        if (customer.getBalance() < totalAmount) {
-            throw new IllegalStateException(
-                String.format("Insufficient balance. Required: $%.2f, Available: $%.2f", 
-                            totalAmount, customer.getBalance()));
+        // Emit checkout receipt
+        phase = Metrics.now();
+        sink.receipt(pricing, result.getRemainingBalanceMinor());
+        RECEIPT_TIME.recordSince(phase);
+        
+        if (bus != null) {
+            // Stock changes were published by the ledgers as the units were reserved
+            bus.publish(new CheckoutCompletedEvent(customer.getName(), pricing, result.getRemainingBalanceMinor()));
         }
     }
     
     /**
-     * Print checkout receipt to console
+     * Publish one shipment per origin warehouse of an allocated order, and one without
+     * an origin for the units no warehouse had
      */
-    private static void printCheckoutReceipt(List<CartItem> items, double subtotal, 
-                                           double shippingFee, double totalAmount, 
-                                           double remainingBalance) {
-        System.out.println("** Checkout receipt **");
-        
-        // Print items
+    private static void publishShipments(EventBus bus, Customer customer, Allocation allocation) {
+        for (int i = 0; i < allocation.getShipmentCount(); i++) {
+            List<CartItem> items = ShippingService.shippable(allocation.getItems(i));
+            if (!items.isEmpty()) {
+                bus.publish(new ShipmentPlannedEvent(customer.getName(), allocation.getOrigins().get(i).getName(), items, 0));
+            }
+        }
+        List<CartItem> unallocated = ShippingService.shippable(allocation.getUnallocated());
+        if (!unallocated.isEmpty()) {
+            bus.publish(new ShipmentPlannedEvent(customer.getName(), null, unallocated, 0));
+        }
+    }
+    
+    /**
+     * Sum the claimed leases per cart line
+     * @return quantity already held for each item, or null if the cart held nothing
+     */
+    static int[] heldQuantities(List<CartItem> items, List<Lease> leases) {
+        if (leases.isEmpty()) {
+            UNHELD_LINES.add(items.size());
+            return null;
+        }
+        int[] held = new int[items.size()];
+        for (Lease lease : leases) {
+            for (int i = 0; i < held.length; i++) {
+                if (items.get(i).getProduct().getId() == lease.getProduct().getId()) {
+                    held[i] += lease.getQuantity();
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < held.length; i++) {
+            if (held[i] >= items.get(i).getQuantity()) {
+                HELD_LINES.increment();
+            } else {
+                UNHELD_LINES.increment();
+            }
+        }
+        return held;
+    }
+    
+    static int unheld(CartItem item, int[] held, int index) {
+        return held == null ? item.getQuantity() : item.getQuantity() - held[index];
+    }
+    
+    /**
+     * Reserve stock for every item not already held and debit the customer; the
+     * reservations are released again if any step fails
+     * @param customer the customer paying
+     * @param items the items to take from stock
+     * @param held quantity of each item held by claimed leases, or null
+     * @param totalAmount the amount to debit in minor units
+     * @return failure result if stock or balance ran out since validation, null on success
+     */
+    private static CheckoutResult reserveAndPay(Customer customer, List<CartItem> items, int[] held, long totalAmount) {
+        long phase = Metrics.now();
+        int reserved = 0;
+        CheckoutResult failure = null;
         for (CartItem item : items) {
-            System.out.printf("%dx %s %.0f%n", 
-                            item.getQuantity(), 
-                            item.getProduct().getName(), 
-                            item.getTotalPrice());
+            Product product = item.getProduct();
+            int quantity = unheld(item, held, reserved);
+            if (quantity > 0 && !product.getStock().tryReserve(quantity)) {
+                failure = CheckoutResult.outOfStock(product, item.getQuantity(), product.getQuantity());
+                break;
+            }
+            reserved++;
         }
         
-        // Print totals
-        System.out.println("----------------------");
-        System.out.printf("Subtotal %.0f%n", subtotal);
+        if (failure == null && !customer.tryDeductBalance(totalAmount)) {
+            failure = CheckoutResult.insufficientBalance(totalAmount, customer.getBalanceMinor());
+        }
         
-        if (shippingFee > 0) {
-            System.out.printf("Shipping %.0f%n", shippingFee);
+        if (failure != null) {
+            // Give back everything reserved so far
+            for (int i = 0; i < reserved; i++) {
+                int quantity = unheld(items.get(i), held, i);
+                if (quantity > 0) {
+                    items.get(i).getProduct().getStock().release(quantity);
+                }
+            }
+            return failure;
+        }
+        PAYMENT_TIME.recordSince(phase);
+        return null;
+    }
+    
+    /**
+     * Turn the reservations of reserveAndPay into sales
+     */
+    private static void commitReservations(List<CartItem> items, int[] held) {
+        long phase = Metrics.now();
+        for (int i = 0; i < items.size(); i++) {
+            int quantity = unheld(items.get(i), held, i);
+            if (quantity > 0) {
+                items.get(i).getProduct().getStock().commit(quantity);
+            }
+        }
+        STOCK_TIME.recordSince(phase);
+    }
+    
+    /**
+     * Undo reserveAndPay: release its reservations and credit the amount back
+     */
+    private static void refund(Customer customer, List<CartItem> items, int[] held, long totalAmount) {
+        for (int i = 0; i < items.size(); i++) {
+            int quantity = unheld(items.get(i), held, i);
+            if (quantity > 0) {
+                items.get(i).getProduct().getStock().release(quantity);
+            }
+        }
+        customer.addBalanceMinor(totalAmount);
+    }
+    
+    /**
+     * Validate checkout preconditions
+     * @param customer the customer
+     * @param pricing pricing of the cart, reused for the rest of the checkout
+     * @param held quantity of each item held by claimed leases, or null
+     * @return failure result, or null if checkout can proceed
+     */
+    private static CheckoutResult validateCheckout(Customer customer, PricingSnapshot pricing, int[] held) {
+        // Check for expired or out of stock products
+        List<CartItem> items = pricing.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            CartItem item = items.get(i);
+            Product product = item.getProduct();
+            
+            if (product.isExpired()) {
+                return CheckoutResult.expired(product);
+            }
+            
+            // Expiry is checked above, so only stock remains to check
+            int quantity = unheld(item, held, i);
+            if (quantity > 0 && !product.getStock().isAvailable(quantity)) {
+                return CheckoutResult.outOfStock(product, item.getQuantity(), product.getQuantity());
+            }
         }
         
-        System.out.printf("Amount %.0f%n", totalAmount);
-        System.out.printf("Customer balance after payment: $%.2f%n", remainingBalance);
+        // Check customer balance
+        if (customer.getBalanceMinor() < pricing.getTotalAmountMinor()) {
+            return CheckoutResult.insufficientBalance(pricing.getTotalAmountMinor(), customer.getBalanceMinor());
+        }
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+package services;
+
+import clock.StoreClock;
+import metrics.Counter;
+import metrics.Metrics;
+import models.Customer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Results of recent checkouts by idempotency key, so a retried request gets the
+ * original result instead of paying twice
+ * Only placed orders are kept. A failed checkout (out of stock, insufficient balance)
+ * forgets its key once duplicates already waiting have seen the failure, so a retry
+ * with the same key checks out again
+ * The first request of a key registers an in-flight entry and runs the checkout;
+ * duplicates arriving meanwhile wait on the same future, later ones read the stored
+ * result. Entries sit in a FIFO queue in creation order, which is also age order,
+ * so every insert drops expired entries from the head and, over the size limit, the
+ * oldest completed one; in-flight entries are never dropped, so a duplicate cannot
+ * start a second checkout while the first is running
+ * Keys forgotten or replaced leave their entry in the queue until it reaches the head;
+ * once the queue holds more than twice the size limit (or twice the keys held, if
+ * in-flight checkouts have pushed that higher), the inserting thread sweeps
+ * those out, so the queue stays bounded even behind a long-running checkout
+ */
+public class IdempotencyCache {
+    private static final Counter HITS = Metrics.counter("checkout.idempotent.hits");
+    private static final Counter COALESCED = Metrics.counter("checkout.idempotent.coalesced");
+    private static final Counter EVICTED = Metrics.counter("checkout.idempotent.evicted");
+    
+    private static final class Entry {
+        final String key;
+        final Customer customer;
+        final long createdMillis;
+        final CompletableFuture<CheckoutResult> result = new CompletableFuture<>();
+        
+        Entry(String key, Customer customer, long createdMillis) {
+            this.key = key;
+            this.customer = customer;
+            this.createdMillis = createdMillis;
+        }
+    }
+    
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> byAge = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger(); // byAge length, approximately
+    private final AtomicBoolean purging = new AtomicBoolean();
+    
+    /**
+     * @param ttl how long a result is kept for retries
+     * @param maxEntries most results kept; in-flight checkouts may briefly exceed it
+     */
+    public IdempotencyCache(Duration ttl, int maxEntries) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+    }
+    
+    /**
+     * Run a checkout once per key
+     * @param key idempotency key chosen by the client
+     * @param customer the customer paying; a key belongs to the first customer that used it
+     * @param checkout runs the checkout if the key is new or expired
+     * @return result of the order placed with this key, or of this attempt if none was
+     * @throws CheckoutIncompleteException if the order was placed but not completed; the key
+     *         keeps the order, so retries get its result
+     * @throws IllegalArgumentException if another customer already used the key
+     */
+    CheckoutResult execute(String key, Customer customer, Supplier<CheckoutResult> checkout) {
+        long now = StoreClock.getClock().millis();
+        Entry entry = new Entry(key, customer, now);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                break;
+            }
+            if (existing.result.isDone() && now - existing.createdMillis >= ttlMillis) {
+                // Expired; take its place unless another request just did
+                if (entries.replace(key, existing, entry)) {
+                    size.decrementAndGet();
+                    break;
+                }
+                continue;
+            }
+            if (existing.customer != customer) {
+                throw new IllegalArgumentException("Idempotency key " + key + " belongs to another customer");
+            }
+            if (existing.result.isDone()) {
+                HITS.increment();
+            } else {
+                COALESCED.increment();
+            }
+            return await(existing);
+        }
+        size.incrementAndGet();
+        byAge.add(entry);
+        if (queued.incrementAndGet() > 2 * Math.max(maxEntries, size.get())) {
+            purge();
+        }
+        evict(now);
+        
+        CheckoutResult result;
+        try {
+            result = checkout.get();
+        } catch (CheckoutIncompleteException e) {
+            // The order was placed; a retry must get it back rather than pay again
+            entry.result.complete(e.getResult());
+            throw e;
+        } catch (RuntimeException | Error e) {
+            // Any other failure left nothing behind, so a retry may check out again
+            forget(entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (!result.isSuccess()) {
+            // Nothing was charged; the client may fix the cause and retry with the same key
+            forget(entry);
+        }
+        entry.result.complete(result);
+        return result;
+    }
+    
+    private void forget(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            size.decrementAndGet();
+        }
+    }
+    
+    private static CheckoutResult await(Entry entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Drop expired entries, then the oldest completed ones while over the size limit
+     */
+    private void evict(long now) {
+        Entry head;
+        while ((head = byAge.peek()) != null) {
+            boolean stale = entries.get(head.key) != head; // replaced or removed already
+            if (!stale && now - head.createdMillis < ttlMillis && size.get() <= maxEntries) {
+                return;
+            }
+            head = byAge.poll();
+            if (head == null) {
+                return; // another thread emptied it
+            }
+            queued.decrementAndGet();
+            if (entries.get(head.key) != head) {
+                continue;
+            }
+            if (!head.result.isDone()) {
+                // Still running; keep it, at the back of the queue
+                byAge.add(head);
+                queued.incrementAndGet();
+                return;
+            }
+            if (entries.remove(head.key, head)) {
+                size.decrementAndGet();
+                EVICTED.increment();
+            }
+        }
+    }
+    
+    /**
+     * Drop queued entries whose key was forgotten or taken over by a newer entry
+     * Evict only looks at the head, so without this they would pile up behind an
+     * in-flight or unexpired entry there
+     */
+    private void purge() {
+        if (!purging.compareAndSet(false, true)) {
+            return; // another thread is at it
+        }
+        try {
+            byAge.removeIf(queuedEntry -> entries.get(queuedEntry.key) != queuedEntry);
+            queued.set(byAge.size());
+        } finally {
+            purging.set(false);
+        }
+    }
+    
+    /**
+     * Get number of keys held
+     * @return key count, including in-flight checkouts
+     */
+    public int size() {
+        return size.get();
+    }
+}
\ No newline at end of file
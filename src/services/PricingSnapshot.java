@@ -0,0 +1,77 @@
+package services;
+
+import models.Cart;
+import models.CartItem;
+import models.Money;
+import promotions.PromotionEngine;
+import promotions.PromotionResult;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable pricing of a cart, computed once at validation and carried through
+ * payment, shipment and receipt so totals are never recomputed during a checkout
+ */
+public final class PricingSnapshot {
+    private final List<CartItem> items;
+    private final List<CartItem> shippableItems;
+    private final long subtotal; // all amounts in minor units, see Money
+    private final PromotionResult promotions;
+    private final long shippingFee;
+    private final long totalAmount;
+    
+    private PricingSnapshot(List<CartItem> items, List<CartItem> shippableItems, 
+                          long subtotal, PromotionResult promotions, long shippingFee) {
+        this.items = Collections.unmodifiableList(items);
+        this.shippableItems = Collections.unmodifiableList(shippableItems);
+        this.subtotal = subtotal;
+        this.promotions = promotions;
+        this.shippingFee = shippingFee;
+        this.totalAmount = Math.addExact(subtotal - promotions.getDiscountMinor(), shippingFee);
+    }
+    
+    /**
+     * Price the current contents of a cart
+     * @param cart the cart to price
+     * @return snapshot of items and totals
+     */
+    public static PricingSnapshot of(Cart cart) {
+        return of(cart, null);
+    }
+    
+    /**
+     * Price the current contents of a cart shipping to a zone
+     * Promotions of CheckoutService's engine are taken off the subtotal, and shipping
+     * thresholds apply to the discounted subtotal
+     * @param cart the cart to price
+     * @param zone shipping zone name, or null for the default zone
+     * @return snapshot of items and totals
+     */
+    public static PricingSnapshot of(Cart cart, String zone) {
+        ShippingRules rules = ShippingService.getShippingRules();
+        PromotionEngine engine = CheckoutService.getPromotionEngine();
+        PromotionResult promotions = engine == null ? PromotionResult.none() : engine.price(cart);
+        long subtotal = cart.getSubtotalMinor();
+        long shippingFee = rules.fee(rules.zoneIndex(zone), cart.getShippableWeightGrams(), 
+                                     cart.getShippableVolumeCm3(), subtotal - promotions.getDiscountMinor());
+        return new PricingSnapshot(cart.getItems(), cart.getShippableItems(), subtotal, promotions, shippingFee);
+    }
+    
+    public List<CartItem> getItems() { return items; }
+    public List<CartItem> getShippableItems() { return shippableItems; }
+    public long getSubtotalMinor() { return subtotal; }
+    public long getDiscountMinor() { return promotions.getDiscountMinor(); }
+    public PromotionResult getPromotions() { return promotions; }
+    public long getShippingFeeMinor() { return shippingFee; }
+    public long getTotalAmountMinor() { return totalAmount; }
+    public double getSubtotal() { return Money.toMajor(subtotal); }
+    public double getDiscount() { return promotions.getDiscount(); }
+    public double getShippingFee() { return Money.toMajor(shippingFee); }
+    public double getTotalAmount() { return Money.toMajor(totalAmount); }
+    
+    @Override
+    public String toString() {
+        return String.format("Pricing (Subtotal: $%.2f, Shipping: $%.2f, Total: $%.2f)", 
+                           getSubtotal(), getShippingFee(), getTotalAmount());
+    }
+}
\ No newline at end of file
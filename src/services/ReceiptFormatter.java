@@ -0,0 +1,83 @@
+package services;
+
+import interfaces.Shippable;
+import models.CartItem;
+import models.Money;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Formats receipts and shipment notices into a caller supplied buffer
+ */
+public final class ReceiptFormatter {
+    
+    private ReceiptFormatter() {
+    }
+    
+    /**
+     * Append a checkout receipt
+     * @param out buffer to append to
+     * @param pricing what was charged
+     * @param remainingBalanceMinor customer balance after payment, in minor units
+     * @return the buffer
+     */
+    public static StringBuilder appendReceipt(StringBuilder out, PricingSnapshot pricing, 
+                                            long remainingBalanceMinor) {
+        Formatter formatter = new Formatter(out);
+        out.append("** Checkout receipt **").append(System.lineSeparator());
+        
+        // Items
+        for (CartItem item : pricing.getItems()) {
+            formatter.format("%dx %s %.0f%n", 
+                           item.getQuantity(), 
+                           item.getProduct().getName(), 
+                           item.getTotalPrice());
+        }
+        
+        // Totals
+        out.append("----------------------").append(System.lineSeparator());
+        formatter.format("Subtotal %.0f%n", pricing.getSubtotal());
+        
+        if (pricing.getDiscountMinor() > 0) {
+            formatter.format("Discount %.0f%n", pricing.getDiscount());
+        }
+        
+        if (pricing.getShippingFeeMinor() > 0) {
+            formatter.format("Shipping %.0f%n", pricing.getShippingFee());
+        }
+        
+        formatter.format("Amount %.0f%n", pricing.getTotalAmount());
+        formatter.format("Customer balance after payment: $%.2f%n", Money.toMajor(remainingBalanceMinor));
+        return out;
+    }
+    
+    /**
+     * Append a shipment notice
+     * @param out buffer to append to
+     * @param shippableItems items in the shipment
+     * @return the buffer
+     */
+    public static StringBuilder appendShipmentNotice(StringBuilder out, List<CartItem> shippableItems) {
+        if (shippableItems.isEmpty()) {
+            return out;
+        }
+        
+        Formatter formatter = new Formatter(out);
+        out.append("** Shipment notice **").append(System.lineSeparator());
+        
+        long totalWeightGrams = 0;
+        for (CartItem item : shippableItems) {
+            Shippable shippable = (Shippable) item.getProduct();
+            long itemWeightGrams = shippable.getWeightGrams() * item.getQuantity();
+            totalWeightGrams += itemWeightGrams;
+            
+            formatter.format("%dx %s %dg%n", 
+                           item.getQuantity(), 
+                           shippable.getName(), 
+                           itemWeightGrams);
+        }
+        
+        formatter.format("Total package weight %.1fkg%n", totalWeightGrams / 1000.0);
+        return out;
+    }
+}
\ No newline at end of file
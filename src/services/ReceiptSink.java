@@ -0,0 +1,37 @@
+package services;
+
+import models.CartItem;
+import java.util.List;
+
+/**
+ * Destination for checkout receipts and shipment notices
+ * Implementations decide where the text goes and when; see the sinks package
+ */
+public interface ReceiptSink {
+    
+    /**
+     * Emit the receipt of a completed checkout
+     * @param pricing what was charged
+     * @param remainingBalanceMinor customer balance after payment, in minor units
+     */
+    void receipt(PricingSnapshot pricing, long remainingBalanceMinor);
+    
+    /**
+     * Emit the shipment notice for items that ship
+     * @param shippableItems items in the shipment
+     */
+    void shipmentNotice(List<CartItem> shippableItems);
+    
+    /**
+     * Push out anything buffered
+     */
+    default void flush() {
+    }
+    
+    /**
+     * Flush and release resources; the sink must not be used afterwards
+     */
+    default void close() {
+        flush();
+    }
+}
@@ -0,0 +1,318 @@
+package services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Shipping fee rules compiled into flat lookup tables
+ * Each zone has weight brackets (start grams, base fee, rate per kg), an optional
+ * free-shipping threshold on the subtotal, and fees are charged on the billable
+ * weight, the larger of actual and dimensional weight. Brackets of all zones live
+ * in shared primitive arrays and a per-zone direct table maps a weight to its
+ * bracket. Table cells are no wider than the zone's narrowest bracket, so a cell
+ * holds at most one bracket boundary and the lookup is O(1); only when that would
+ * take more than MAX_TABLE_SIZE cells are cells widened, and the brackets inside
+ * one are binary searched. Evaluating a fee never allocates
+ *
+ * Configuration is a properties file:
+ * <pre>
+ * zones=domestic,remote            # first zone is the default
+ * domestic.brackets=0:500:1000     # startGrams:baseFee:ratePerKg, amounts in minor units
+ * remote.brackets=0:900:1500, 20000:3000:1200
+ * free.threshold=0                 # subtotal at which shipping is free, 0 disables
+ * remote.free.threshold=0          # per-zone override
+ * dim.divisor=0                    # cubic centimetres per billable kg, 0 disables
+ * parcel.max.grams=30000           # carrier weight limit per parcel
+ * </pre>
+ */
+public final class ShippingRules {
+    public static final long DEFAULT_BASE_FEE = 500; // $5, in minor units
+    public static final long DEFAULT_RATE_PER_KG = 1000; // $10 per kg, in minor units
+    public static final String DEFAULT_ZONE = "default";
+    public static final long DEFAULT_MAX_PARCEL_GRAMS = 30_000;
+    
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+    
+    private final Map<String, Integer> zoneIndex;
+    private final String[] zoneNames;
+    // Brackets of zone z are [bracketOffset[z], bracketOffset[z + 1])
+    private final int[] bracketOffset;
+    private final long[] bracketStart;
+    private final long[] bracketBase;
+    private final long[] bracketRate;
+    private final long[] freeThreshold;
+    // Direct table of zone z is [tableOffset[z], tableOffset[z + 1]), one entry per 2^tableShift[z] grams
+    private final int[] tableOffset;
+    private final int[] tableShift;
+    private final int[] table;
+    private final long dimDivisor;
+    private final long maxParcelGrams;
+    
+    private ShippingRules(List<String> zones, List<long[][]> brackets, long[] freeThreshold, long dimDivisor,
+                          long maxParcelGrams) {
+        int zoneCount = zones.size();
+        this.zoneNames = zones.toArray(new String[0]);
+        this.zoneIndex = new HashMap<>();
+        this.bracketOffset = new int[zoneCount + 1];
+        this.tableOffset = new int[zoneCount + 1];
+        this.tableShift = new int[zoneCount];
+        this.freeThreshold = freeThreshold;
+        this.dimDivisor = dimDivisor;
+        this.maxParcelGrams = maxParcelGrams;
+        
+        int total = 0;
+        for (int z = 0; z < zoneCount; z++) {
+            zoneIndex.put(zoneNames[z], z);
+            bracketOffset[z] = total;
+            total += brackets.get(z).length;
+        }
+        bracketOffset[zoneCount] = total;
+        this.bracketStart = new long[total];
+        this.bracketBase = new long[total];
+        this.bracketRate = new long[total];
+        
+        int tableSize = 0;
+        for (int z = 0; z < zoneCount; z++) {
+            long[][] zoneBrackets = brackets.get(z);
+            for (int i = 0; i < zoneBrackets.length; i++) {
+                bracketStart[bracketOffset[z] + i] = zoneBrackets[i][0];
+                bracketBase[bracketOffset[z] + i] = zoneBrackets[i][1];
+                bracketRate[bracketOffset[z] + i] = zoneBrackets[i][2];
+            }
+            // Cells as wide as the largest power of two that fits in the narrowest bracket,
+            // widened only if the table would outgrow its bound
+            long lastStart = zoneBrackets[zoneBrackets.length - 1][0];
+            long narrowest = Long.MAX_VALUE;
+            for (int i = 1; i < zoneBrackets.length; i++) {
+                narrowest = Math.min(narrowest, zoneBrackets[i][0] - zoneBrackets[i - 1][0]);
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(narrowest);
+            while ((lastStart >>> shift) >= MAX_TABLE_SIZE) {
+                shift++;
+            }
+            tableShift[z] = shift;
+            tableOffset[z] = tableSize;
+            tableSize += (int) (lastStart >>> shift) + 1;
+        }
+        tableOffset[zoneCount] = tableSize;
+        this.table = new int[tableSize];
+        
+        for (int z = 0; z < zoneCount; z++) {
+            int bracket = bracketOffset[z];
+            int last = bracketOffset[z + 1] - 1;
+            for (int t = tableOffset[z]; t < tableOffset[z + 1]; t++) {
+                long weight = (long) (t - tableOffset[z]) << tableShift[z];
+                while (bracket < last && bracketStart[bracket + 1] <= weight) {
+                    bracket++;
+                }
+                table[t] = bracket;
+            }
+        }
+    }
+    
+    /**
+     * Rules equivalent to the original flat fee: $5 base plus $10 per kg in every zone
+     * @return single-zone default rules
+     */
+    public static ShippingRules defaults() {
+        List<long[][]> brackets = new ArrayList<>();
+        brackets.add(new long[][] {{0, DEFAULT_BASE_FEE, DEFAULT_RATE_PER_KG}});
+        return new ShippingRules(List.of(DEFAULT_ZONE), brackets, new long[1], 0, DEFAULT_MAX_PARCEL_GRAMS);
+    }
+    
+    /**
+     * Load rules from a properties file
+     * @param path the configuration file
+     * @return compiled rules
+     * @throws IOException if the file cannot be read
+     */
+    public static ShippingRules load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return parse(properties);
+    }
+    
+    /**
+     * Compile rules from configuration properties
+     * @param properties the configuration, see the class comment for keys
+     * @return compiled rules
+     * @throws IllegalArgumentException if the configuration is malformed
+     */
+    public static ShippingRules parse(Properties properties) {
+        String zoneList = properties.getProperty("zones");
+        if (zoneList == null || zoneList.trim().isEmpty()) {
+            throw new IllegalArgumentException("Shipping rules must define zones");
+        }
+        List<String> zones = new ArrayList<>();
+        for (String zone : zoneList.split(",")) {
+            zone = zone.trim();
+            if (zone.isEmpty() || zones.contains(zone)) {
+                throw new IllegalArgumentException("Invalid or duplicate zone: '" + zone + "'");
+            }
+            zones.add(zone);
+        }
+        
+        long globalFree = parseAmount(properties, "free.threshold", 0);
+        long dimDivisor = parseAmount(properties, "dim.divisor", 0);
+        long maxParcelGrams = parseAmount(properties, "parcel.max.grams", DEFAULT_MAX_PARCEL_GRAMS);
+        if (maxParcelGrams == 0) {
+            throw new IllegalArgumentException("parcel.max.grams must be positive");
+        }
+        long[] freeThreshold = new long[zones.size()];
+        List<long[][]> brackets = new ArrayList<>();
+        for (int z = 0; z < zones.size(); z++) {
+            String zone = zones.get(z);
+            freeThreshold[z] = parseAmount(properties, zone + ".free.threshold", globalFree);
+            brackets.add(parseBrackets(zone, properties.getProperty(zone + ".brackets")));
+        }
+        return new ShippingRules(zones, brackets, freeThreshold, dimDivisor, maxParcelGrams);
+    }
+    
+    private static long parseAmount(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long amount = Long.parseLong(value.trim());
+            if (amount < 0) {
+                throw new IllegalArgumentException(key + " cannot be negative");
+            }
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+    
+    private static long[][] parseBrackets(String zone, String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            throw new IllegalArgumentException("Zone " + zone + " has no brackets");
+        }
+        String[] parts = spec.split(",");
+        long[][] brackets = new long[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            String[] fields = parts[i].trim().split(":");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Bracket must be startGrams:baseFee:ratePerKg in zone "
+                                                 + zone + ": " + parts[i].trim());
+            }
+            long[] bracket = new long[3];
+            for (int f = 0; f < 3; f++) {
+                try {
+                    bracket[f] = Long.parseLong(fields[f].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number in zone " + zone + ": " + parts[i].trim(), e);
+                }
+                if (bracket[f] < 0) {
+                    throw new IllegalArgumentException("Bracket values cannot be negative in zone " + zone);
+                }
+            }
+            brackets[i] = bracket;
+        }
+        Arrays.sort(brackets, (a, b) -> Long.compare(a[0], b[0]));
+        if (brackets[0][0] != 0) {
+            throw new IllegalArgumentException("First bracket of zone " + zone + " must start at 0 grams");
+        }
+        for (int i = 1; i < brackets.length; i++) {
+            if (brackets[i][0] == brackets[i - 1][0]) {
+                throw new IllegalArgumentException("Duplicate bracket start in zone " + zone + ": " + brackets[i][0]);
+            }
+        }
+        return brackets;
+    }
+    
+    /**
+     * Resolve a zone name to the index used by fee
+     * @param zone zone name, or null for the default zone
+     * @return zone index
+     * @throws IllegalArgumentException if the zone is unknown
+     */
+    public int zoneIndex(String zone) {
+        if (zone == null) {
+            return 0;
+        }
+        Integer index = zoneIndex.get(zone);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown shipping zone: " + zone);
+        }
+        return index;
+    }
+    
+    /**
+     * Calculate the shipping fee of a parcel
+     * @param zone zone index from zoneIndex
+     * @param weightGrams actual weight in grams, 0 if nothing ships
+     * @param volumeCm3 volume in cubic centimetres, 0 if unknown
+     * @param subtotal order subtotal in minor units, for the free-shipping threshold
+     * @return shipping fee in minor units, rounded half up to the cent
+     */
+    public long fee(int zone, long weightGrams, long volumeCm3, long subtotal) {
+        if (weightGrams <= 0) {
+            return 0;
+        }
+        long free = freeThreshold[zone];
+        if (free > 0 && subtotal >= free) {
+            return 0;
+        }
+        long billable = weightGrams;
+        if (dimDivisor > 0) {
+            billable = Math.max(billable, (volumeCm3 * 1000 + dimDivisor - 1) / dimDivisor);
+        }
+        int from = tableOffset[zone];
+        int slot = (int) Math.min(billable >>> tableShift[zone], tableOffset[zone + 1] - from - 1);
+        int bracket = table[from + slot];
+        // The weight's bracket is at most the one the next cell starts in
+        int high = from + slot + 1 < tableOffset[zone + 1] ? table[from + slot + 1] : bracketOffset[zone + 1] - 1;
+        // Usually high is bracket or the one after it; a widened cell takes a binary search
+        while (bracket < high) {
+            int middle = (bracket + high + 1) >>> 1;
+            if (bracketStart[middle] <= billable) {
+                bracket = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return bracketBase[bracket] + (billable * bracketRate[bracket] + 500) / 1000;
+    }
+    
+    /**
+     * Get the carrier weight limit used to split shipments into parcels
+     * @return maximum parcel weight in grams
+     */
+    public long getMaxParcelGrams() {
+        return maxParcelGrams;
+    }
+    
+    /**
+     * Get number of zones
+     * @return zone count
+     */
+    public int zoneCount() {
+        return zoneNames.length;
+    }
+    
+    /**
+     * Get number of brackets across all zones
+     * @return bracket count
+     */
+    public int bracketCount() {
+        return bracketStart.length;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ShippingRules (Zones: %s, Brackets: %d, Dim divisor: %d)",
+                           String.join(",", zoneNames), bracketCount(), dimDivisor);
+    }
+}
\ No newline at end of file
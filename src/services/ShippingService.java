@@ -1,34 +1,89 @@
 package services;
 
 import interfaces.Shippable;
+import inventory.Allocation;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import models.CartItem;
+import models.Money;
+import shipping.Parcel;
+import shipping.ShipmentPlanner;
+import shipping.Shipment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Service for handling shipping operations
+ * Fees come from ShippingRules; set -Dshipping.rules=FILE to load them from a file
  */
 public class ShippingService {
-    private static final double SHIPPING_RATE_PER_KG = 10.0; // $10 per kg
-    private static final double BASE_SHIPPING_FEE = 5.0; // Base fee of $5
+    private static volatile ShippingRules shippingRules = loadConfiguredRules();
+    
+    private static final LatencyHistogram SHIPMENT_TIME = Metrics.histogram("shipping.shipment.ns");
+    private static final Counter SHIPMENTS = Metrics.counter("shipping.shipments");
+    private static final Counter PARCELS = Metrics.counter("shipping.parcels");
+    private static final Counter SPLIT_SHIPMENTS = Metrics.counter("shipping.split");
+    
+    /**
+     * Load rules from the file named by the shipping.rules system property, if any
+     */
+    private static ShippingRules loadConfiguredRules() {
+        String path = System.getProperty("shipping.rules");
+        if (path == null) {
+            return ShippingRules.defaults();
+        }
+        try {
+            return ShippingRules.load(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read shipping rules from " + path, e);
+        }
+    }
+    
+    /**
+     * Replace the shipping fee rules
+     * @param rules compiled rules, e.g. from ShippingRules.load
+     */
+    public static void setShippingRules(ShippingRules rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Shipping rules cannot be null");
+        }
+        shippingRules = rules;
+    }
+    
+    public static ShippingRules getShippingRules() {
+        return shippingRules;
+    }
     
     /**
-     * Calculate shipping fee based on total weight
+     * Calculate shipping fee based on total weight in the default zone
+     * The free-shipping threshold is checked against the subtotal of these items
      * @param shippableItems list of items that require shipping
      * @return shipping fee
      */
     public static double calculateShippingFee(List<CartItem> shippableItems) {
-        if (shippableItems.isEmpty()) {
-            return 0.0;
+        long totalWeightGrams = 0;
+        long totalVolumeCm3 = 0;
+        long subtotal = 0;
+        for (CartItem item : shippableItems) {
+            Shippable shippable = (Shippable) item.getProduct();
+            totalWeightGrams += shippable.getWeightGrams() * item.getQuantity();
+            totalVolumeCm3 += shippable.getVolumeCm3() * item.getQuantity();
+            subtotal += item.getTotalPriceMinor();
         }
-        
-        double totalWeight = shippableItems.stream()
-            .mapToDouble(item -> {
-                Shippable shippable = (Shippable) item.getProduct();
-                return shippable.getWeight() * item.getQuantity();
-            })
-            .sum();
-            
-        return BASE_SHIPPING_FEE + (totalWeight * SHIPPING_RATE_PER_KG);
+        return Money.toMajor(shippingRules.fee(0, totalWeightGrams, totalVolumeCm3, subtotal));
+    }
+    
+    /**
+     * Calculate shipping fee for an already known total weight in the default zone
+     * @param totalWeightGrams total shippable weight in grams, 0 if nothing ships
+     * @return shipping fee in minor units, rounded half up to the cent
+     */
+    public static long calculateShippingFeeMinor(long totalWeightGrams) {
+        return shippingRules.fee(0, totalWeightGrams, 0, 0);
     }
     
     /**
@@ -36,24 +91,78 @@ public class ShippingService {
      * @param shippableItems list of items to ship
      */
     public static void processShipment(List<CartItem> shippableItems) {
+        processShipment(shippableItems, CheckoutService.getReceiptSink());
+    }
+    
+    /**
+     * Process shipment and send the shipment notice to a sink
+     * Shipments over the parcel weight limit are split and get one notice per parcel
+     * @param shippableItems list of items to ship
+     * @param sink where the notice goes
+     */
+    public static void processShipment(List<CartItem> shippableItems, ReceiptSink sink) {
         if (shippableItems.isEmpty()) {
             return;
         }
-        
-        System.out.println("** Shipment notice **");
-        
-        double totalWeight = 0.0;
+        long start = Metrics.now();
+        SHIPMENTS.increment();
+        long maxParcelGrams = shippingRules.getMaxParcelGrams();
+        long totalWeightGrams = 0;
         for (CartItem item : shippableItems) {
-            Shippable shippable = (Shippable) item.getProduct();
-            double itemWeight = shippable.getWeight() * item.getQuantity();
-            totalWeight += itemWeight;
-            
-            System.out.printf("%dx %s %.0fg%n", 
-                            item.getQuantity(), 
-                            shippable.getName(), 
-                            itemWeight * 1000); // Convert kg to grams for display
-        }
-        
-        System.out.printf("Total package weight %.1fkg%n", totalWeight);
+            totalWeightGrams += ((Shippable) item.getProduct()).getWeightGrams() * item.getQuantity();
+        }
+        if (totalWeightGrams <= maxParcelGrams) {
+            sink.shipmentNotice(shippableItems);
+            PARCELS.increment();
+        } else {
+            List<Parcel> parcels = ShipmentPlanner.pack(shippableItems, maxParcelGrams);
+            for (Parcel parcel : parcels) {
+                sink.shipmentNotice(parcel.getItems());
+            }
+            SPLIT_SHIPMENTS.increment();
+            PARCELS.add(parcels.size());
+        }
+        SHIPMENT_TIME.recordSince(start);
+    }
+    
+    /**
+     * Ship an allocated order as one shipment from each origin warehouse
+     * Units no warehouse had go out as one more shipment without an origin
+     * @param allocation where the order's units ship from
+     * @param sink where the notices go
+     */
+    public static void processShipment(Allocation allocation, ReceiptSink sink) {
+        for (int i = 0; i < allocation.getShipmentCount(); i++) {
+            processShipment(shippable(allocation.getItems(i)), sink);
+        }
+        processShipment(shippable(allocation.getUnallocated()), sink);
+    }
+    
+    static List<CartItem> shippable(List<CartItem> items) {
+        List<CartItem> shippable = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            if (item.getProduct().requiresShipping()) {
+                shippable.add(item);
+            }
+        }
+        return shippable;
+    }
+    
+    /**
+     * Send one shipment notice per parcel of a planned shipment to the checkout sink
+     * @param shipment shipment from a ShipmentPlanner
+     */
+    public static void processShipment(Shipment shipment) {
+        long start = Metrics.now();
+        ReceiptSink sink = CheckoutService.getReceiptSink();
+        for (Parcel parcel : shipment.getParcels()) {
+            sink.shipmentNotice(parcel.getItems());
+        }
+        SHIPMENTS.increment();
+        PARCELS.add(shipment.getParcels().size());
+        if (shipment.getParcels().size() > 1) {
+            SPLIT_SHIPMENTS.increment();
+        }
+        SHIPMENT_TIME.recordSince(start);
     }
 }
\ No newline at end of file
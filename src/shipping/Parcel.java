@@ -0,0 +1,37 @@
+package shipping;
+
+import models.CartItem;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One box handed to the carrier
+ */
+public final class Parcel {
+    private final List<CartItem> items;
+    private final long weightGrams;
+    private final boolean oversize;
+    
+    Parcel(List<CartItem> items, long weightGrams, boolean oversize) {
+        this.items = Collections.unmodifiableList(items);
+        this.weightGrams = weightGrams;
+        this.oversize = oversize;
+    }
+    
+    public List<CartItem> getItems() { return items; }
+    public long getWeightGrams() { return weightGrams; }
+    
+    /**
+     * Check if the parcel holds a single unit heavier than the carrier limit
+     * @return true if the parcel is over the limit
+     */
+    public boolean isOversize() {
+        return oversize;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Parcel (Lines: %d, Weight: %.1fkg%s)", 
+                           items.size(), weightGrams / 1000.0, oversize ? ", oversize" : "");
+    }
+}
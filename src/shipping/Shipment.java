@@ -0,0 +1,42 @@
+package shipping;
+
+import models.Customer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consolidated shipment of one or more orders to the same customer
+ */
+public final class Shipment {
+    private final Customer customer;
+    private final List<Parcel> parcels;
+    private final int orderCount;
+    
+    Shipment(Customer customer, List<Parcel> parcels, int orderCount) {
+        this.customer = customer;
+        this.parcels = Collections.unmodifiableList(parcels);
+        this.orderCount = orderCount;
+    }
+    
+    public Customer getCustomer() { return customer; }
+    public List<Parcel> getParcels() { return parcels; }
+    public int getOrderCount() { return orderCount; }
+    
+    /**
+     * Get total weight of all parcels
+     * @return weight in grams
+     */
+    public long getWeightGrams() {
+        long total = 0;
+        for (Parcel parcel : parcels) {
+            total += parcel.getWeightGrams();
+        }
+        return total;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Shipment to %s (Orders: %d, Parcels: %d, Weight: %.1fkg)", 
+                           customer.getName(), orderCount, parcels.size(), getWeightGrams() / 1000.0);
+    }
+}
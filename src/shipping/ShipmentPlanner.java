@@ -0,0 +1,385 @@
+package shipping;
+
+import clock.StoreClock;
+import events.EventBus;
+import events.Events;
+import events.ShipmentPlannedEvent;
+import interfaces.Shippable;
+import metrics.Counter;
+import metrics.Metrics;
+import models.CartItem;
+import models.Customer;
+import models.Product;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Consolidates paid orders into shipments and packs them into parcels
+ * Orders are submitted from checkout threads without locking. A batch run groups
+ * pending orders per customer, ships every group whose first order is older than
+ * the consolidation window, and packs each group first-fit decreasing under the
+ * carrier weight limit. A run stops at its time budget and leaves the remaining
+ * groups for the next run
+ */
+public class ShipmentPlanner implements AutoCloseable {
+    private static final int BUDGET_CHECK_INTERVAL = 64;
+    private static final Counter DISPATCH_FAILURES = Metrics.counter("shipping.planner.dispatch.failures");
+    private static final Counter RUN_FAILURES = Metrics.counter("shipping.planner.run.failures");
+    
+    private final long maxParcelGrams;
+    private final long windowMillis;
+    private final ConcurrentLinkedQueue<PendingOrder> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingOrders = new AtomicInteger();
+    private final Map<Customer, Group> groups = new LinkedHashMap<>(); // by first order, guarded by this
+    private ScheduledExecutorService timer;
+    
+    /**
+     * @param maxParcelGrams carrier weight limit per parcel
+     * @param window how long to wait for further orders from the same customer
+     */
+    public ShipmentPlanner(long maxParcelGrams, Duration window) {
+        if (maxParcelGrams <= 0) {
+            throw new IllegalArgumentException("Parcel weight limit must be positive");
+        }
+        if (window == null || window.isNegative()) {
+            throw new IllegalArgumentException("Consolidation window cannot be negative");
+        }
+        this.maxParcelGrams = maxParcelGrams;
+        this.windowMillis = window.toMillis();
+    }
+    
+    /**
+     * Paid order waiting to ship; quantities are copied so later cart changes cannot affect it
+     */
+    private static final class PendingOrder {
+        final Customer customer;
+        final long submittedMillis;
+        final Product[] products;
+        final int[] quantities;
+        
+        PendingOrder(Customer customer, long submittedMillis, List<CartItem> items) {
+            this.customer = customer;
+            this.submittedMillis = submittedMillis;
+            this.products = new Product[items.size()];
+            this.quantities = new int[items.size()];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = items.get(i).getProduct();
+                quantities[i] = items.get(i).getQuantity();
+            }
+        }
+    }
+    
+    /**
+     * Orders of one customer merged by product
+     */
+    private static final class Group {
+        final long firstMillis;
+        final Map<Product, Integer> quantities = new LinkedHashMap<>();
+        int orderCount;
+        
+        Group(long firstMillis) {
+            this.firstMillis = firstMillis;
+        }
+        
+        void add(PendingOrder order) {
+            for (int i = 0; i < order.products.length; i++) {
+                quantities.merge(order.products[i], order.quantities[i], Integer::sum);
+            }
+            orderCount++;
+        }
+        
+        List<CartItem> items() {
+            List<CartItem> items = new ArrayList<>(quantities.size());
+            for (Map.Entry<Product, Integer> entry : quantities.entrySet()) {
+                items.add(new CartItem(entry.getKey(), entry.getValue()));
+            }
+            return items;
+        }
+    }
+    
+    /**
+     * Queue the shippable items of a paid order
+     * @param customer who the order ships to
+     * @param shippableItems items that require shipping
+     * @throws IllegalArgumentException if an item does not ship
+     */
+    public void submit(Customer customer, List<CartItem> shippableItems) {
+        if (customer == null) {
+            throw new IllegalArgumentException("Customer cannot be null");
+        }
+        for (CartItem item : shippableItems) {
+            if (!(item.getProduct() instanceof Shippable)) {
+                throw new IllegalArgumentException(item.getProduct().getName() + " does not require shipping");
+            }
+        }
+        if (shippableItems.isEmpty()) {
+            return;
+        }
+        submitted.add(new PendingOrder(customer, StoreClock.getClock().millis(), shippableItems));
+        pendingOrders.incrementAndGet();
+    }
+    
+    /**
+     * Get number of submitted orders not yet shipped
+     * @return pending order count
+     */
+    public int pendingOrders() {
+        return pendingOrders.get();
+    }
+    
+    /**
+     * Ship every customer whose consolidation window has closed
+     * @param budget time after which the run stops; unfinished groups wait for the next run
+     * @return planned shipments, oldest first
+     */
+    public List<Shipment> runBatch(Duration budget) {
+        return plan(budget, false);
+    }
+    
+    /**
+     * Ship everything pending regardless of the consolidation window, e.g. at shutdown
+     * @param budget time after which the run stops
+     * @return planned shipments, oldest first
+     */
+    public List<Shipment> flush(Duration budget) {
+        return plan(budget, true);
+    }
+    
+    private synchronized List<Shipment> plan(Duration budget, boolean ignoreWindow) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        PendingOrder order;
+        int drained = 0;
+        while ((order = submitted.poll()) != null) {
+            addToGroup(order);
+            // Out of time; orders still queued are grouped by the next run
+            if (++drained % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        
+        long cutoff = StoreClock.getClock().millis() - windowMillis;
+        List<Shipment> shipments = new ArrayList<>();
+        EventBus bus = Events.getBus();
+        Iterator<Map.Entry<Customer, Group>> it = groups.entrySet().iterator();
+        while (it.hasNext()) {
+            if (shipments.size() % BUDGET_CHECK_INTERVAL == 0 && !shipments.isEmpty()
+                    && System.nanoTime() - deadline > 0) {
+                break;
+            }
+            Map.Entry<Customer, Group> entry = it.next();
+            Group group = entry.getValue();
+            // Groups are in first-order order, so the rest are younger still
+            if (!ignoreWindow && group.firstMillis > cutoff) {
+                break;
+            }
+            it.remove();
+            List<CartItem> items = group.items();
+            Shipment shipment = new Shipment(entry.getKey(), pack(items, maxParcelGrams), group.orderCount);
+            shipments.add(shipment);
+            pendingOrders.addAndGet(-group.orderCount);
+            if (bus != null) {
+                bus.publish(new ShipmentPlannedEvent(entry.getKey().getName(), null, items, shipment.getParcels().size()));
+            }
+        }
+        return shipments;
+    }
+    
+    private void addToGroup(PendingOrder order) {
+        Group group = groups.get(order.customer);
+        if (group == null) {
+            group = new Group(order.submittedMillis);
+            groups.put(order.customer, group);
+        }
+        group.add(order);
+    }
+    
+    /**
+     * Run batches on a daemon thread and hand each shipment to a dispatcher
+     * A shipment the dispatcher throws on is counted in shipping.planner.dispatch.failures
+     * and the rest of the run is still dispatched; a run that fails before dispatching is
+     * counted in shipping.planner.run.failures. Either way later runs go ahead
+     * @param interval time between runs
+     * @param budget time budget of each run
+     * @param dispatcher receives every planned shipment, e.g. ShippingService::processShipment
+     */
+    public synchronized void start(Duration interval, Duration budget, Consumer<Shipment> dispatcher) {
+        if (timer != null) {
+            throw new IllegalStateException("Planner already started");
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "shipment-planner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> dispatchBatch(budget, dispatcher),
+                                     interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * One scheduled run; never throws, as that would cancel every later run
+     */
+    private void dispatchBatch(Duration budget, Consumer<Shipment> dispatcher) {
+        List<Shipment> shipments;
+        try {
+            shipments = runBatch(budget);
+        } catch (RuntimeException e) {
+            RUN_FAILURES.increment();
+            return;
+        }
+        for (Shipment shipment : shipments) {
+            try {
+                dispatcher.accept(shipment);
+            } catch (RuntimeException e) {
+                // Its groups are already out of the planner; carry on with the others
+                DISPATCH_FAILURES.increment();
+            }
+        }
+    }
+    
+    /**
+     * Stop the background runs; pending orders stay queued for flush
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = timer;
+            timer = null;
+        }
+        if (stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Pack items into parcels first-fit decreasing by unit weight
+     * A unit heavier than the limit goes alone into an oversize parcel
+     * @param shippableItems items to pack; every product must be Shippable
+     * @param maxParcelGrams carrier weight limit per parcel
+     * @return parcels in the order they were opened
+     */
+    public static List<Parcel> pack(List<CartItem> shippableItems, long maxParcelGrams) {
+        int lineCount = shippableItems.size();
+        long[] unitWeight = new long[lineCount];
+        Integer[] order = new Integer[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            unitWeight[i] = ((Shippable) shippableItems.get(i).getProduct()).getWeightGrams();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unitWeight[b], unitWeight[a]));
+        
+        List<List<CartItem>> contents = new ArrayList<>();
+        List<Boolean> oversize = new ArrayList<>();
+        long[] weight = new long[Math.max(1, lineCount)];
+        CapacityTree room = new CapacityTree(lineCount);
+        for (int line : order) {
+            Product product = shippableItems.get(line).getProduct();
+            long unit = unitWeight[line];
+            int left = shippableItems.get(line).getQuantity();
+            while (left > 0) {
+                int parcel;
+                int units;
+                if (unit > maxParcelGrams) {
+                    parcel = contents.size();
+                    units = 1;
+                    oversize.add(Boolean.TRUE);
+                } else {
+                    parcel = room.firstAtLeast(Math.max(unit, 1));
+                    if (parcel < 0) {
+                        parcel = contents.size();
+                        oversize.add(Boolean.FALSE);
+                        room.set(parcel, maxParcelGrams);
+                    }
+                    units = unit == 0 ? left : (int) Math.min(left, room.get(parcel) / unit);
+                }
+                if (parcel == contents.size()) {
+                    contents.add(new ArrayList<>());
+                    if (parcel == weight.length) {
+                        weight = Arrays.copyOf(weight, weight.length * 2);
+                    }
+                }
+                contents.get(parcel).add(new CartItem(product, units));
+                weight[parcel] += unit * units;
+                if (!oversize.get(parcel)) {
+                    room.set(parcel, maxParcelGrams - weight[parcel]);
+                }
+                left -= units;
+            }
+        }
+        
+        List<Parcel> parcels = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            parcels.add(new Parcel(contents.get(i), weight[i], oversize.get(i)));
+        }
+        return parcels;
+    }
+    
+    /**
+     * Max tree over remaining parcel capacity, so first fit is O(log parcels)
+     */
+    private static final class CapacityTree {
+        private long[] tree;
+        private int leaves;
+        
+        CapacityTree(int expected) {
+            leaves = Integer.highestOneBit(Math.max(1, expected - 1)) << 1;
+            tree = new long[leaves * 2];
+        }
+        
+        long get(int leaf) {
+            return tree[leaves + leaf];
+        }
+        
+        void set(int leaf, long capacity) {
+            while (leaf >= leaves) {
+                grow();
+            }
+            int node = leaves + leaf;
+            tree[node] = capacity;
+            for (node >>= 1; node > 0; node >>= 1) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+        
+        /**
+         * Find the lowest leaf with at least the given capacity
+         * @return leaf index, or -1 if none has room
+         */
+        int firstAtLeast(long capacity) {
+            if (tree[1] < capacity) {
+                return -1;
+            }
+            int node = 1;
+            while (node < leaves) {
+                node = tree[2 * node] >= capacity ? 2 * node : 2 * node + 1;
+            }
+            return node - leaves;
+        }
+        
+        private void grow() {
+            long[] grown = new long[leaves * 4];
+            System.arraycopy(tree, leaves, grown, leaves * 2, leaves);
+            leaves *= 2;
+            tree = grown;
+            for (int node = leaves - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+package sinks;
+
+import metrics.Counter;
+import metrics.Metrics;
+import models.CartItem;
+import services.PricingSnapshot;
+import services.ReceiptSink;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands receipts and notices to a background thread through a bounded ring buffer
+ * The checkout thread only enqueues the immutable pricing snapshot; formatting and I/O
+ * happen on the drain thread, which forwards batches to a delegate sink and flushes it
+ * after each batch. When the buffer is full, producers wait instead of dropping output
+ * A delegate that throws, on delivery or on flush, is counted and reported to the
+ * error handler, and draining carries on
+ */
+public class AsyncSink implements ReceiptSink {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_BATCH = 256;
+    
+    private static final Counter ERRORS = Metrics.counter("sink.errors");
+    
+    /**
+     * Called on the drain thread when the delegate throws
+     */
+    public interface ErrorHandler {
+        void onError(RuntimeException error);
+    }
+    
+    /**
+     * One queued receipt or notice
+     */
+    private static final class Entry {
+        static final Entry STOP = new Entry(null, 0, null);
+        
+        final PricingSnapshot pricing;
+        final long remainingBalanceMinor;
+        final List<CartItem> shippableItems;
+        
+        Entry(PricingSnapshot pricing, long remainingBalanceMinor, List<CartItem> shippableItems) {
+            this.pricing = pricing;
+            this.remainingBalanceMinor = remainingBalanceMinor;
+            this.shippableItems = shippableItems;
+        }
+    }
+    
+    private final ReceiptSink delegate;
+    private final BlockingQueue<Entry> ring;
+    private final Thread drainer;
+    private final AtomicLong enqueued = new AtomicLong();
+    private volatile long delivered;
+    private volatile boolean closed;
+    private volatile ErrorHandler errorHandler = error -> { };
+    
+    public AsyncSink(ReceiptSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+    
+    public AsyncSink(ReceiptSink delegate, int capacity) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate sink cannot be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        
+        this.delegate = delegate;
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.drainer = new Thread(this::drain, "receipt-sink-drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+    
+    @Override
+    public void receipt(PricingSnapshot pricing, long remainingBalanceMinor) {
+        enqueue(new Entry(pricing, remainingBalanceMinor, null));
+    }
+    
+    @Override
+    public void shipmentNotice(List<CartItem> shippableItems) {
+        enqueue(new Entry(null, 0, shippableItems));
+    }
+    
+    private void enqueue(Entry entry) {
+        if (closed) {
+            throw new IllegalStateException("Sink is closed");
+        }
+        try {
+            ring.put(entry);
+            enqueued.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing output", e);
+        }
+    }
+    
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(ring.take());
+                ring.drainTo(batch, MAX_BATCH - 1);
+                boolean stop = false;
+                int count = 0;
+                for (Entry entry : batch) {
+                    if (entry == Entry.STOP) {
+                        stop = true;
+                    } else {
+                        deliver(entry);
+                        count++;
+                    }
+                }
+                try {
+                    delegate.flush();
+                } catch (RuntimeException e) {
+                    failed(e);
+                }
+                delivered += count;
+                batch.clear();
+                if (stop) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void deliver(Entry entry) {
+        try {
+            if (entry.pricing != null) {
+                delegate.receipt(entry.pricing, entry.remainingBalanceMinor);
+            } else {
+                delegate.shipmentNotice(entry.shippableItems);
+            }
+        } catch (RuntimeException e) {
+            failed(e);
+        }
+    }
+    
+    private void failed(RuntimeException error) {
+        ERRORS.increment();
+        try {
+            errorHandler.onError(error);
+        } catch (RuntimeException ignored) {
+            // Counted already; a failing handler must not stop the drain thread either
+        }
+    }
+    
+    /**
+     * Set what sees delegate failures; they are always counted in sink.errors
+     * @param handler called for every exception the delegate throws
+     */
+    public void setErrorHandler(ErrorHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        this.errorHandler = handler;
+    }
+    
+    /**
+     * Get number of entries waiting to be written
+     * @return queued entries
+     */
+    public int getPending() {
+        return ring.size();
+    }
+    
+    /**
+     * Wait until everything queued so far has been drained, written and flushed
+     */
+    @Override
+    public void flush() {
+        long target = enqueued.get();
+        while (delivered < target && drainer.isAlive()) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+    
+    /**
+     * Drain everything queued, stop the background thread and close the delegate
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            ring.put(Entry.STOP);
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
@@ -0,0 +1,71 @@
+package sinks;
+
+import models.CartItem;
+import services.PricingSnapshot;
+import services.ReceiptFormatter;
+import services.ReceiptSink;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes receipts and notices through a BufferedWriter
+ * Output only reaches the underlying writer when the buffer fills, on flush or on close
+ */
+public class BufferedWriterSink implements ReceiptSink {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    
+    private final BufferedWriter writer;
+    private final StringBuilder scratch = new StringBuilder(256);
+    
+    public BufferedWriterSink(Writer writer) {
+        this(writer, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public BufferedWriterSink(Writer writer, int bufferSize) {
+        if (writer == null) {
+            throw new IllegalArgumentException("Writer cannot be null");
+        }
+        this.writer = new BufferedWriter(writer, bufferSize);
+    }
+    
+    @Override
+    public synchronized void receipt(PricingSnapshot pricing, long remainingBalanceMinor) {
+        scratch.setLength(0);
+        write(ReceiptFormatter.appendReceipt(scratch, pricing, remainingBalanceMinor));
+    }
+    
+    @Override
+    public synchronized void shipmentNotice(List<CartItem> shippableItems) {
+        scratch.setLength(0);
+        write(ReceiptFormatter.appendShipmentNotice(scratch, shippableItems));
+    }
+    
+    private void write(CharSequence document) {
+        try {
+            writer.append(document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
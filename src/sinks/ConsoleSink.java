@@ -0,0 +1,29 @@
+package sinks;
+
+import models.CartItem;
+import services.PricingSnapshot;
+import services.ReceiptFormatter;
+import services.ReceiptSink;
+import java.util.List;
+
+/**
+ * Writes each receipt or notice to System.out with a single print call
+ * This is the default sink and is synchronous
+ */
+public class ConsoleSink implements ReceiptSink {
+    
+    @Override
+    public void receipt(PricingSnapshot pricing, long remainingBalanceMinor) {
+        System.out.print(ReceiptFormatter.appendReceipt(new StringBuilder(256), pricing, remainingBalanceMinor));
+    }
+    
+    @Override
+    public void shipmentNotice(List<CartItem> shippableItems) {
+        System.out.print(ReceiptFormatter.appendShipmentNotice(new StringBuilder(256), shippableItems));
+    }
+    
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
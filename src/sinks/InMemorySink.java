@@ -0,0 +1,42 @@
+package sinks;
+
+import models.CartItem;
+import services.PricingSnapshot;
+import services.ReceiptFormatter;
+import services.ReceiptSink;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps formatted receipts and notices in memory, in the order they were emitted
+ * Intended for tests and diagnostics
+ */
+public class InMemorySink implements ReceiptSink {
+    private final List<String> documents = new ArrayList<>();
+    
+    @Override
+    public void receipt(PricingSnapshot pricing, long remainingBalanceMinor) {
+        add(ReceiptFormatter.appendReceipt(new StringBuilder(256), pricing, remainingBalanceMinor));
+    }
+    
+    @Override
+    public void shipmentNotice(List<CartItem> shippableItems) {
+        add(ReceiptFormatter.appendShipmentNotice(new StringBuilder(256), shippableItems));
+    }
+    
+    private synchronized void add(CharSequence document) {
+        documents.add(document.toString());
+    }
+    
+    /**
+     * Get everything emitted so far
+     * @return copy of the formatted documents
+     */
+    public synchronized List<String> getDocuments() {
+        return new ArrayList<>(documents);
+    }
+    
+    public synchronized void clear() {
+        documents.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package sinks;
+
+import models.CartItem;
+import services.PricingSnapshot;
+import services.ReceiptSink;
+import java.util.List;
+
+/**
+ * Discards all receipts and notices
+ */
+public class NoOpSink implements ReceiptSink {
+    
+    @Override
+    public void receipt(PricingSnapshot pricing, long remainingBalanceMinor) {
+    }
+    
+    @Override
+    public void shipmentNotice(List<CartItem> shippableItems) {
+    }
+}
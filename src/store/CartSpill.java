@@ -0,0 +1,220 @@
+package store;
+
+import metrics.Counter;
+import metrics.Metrics;
+import models.Cart;
+import models.CartItem;
+import models.Product;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Append-only file of evicted carts with an in-memory index by key
+ * A record is [length][key length][key UTF-8][line count]([name length][name UTF-8][quantity])*;
+ * lines name their product rather than give its id, which does not survive a restart.
+ * Restoring or replacing a cart leaves its old record as
+ * garbage; the file is rewritten once garbage outweighs live records. A rewrite that
+ * fails leaves the current file in use, is counted in cart.spill.compact.failures and
+ * is retried once another COMPACT_MIN_GARBAGE bytes of garbage have built up
+ */
+final class CartSpill {
+    private static final long COMPACT_MIN_GARBAGE = 1 << 20;
+    private static final Counter DROPPED_LINES = Metrics.counter("cart.spill.dropped.lines");
+    private static final Counter COMPACT_FAILURES = Metrics.counter("cart.spill.compact.failures");
+    
+    private final Path file;
+    private final Function<String, Product> products;
+    private final Map<String, Long> index = new HashMap<>(); // key to record offset, guarded by this
+    private FileChannel channel;
+    private long end;
+    private long liveBytes;
+    private long garbageBytes;
+    private long compactAfter = COMPACT_MIN_GARBAGE; // garbage needed before the next rewrite
+    
+    CartSpill(Path file, Function<String, Product> products) throws IOException {
+        if (products == null) {
+            throw new IllegalArgumentException("Product resolver cannot be null");
+        }
+        this.file = file;
+        this.products = products;
+        this.channel = open(file);
+    }
+    
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    
+    /**
+     * Append a cart, replacing any earlier record of the key
+     */
+    synchronized void write(String key, Cart cart) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        List<CartItem> items = cart.getItems();
+        byte[][] names = new byte[items.size()][];
+        int length = 4 + 4 + keyBytes.length + 4;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = items.get(i).getProduct().getName().getBytes(StandardCharsets.UTF_8);
+            length += 4 + names[i].length + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length).putInt(keyBytes.length).put(keyBytes).putInt(items.size());
+        for (int i = 0; i < names.length; i++) {
+            buffer.putInt(names[i].length).put(names[i]).putInt(items.get(i).getQuantity());
+        }
+        buffer.flip();
+        long offset = end;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        end += length;
+        liveBytes += length;
+        Long previous = index.put(key, offset);
+        if (previous != null) {
+            discard(previous);
+        }
+    }
+    
+    /**
+     * Read back and forget a spilled cart
+     * Lines are put back as they were, without checking stock or expiry, which checkout
+     * does; lines whose product the resolver no longer knows are dropped and counted
+     * in cart.spill.dropped.lines
+     * @return the cart, or null if the key was not spilled
+     */
+    synchronized Cart restore(String key) {
+        Long offset = index.remove(key);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            ByteBuffer record = read(offset);
+            discard(offset, record.capacity());
+            record.position(4);
+            int keyLength = record.getInt();
+            record.position(record.position() + keyLength);
+            int lines = record.getInt();
+            Cart cart = new Cart();
+            for (int i = 0; i < lines; i++) {
+                byte[] name = new byte[record.getInt()];
+                record.get(name);
+                Product product = products.apply(new String(name, StandardCharsets.UTF_8));
+                int quantity = record.getInt();
+                if (product != null) {
+                    cart.restoreLine(product, quantity);
+                } else {
+                    DROPPED_LINES.increment();
+                }
+            }
+            return cart;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spilled cart " + key, e);
+        }
+    }
+    
+    /**
+     * Drop the record of a key, e.g. when its cart is removed for good
+     */
+    synchronized void forget(String key) {
+        Long offset = index.remove(key);
+        if (offset != null) {
+            discard(offset);
+        }
+    }
+    
+    synchronized int size() {
+        return index.size();
+    }
+    
+    private ByteBuffer read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, offset);
+        ByteBuffer record = ByteBuffer.allocate(header.getInt(0));
+        readFully(record, offset);
+        record.flip();
+        return record;
+    }
+    
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Spill file truncated at " + offset);
+            }
+        }
+    }
+    
+    private void discard(long offset) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(header, offset);
+            discard(offset, header.getInt(0));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read spill file", e);
+        }
+    }
+    
+    private void discard(long offset, int length) {
+        liveBytes -= length;
+        garbageBytes += length;
+        if (garbageBytes > compactAfter && garbageBytes > liveBytes) {
+            try {
+                compact();
+            } catch (IOException e) {
+                COMPACT_FAILURES.increment();
+                compactAfter = garbageBytes + COMPACT_MIN_GARBAGE;
+            }
+        }
+    }
+    
+    /**
+     * Copy live records into a fresh file and swap it in
+     * The old channel stays open until the new file is, so a failure at any step
+     * leaves the index pointing at records the current channel can still read
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Map<String, Long> moved = new HashMap<>();
+        long position = 0;
+        try (FileChannel target = open(compacted)) {
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                ByteBuffer record = read(entry.getValue());
+                while (record.hasRemaining()) {
+                    target.write(record, position + record.position());
+                }
+                moved.put(entry.getKey(), position);
+                position += record.capacity();
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        FileChannel previous = channel;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        previous.close();
+        index.putAll(moved);
+        end = position;
+        liveBytes = position;
+        garbageBytes = 0;
+        compactAfter = COMPACT_MIN_GARBAGE;
+    }
+    
+    synchronized void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,365 @@
+package store;
+
+import clock.StoreClock;
+import metrics.Counter;
+import metrics.Metrics;
+import models.Cart;
+import models.Product;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Session-scoped carts with idle expiry and a hard bound on entries and estimated heap
+ * Keys are spread over lock-striped segments; each segment is an access-ordered
+ * LinkedHashMap, so its eldest entry is both the least recently used and the longest
+ * idle. Writes evict expired carts from the head of their segment and then the least
+ * recently used until the segment is back under its share of the bounds. Evicted carts
+ * go to the eviction listener and, if spilling is enabled, to a compact file from which
+ * get() restores them; a cart the file cannot take, for whatever reason, is dropped
+ * and counted in cart.spill.failures, never failing the write that evicted it. Each
+ * segment enforces its share of the bounds, so a skewed key distribution can evict
+ * slightly before the totals are reached
+ */
+public class CartStore implements AutoCloseable {
+    /**
+     * Why a cart left the store
+     */
+    public enum RemovalCause {
+        EXPIRED,
+        CAPACITY
+    }
+    
+    /**
+     * Called outside the store's locks for every evicted cart; any stock the cart
+     * held under leases has already been released
+     */
+    public interface EvictionListener {
+        void onEviction(String key, Cart cart, RemovalCause cause);
+    }
+    
+    // Heap cost of an empty cart with its entry and a short session key, and of each
+    // line, measured on a 64-bit JVM with compressed oops; see CartStoreFootprint
+    static final long CART_BYTES = 340;
+    static final long LINE_BYTES = 85;
+    
+    private static final int SEGMENTS = 64;
+    private static final Counter SPILL_FAILURES = Metrics.counter("cart.spill.failures");
+    
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlMillis;
+    private volatile EvictionListener listener = (key, cart, cause) -> { };
+    private volatile CartSpill spill;
+    
+    /**
+     * @param maxEntries most carts held on the heap
+     * @param maxBytes estimated heap the carts may use
+     * @param idleTtl how long a cart may go untouched before it is evicted
+     */
+    public CartStore(int maxEntries, long maxBytes, Duration idleTtl) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cart store bounds must be positive");
+        }
+        if (idleTtl == null || idleTtl.isNegative() || idleTtl.isZero()) {
+            throw new IllegalArgumentException("Idle TTL must be positive");
+        }
+        this.ttlMillis = idleTtl.toMillis();
+        int entriesPerSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        long bytesPerSegment = Math.max(CART_BYTES, maxBytes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(entriesPerSegment, bytesPerSegment);
+        }
+    }
+    
+    /**
+     * Set what happens to evicted carts
+     * @param listener called for every evicted cart
+     */
+    public void setEvictionListener(EvictionListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        this.listener = listener;
+    }
+    
+    /**
+     * Spill evicted carts to a file instead of dropping them
+     * @param file spill file, truncated on open
+     * @param products resolves product names when a spilled cart is restored, null if unknown
+     * @throws IOException if the file cannot be opened
+     */
+    public synchronized void enableSpill(Path file, Function<String, Product> products) throws IOException {
+        if (spill != null) {
+            throw new IllegalStateException("Spilling already enabled");
+        }
+        spill = new CartSpill(file, products);
+    }
+    
+    private static final class Entry {
+        final Cart cart;
+        long lastAccess;
+        long bytes;
+        
+        Entry(Cart cart, long now) {
+            this.cart = cart;
+            this.lastAccess = now;
+            this.bytes = estimate(cart);
+        }
+    }
+    
+    /**
+     * One lock stripe; all fields guarded by the segment's monitor
+     */
+    private static final class Segment {
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final int maxEntries;
+        final long maxBytes;
+        long bytes;
+        
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+    }
+    
+    /**
+     * Evicted cart waiting to be handed to the listener once the lock is released
+     */
+    private static final class Eviction {
+        final String key;
+        final Cart cart;
+        final RemovalCause cause;
+        
+        Eviction(String key, Cart cart, RemovalCause cause) {
+            this.key = key;
+            this.cart = cart;
+            this.cause = cause;
+        }
+    }
+    
+    static long estimate(Cart cart) {
+        return CART_BYTES + LINE_BYTES * cart.size();
+    }
+    
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+    
+    /**
+     * Get the cart of a session, restoring it from the spill file if it was evicted
+     * @param key session or customer key
+     * @return the cart, or null if the session has none
+     */
+    public Cart get(String key) {
+        return lookup(key, false);
+    }
+    
+    /**
+     * Get the cart of a session, creating an empty one if there is none
+     * @param key session or customer key
+     * @return the cart
+     */
+    public Cart getOrCreate(String key) {
+        return lookup(key, true);
+    }
+    
+    private Cart lookup(String key, boolean create) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        Segment segment = segmentFor(key);
+        long now = StoreClock.getClock().millis();
+        CartSpill currentSpill = spill;
+        List<Eviction> evicted = new ArrayList<>();
+        Cart cart = null;
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            // An expired cart that would be spilled is as good as restored, so keep it
+            if (entry != null && (currentSpill != null || now - entry.lastAccess < ttlMillis)) {
+                touch(segment, entry, now);
+                return entry.cart;
+            }
+            if (entry != null) {
+                segment.entries.remove(key);
+                segment.bytes -= entry.bytes;
+                evicted.add(new Eviction(key, entry.cart, RemovalCause.EXPIRED));
+            }
+            if (currentSpill != null) {
+                cart = currentSpill.restore(key);
+            }
+            if (cart == null && create) {
+                cart = new Cart();
+            }
+            if (cart != null) {
+                entry = new Entry(cart, now);
+                segment.entries.put(key, entry);
+                segment.bytes += entry.bytes;
+                evict(segment, now, currentSpill, evicted);
+            }
+        }
+        notify(evicted);
+        return cart;
+    }
+    
+    /**
+     * Record an access; the size estimate is refreshed because the cart may have grown
+     */
+    private static void touch(Segment segment, Entry entry, long now) {
+        entry.lastAccess = now;
+        long bytes = estimate(entry.cart);
+        segment.bytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+    }
+    
+    /**
+     * Remove expired carts from the head, then least recently used ones until the
+     * segment fits its bounds; the newest entry always stays
+     */
+    private void evict(Segment segment, long now, CartSpill currentSpill, List<Eviction> evicted) {
+        Iterator<Map.Entry<String, Entry>> it = segment.entries.entrySet().iterator();
+        while (it.hasNext() && segment.entries.size() > 1) {
+            Map.Entry<String, Entry> eldest = it.next();
+            Entry entry = eldest.getValue();
+            RemovalCause cause;
+            if (now - entry.lastAccess >= ttlMillis) {
+                cause = RemovalCause.EXPIRED;
+            } else if (segment.entries.size() > segment.maxEntries || segment.bytes > segment.maxBytes) {
+                cause = RemovalCause.CAPACITY;
+            } else {
+                break;
+            }
+            it.remove();
+            retire(segment, eldest.getKey(), entry, cause, currentSpill, evicted);
+        }
+    }
+    
+    /**
+     * Account for an entry just unlinked from its segment, release its leases and spill
+     * it; called under the segment lock so a concurrent get cannot miss a cart on its
+     * way to disk. Never throws, so every cart unlinked in a pass reaches the listener
+     */
+    private static void retire(Segment segment, String key, Entry entry, RemovalCause cause,
+                               CartSpill currentSpill, List<Eviction> evicted) {
+        segment.bytes -= entry.bytes;
+        // Stock first, so a cart that cannot be spilled still gives back what it held
+        entry.cart.releaseLeases();
+        if (currentSpill != null && !entry.cart.isEmpty()) {
+            try {
+                currentSpill.write(key, entry.cart);
+            } catch (IOException | RuntimeException e) {
+                // Drop the cart rather than abort an eviction pass others already left,
+                // including when making room in the file (compaction) fails
+                SPILL_FAILURES.increment();
+            }
+        }
+        evicted.add(new Eviction(key, entry.cart, cause));
+    }
+    
+    private void notify(List<Eviction> evicted) {
+        EvictionListener currentListener = listener;
+        for (Eviction eviction : evicted) {
+            currentListener.onEviction(eviction.key, eviction.cart, eviction.cause);
+        }
+    }
+    
+    /**
+     * Drop a cart without notifying the listener, e.g. once it has been checked out
+     * @param key session or customer key
+     * @return the removed cart, or null if there was none
+     */
+    public Cart remove(String key) {
+        Segment segment = segmentFor(key);
+        CartSpill currentSpill = spill;
+        synchronized (segment) {
+            if (currentSpill != null) {
+                currentSpill.forget(key);
+            }
+            Entry entry = segment.entries.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            segment.bytes -= entry.bytes;
+            return entry.cart;
+        }
+    }
+    
+    /**
+     * Evict every cart idle for longer than the TTL; writes do this for their own
+     * segment, so a periodic sweep only matters for segments nobody writes to
+     * @return number of carts evicted
+     */
+    public int evictExpired() {
+        long now = StoreClock.getClock().millis();
+        CartSpill currentSpill = spill;
+        int count = 0;
+        for (Segment segment : segments) {
+            List<Eviction> evicted = new ArrayList<>();
+            synchronized (segment) {
+                Iterator<Map.Entry<String, Entry>> it = segment.entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Entry> eldest = it.next();
+                    if (now - eldest.getValue().lastAccess < ttlMillis) {
+                        break;
+                    }
+                    it.remove();
+                    retire(segment, eldest.getKey(), eldest.getValue(), RemovalCause.EXPIRED, currentSpill, evicted);
+                }
+            }
+            notify(evicted);
+            count += evicted.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Get number of carts held on the heap
+     * @return live cart count
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Get the estimated heap used by the carts held
+     * @return estimate in bytes
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Get number of carts waiting in the spill file
+     * @return spilled cart count, 0 if spilling is off
+     */
+    public int spilledCount() {
+        CartSpill currentSpill = spill;
+        return currentSpill == null ? 0 : currentSpill.size();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        CartSpill currentSpill = spill;
+        if (currentSpill != null) {
+            currentSpill.close();
+        }
+    }
+}
\ No newline at end of file